@@ -49,6 +49,7 @@ class Clone implements SocketCallback, UserModuleInterface
 {
     private static final Logger log = Logger.getLogger(Clone.class);
     private static final char NICK_SUFFIX_CHAR = '-';
+    private static final int RPL_ISUPPORT = 5;
     private static final int RPL_ENDOFMOTD = 376;
     private static final int ERR_NOMOTD = 422;
     private static final int ERR_NONICKNAMEGIVEN = 431;
@@ -57,9 +58,11 @@ class Clone implements SocketCallback, UserModuleInterface
     private static final int ERR_NICKCOLLISION = 436;
     private static final int BASE_RECONNECT_DELAY = 5000;
     private static final int THROTTLED_RECONNECT_DELAY = 30000;
+    private static final int QUEUE_RETRY_DELAY = 10;
     private final String name, network;
     private final Config config;
-    private final InboundQueue inboundQueue;
+    private final DispatchLanes inboundQueue;
+    private final InboundQuota inboundQuota;
     private final List nickUntried = new ArrayList();
     private final List nickTried = new ArrayList();
     private final StringBuffer suffix = new StringBuffer();
@@ -67,15 +70,25 @@ class Clone implements SocketCallback, UserModuleInterface
     private GroupTimer moduleTimer;
     private TcpConnection socket;
     private ModuleSet modules;
+    private volatile Symbols symbols = new Symbols();
+    private volatile Users users = new Users(symbols, this);
     private String nickname = "?";
     private int reconnectDelay = BASE_RECONNECT_DELAY;
     private boolean terminated = false;
+    private final InboundQuota.Sink lane = new InboundQuota.Sink()
+    {
+        public boolean tryAdd(InboundMessage message) {
+            return inboundQueue.tryAdd(message, Clone.this);
+        }
+    };
 
-    Clone(String name, Config config, InboundQueue queue) {
+    Clone(String name, Config config, DispatchLanes queue) {
         this.name = name;
         this.config = config;
         this.network = config.get(name + ",network");
         this.inboundQueue = queue;
+        this.inboundQuota = new InboundQuota(getConfigVar("inbound,quota", null),
+                getConfigVar("inbound,overload", null), getConfigVar("inbound,shed", null));
         log.info("Starting clone: " + name);
     }
 
@@ -126,7 +139,7 @@ class Clone implements SocketCallback, UserModuleInterface
         try {
             String serverIp = ConfigUtils.getRandomServer(config, network);
             log.info("Connecting to " + serverIp);
-            socket = new TcpConnection(this, getAddress(serverIp), bindto);
+            socket = TcpConnection.open(this, getAddress(serverIp), bindto);
         } catch (UnknownHostException e) {
             log.error("No such network: " + e.getMessage(), e);
             socket.close();
@@ -149,6 +162,8 @@ class Clone implements SocketCallback, UserModuleInterface
 
     public void connected() {
         log.debug(name + " connected (" + socket + ")");
+        symbols = new Symbols();
+        users = new Users(symbols, this);
         resetNick();
         final String ident = getConfigVar("ident", "b0t");
         final String local = getConfigVar("bindto", "local");
@@ -178,8 +193,42 @@ class Clone implements SocketCallback, UserModuleInterface
     }
 
     public void gotLine(String line) {
+        InboundMessage message = accept(line);
+        if ((message != null) && inboundQuota.admit(message)) inboundQueue.add(message, this);
+    }
+
+    public boolean offerLine(String line, Runnable resume) {
+        InboundMessage message = accept(line);
+        return (message == null) || queued(inboundQuota.offer(message, lane, resume), resume);
+    }
+
+    public boolean retry(Runnable resume) {
+        return queued(inboundQuota.retry(lane, resume), resume);
+    }
+
+    public void discard(Runnable resume) {
+        inboundQuota.discard(resume);
+    }
+
+    private boolean queued(int result, Runnable resume) {
+        if (result == InboundQuota.BUSY) {
+            // the lane is shared with other clones, so nothing of ours will
+            // signal when it has room; poll for it instead
+            socket.getTimer().schedule(resume, QUEUE_RETRY_DELAY);
+        }
+        return result == InboundQuota.TAKEN;
+    }
+
+    /**
+     * Deal with anything the connection itself has to handle straight away.
+     * @return the message to queue for the modules, or null if there isn't one
+     */
+    private InboundMessage accept(String line) {
         log.debug("IN: " + line);
         InboundMessage message = MessageParser.parseMessage(line);
+        if ((message instanceof SystemIn) && (((SystemIn)message).getNumber() == RPL_ISUPPORT)) {
+            symbols.isupport(((SystemIn)message).getMessage());
+        }
         if (modules == null) {
             // still connecting
             if (message instanceof SystemIn) {
@@ -187,7 +236,7 @@ class Clone implements SocketCallback, UserModuleInterface
                 if (isNickFailure(in)) {
                     // couldn't change nick, try another one
                     send(new NickOut(nextNick()), 0);
-                    return;
+                    return null;
                 } else if (isConnectMessage(in)) {
                     // connected properly, load the modules for this clone
                     reconnectDelay = BASE_RECONNECT_DELAY;
@@ -195,7 +244,7 @@ class Clone implements SocketCallback, UserModuleInterface
                     moduleTimer = new GroupTimer(socket.getTimer());
                     modules = new ModuleSet(this);
                     modules.instantiateModules(null);
-                    return;
+                    return null;
                 }
             } else if ((message instanceof UnknownIn) &&
 
@@ -205,21 +254,36 @@ class Clone implements SocketCallback, UserModuleInterface
         }
         if (message instanceof PingIn) {
             send(new PongOut(((PingIn)message).getPingCode()), 1);
-            return;
+            return null;
         }
         if ((message instanceof SystemIn) && (ERR_NICKCOLLISION == ((SystemIn)message).getNumber())) {
             send(new QuitOut("Nickname collision, reconnecting"), 1);
-            return;
+            return null;
         }
         if (message instanceof UnknownIn) {
             String msgLine = ((UnknownIn)message).getLine();
             if (msgLine.indexOf(' ') == msgLine.indexOf(" KILL " + nickname + " ")) {
                 // we've just been killed!
                 socket.close();
-                return;
+                return null;
             }
         }
-        inboundQueue.add(message, this);
+        return message;
+    }
+
+    /**
+     * Called by a worker when it has finished handling one of our messages.
+     */
+    void inboundDone() {
+        inboundQuota.done();
+    }
+
+    /**
+     * @return queued, dropped and paused counts for our inbound messages
+     */
+    String getInboundStats() {
+        return inboundQuota.getQueued() + " queued, " + inboundQuota.getDropped() + " dropped, " +
+                inboundQuota.getPauses() + " pauses";
     }
 
     /**
@@ -287,7 +351,18 @@ class Clone implements SocketCallback, UserModuleInterface
      * @param module
      */
     public void register(Class messageClass, UserModule module) {
-        modules.register(messageClass, module);
+        modules.register(messageClass, module, null);
+    }
+
+    /**
+     * Register the given module to receive notification of events of type
+     * messageClass, but only those matching the interest.
+     * @param messageClass
+     * @param module
+     * @param interest
+     */
+    public void register(Class messageClass, UserModule module, Interest interest) {
+        modules.register(messageClass, module, interest);
     }
 
     /**
@@ -296,7 +371,41 @@ class Clone implements SocketCallback, UserModuleInterface
      * @param module
      */
     public void registerForEvent(int id, UserModule module) {
-        modules.registerForEvent(id, module);
+        modules.registerForEvent(id, module, false);
+    }
+
+    /**
+     * Register the given module to receive user events with the given id,
+     * optionally on the event pool rather than the triggering thread.
+     * @param id
+     * @param module
+     * @param async
+     */
+    public void registerForEvent(int id, UserModule module, boolean async) {
+        modules.registerForEvent(id, module, async);
+    }
+
+    /**
+     * Register the given module to handle chat commands matching the trigger.
+     * @param trigger
+     * @param module
+     * @param id
+     */
+    public void registerCommand(String trigger, UserModule module, int id) {
+        modules.registerCommand(trigger, module, id);
+    }
+
+    public Symbols getSymbols() {
+        return symbols;
+    }
+
+    public Users getUsers() {
+        return users;
+    }
+
+    public List getCommandStats() {
+        final ModuleSet current = modules;
+        return (current == null) ? new ArrayList() : current.getCommandStats();
     }
 
     /**
@@ -0,0 +1,233 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import com.echbot.messages.in.ChatMessageIn;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes !commands to the modules that registered a trigger for them. A
+ * trigger is either a whole command ("!who") or a prefix ending in '*'
+ * ("!add*" matches "!add", "!add1" and so on). Each module gets at most one
+ * call per line: for its exact trigger if it has one, otherwise for its
+ * longest matching prefix. Which routes a command resolves to is worked out
+ * the first time it's seen and then cached, so each line costs a single hash
+ * lookup, and modules with no matching trigger aren't visited at all. Only
+ * the most recently used commands are kept, since people can type anything.
+ * Every trigger also keeps a count of calls and the time spent in them, for
+ * each module that registered it.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class CommandRouter
+{
+    private static final Logger log = Logger.getLogger(CommandRouter.class);
+    // most different commands to remember the routes for
+    private static final int MAX_CACHED = 1024;
+    private static final Route[] NO_ROUTES = new Route[0];
+    private final Map stats = new TreeMap();
+    private final List routes = new ArrayList();
+    private volatile Index index = new Index(NO_ROUTES);
+
+    private static final class Route
+    {
+        private final String trigger;
+        private final boolean prefix;
+        private final UserModule module;
+        private final int id;
+        private final Stats stats;
+
+        private Route(String trigger, UserModule module, int id, Stats stats) {
+            this.prefix = trigger.endsWith("*");
+            this.trigger = prefix ? trigger.substring(0, trigger.length() - 1) : trigger;
+            this.module = module;
+            this.id = id;
+            this.stats = stats;
+        }
+
+        private boolean matches(String command) {
+            return prefix ? command.startsWith(trigger) : command.equals(trigger);
+        }
+    }
+
+    /**
+     * Every route in registration order, plus the commands resolved most
+     * recently. Replaced whenever the routes change.
+     */
+    private static final class Index
+    {
+        private final Route[] all;
+        // in access order, so the first is the least recently used
+        private final Map resolved = new LinkedHashMap(16, 0.75f, true);
+
+        private Index(Route[] all) {
+            this.all = all;
+        }
+
+        private Route[] resolve(String command) {
+            synchronized (resolved) {
+                final Route[] matched = (Route[])resolved.get(command);
+                if (matched != null) return matched;
+            }
+            final Route[] matched = compile(command);
+            synchronized (resolved) {
+                resolved.put(command, matched);
+                if (resolved.size() > MAX_CACHED) {
+                    final Iterator eldest = resolved.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            return matched;
+        }
+
+        private int size() {
+            synchronized (resolved) {
+                return resolved.size();
+            }
+        }
+
+        private Route[] compile(String command) {
+            final Map best = new LinkedHashMap();
+            for (int i = 0; i < all.length; i++) {
+                final Route route = all[i];
+                if (!route.matches(command)) continue;
+                final Route current = (Route)best.get(route.module);
+                if ((current == null) || better(route, current)) best.put(route.module, route);
+            }
+            return best.isEmpty() ? NO_ROUTES : (Route[])best.values().toArray(new Route[best.size()]);
+        }
+
+        private static boolean better(Route route, Route than) {
+            if (route.prefix != than.prefix) return !route.prefix;
+            return route.trigger.length() > than.trigger.length();
+        }
+    }
+
+    private static final class Stats
+    {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private volatile long maxNanos = 0;
+
+        private void record(long nanos) {
+            calls.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+    }
+
+    /**
+     * Kept across module reloads, since the router outlives the modules.
+     */
+    private Stats statsFor(String trigger, UserModule module) {
+        final String className = module.getClass().getName();
+        final String key = trigger + " (" + className.substring(className.lastIndexOf('.') + 1) + ")";
+        synchronized (stats) {
+            Stats found = (Stats)stats.get(key);
+            if (found == null) {
+                found = new Stats();
+                stats.put(key, found);
+            }
+            return found;
+        }
+    }
+
+    public synchronized void register(String trigger, UserModule module, int id) {
+        final String lower = trigger.toLowerCase();
+        routes.add(new Route(lower, module, id, statsFor(lower, module)));
+        index = new Index((Route[])routes.toArray(new Route[routes.size()]));
+    }
+
+    public synchronized void unregister(UserModule module) {
+        for (Iterator i = routes.iterator(); i.hasNext();) {
+            if (((Route)i.next()).module == module) i.remove();
+        }
+        index = new Index((Route[])routes.toArray(new Route[routes.size()]));
+    }
+
+    public synchronized void clear() {
+        routes.clear();
+        index = new Index(NO_ROUTES);
+    }
+
+    /**
+     * Pass a command line to every module with a matching trigger.
+     */
+    public void dispatch(ChatMessageIn message) {
+        final Route[] matched = index.resolve(message.getCommand());
+        for (int i = 0; i < matched.length; i++) {
+            final Route route = matched[i];
+            final long start = System.nanoTime();
+            try {
+                route.module.command(route.id, message);
+            } catch (Throwable e) {
+                log.error("Module error in command(" + message.getCommand() + ")", e);
+            }
+            route.stats.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return how many commands currently have their routes cached
+     */
+    public int getCachedCount() {
+        return index.size();
+    }
+
+    /**
+     * @return one line per trigger and module with its call count and
+     * timings, busiest first
+     */
+    public List getStats() {
+        final List lines = new ArrayList();
+        final Map calls = new HashMap();
+        synchronized (stats) {
+            for (Iterator i = stats.entrySet().iterator(); i.hasNext();) {
+                final Map.Entry entry = (Map.Entry)i.next();
+                final long count = ((Stats)entry.getValue()).calls.get();
+                if (count > 0) calls.put(entry.getKey(), Long.valueOf(count));
+            }
+        }
+        final List triggers = new ArrayList(calls.keySet());
+        Collections.sort(triggers, new Comparator()
+        {
+            public int compare(Object o1, Object o2) {
+                final int byCalls = ((Long)calls.get(o2)).compareTo((Long)calls.get(o1));
+                return (byCalls != 0) ? byCalls : ((String)o1).compareTo((String)o2);
+            }
+        });
+        for (Iterator i = triggers.iterator(); i.hasNext();) {
+            final String trigger = (String)i.next();
+            final Stats s;
+            synchronized (stats) {
+                s = (Stats)stats.get(trigger);
+            }
+            final long count = ((Long)calls.get(trigger)).longValue();
+            lines.add(trigger + ": " + count + " calls, avg " + (s.totalNanos.get() / count / 1000) +
+                    "us, max " + (s.maxNanos / 1000) + "us");
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads inbound messages over a fixed number of lanes, each with its own
+ * queue and a single worker. Every message for the same key lands on the same
+ * lane, so modules see them in the order the server sent them. The key is the
+ * clone, or with per-channel dispatch the clone plus the channel for channel
+ * chat and topics. Everything else is keyed on the clone alone: that
+ * includes every message that changes who is where or under what nick
+ * (joins, parts, kicks, modes, quits, nick changes, NAMES replies), so the
+ * user and membership registries always see those in order. In per-channel
+ * mode, chat on a channel may be handled before or after a membership change
+ * that the server sent around the same time.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class DispatchLanes
+{
+    private static final int VIRTUAL_LANES = 64;
+    private final Worker[] lanes;
+    private final boolean byChannel;
+
+    /**
+     * @param laneCount number of lanes (and worker threads)
+     * @param capacity inbound,capacity setting for each lane's queue
+     * @param wait inbound,wait setting for each lane's queue
+     * @param byChannel true to key on clone and channel rather than just clone
+     */
+    public DispatchLanes(int laneCount, String capacity, String wait, boolean byChannel) {
+        if (laneCount < 1) laneCount = 1;
+        this.lanes = new Worker[laneCount];
+        this.byChannel = byChannel;
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Worker(InboundQueue.create(capacity, wait));
+        }
+    }
+
+    /**
+     * Create the lanes from the inbound,lanes and inbound,dispatch (clone or
+     * channel) settings. Defaults to one lane per processor, and at least the
+     * four workers we've always had. With virtual threads a lane costs next
+     * to nothing, so we default to many more of them; that way a module
+     * blocking on the database or a game server only holds up the few
+     * clones that hash to the same lane.
+     */
+    static DispatchLanes create(String lanes, String capacity, String wait, String dispatch) {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int count = Threads.isVirtual() ? Math.max(VIRTUAL_LANES, processors) : Math.max(4, processors);
+        if (lanes != null) {
+            try {
+                count = Integer.parseInt(lanes.trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        return new DispatchLanes(count, capacity, wait, "channel".equalsIgnoreCase(dispatch));
+    }
+
+    void start() {
+        for (int i = 0; i < lanes.length; i++) {
+            Threads.start(lanes[i], null, true);
+        }
+    }
+
+    public void add(InboundMessage message, Clone clone) {
+        lanes[laneFor(message, clone.getName())].getQueue().add(message, clone);
+    }
+
+    /**
+     * Like add, but returns false rather than waiting if the lane is full.
+     */
+    boolean tryAdd(InboundMessage message, Clone clone) {
+        return lanes[laneFor(message, clone.getName())].getQueue().tryAdd(message, clone);
+    }
+
+    /**
+     * @return which lane the clone's message is handled on
+     */
+    public int laneFor(InboundMessage message, String cloneName) {
+        int hash = cloneName.hashCode();
+        if (byChannel) {
+            final int type = message.getTypeId();
+            if ((type == MessageTypes.CHAT_MESSAGE) || (type == MessageTypes.TOPIC)) {
+                final String channel = Interest.channelOf(message);
+                if (channel != null) hash = hash * 31 + channel.hashCode();
+            }
+        }
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % lanes.length;
+    }
+
+    /**
+     * @return one line per lane with its queue depth and queueing delay
+     */
+    List laneStats() {
+        List res = new ArrayList();
+        for (int i = 0; i < lanes.length; i++) {
+            final Worker lane = lanes[i];
+            final long processed = lane.getProcessed();
+            final long avgMicros = (processed == 0) ? 0 : lane.getTotalWait() / processed / 1000;
+            res.add("Lane " + (i + 1) + ": " + lane.getQueue().size() + "/" + lane.getQueue().capacity() +
+                    " queued, " + processed + " handled, avg wait " + avgMicros + "us, max wait " +
+                    (lane.getMaxWait() / 1000) + "us");
+        }
+        return res;
+    }
+}
@@ -22,6 +22,7 @@ package com.echbot;
 
 import com.echbot.config.Config;
 import com.echbot.config.ConfigUtils;
+import com.echbot.sockets.TcpConnection;
 import org.apache.log4j.*;
 import org.apache.log4j.varia.ReloadingPropertyConfigurator;
 import org.apache.log4j.helpers.NullEnumeration;
@@ -39,7 +40,7 @@ import java.net.URL;
 public class Echbot
 {
     private static final Map clones = new HashMap();
-    private static final InboundQueue queue = new InboundQueue();
+    private static DispatchLanes queue;
     private static Config config;
 
     public static void main(String[] args) throws IOException {
@@ -56,12 +57,12 @@ public class Echbot
     private static void run() throws IOException {
         // find all the cloneNames that need to be started, and do it
         config = new Config();
+        Threads.setMode(config.get("threads,mode"));
+        TcpConnection.setMode(config.get("sockets,mode"), config.get("sockets,loops"));
+        queue = DispatchLanes.create(config.get("inbound,lanes"), config.get("inbound,capacity"),
+                config.get("inbound,wait"), config.get("inbound,dispatch"));
         Set cloneNames = ConfigUtils.getCloneNames(config);
-        for (int i = 0; i < 4; i++) {
-            Thread next = new Thread(new Worker(queue));
-            next.setDaemon(true);
-            next.start();
-        }
+        queue.start();
         synchronized (clones) {
             for (Iterator i = cloneNames.iterator(); i.hasNext();) {
                 String name = (String)i.next();
@@ -71,6 +72,17 @@ public class Echbot
 				try { Thread.sleep(20000); } catch (Exception e) { }
             }
         }
+        if (Threads.isVirtual()) {
+            // virtual threads are always daemons, so nothing else keeps us alive
+            synchronized (clones) {
+                while (true) {
+                    try {
+                        clones.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }
         // Just exit, and wait for the non-daemon threads to finish
     }
 
@@ -81,12 +93,17 @@ public class Echbot
             for (Iterator i = clones.values().iterator(); i.hasNext();) {
                 Clone clone = (Clone)i.next();
                 res.add("Clone " + (count++) + "(" + clone.getName() + ") on " +
-                        clone.getNetwork() + " as " + clone.getNickname());
+                        clone.getNetwork() + " as " + clone.getNickname() + ", inbound " +
+                        clone.getInboundStats());
             }
         }
         return res;
     }
 
+    public static List laneStats() {
+        return queue.laneStats();
+    }
+
     public static void killClone(String name) {
         synchronized (clones) {
             Clone toKill = getClone(name, false);
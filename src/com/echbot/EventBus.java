@@ -0,0 +1,147 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Delivers user events to the modules of one clone. Subscriptions are kept in
+ * an array per event id which is replaced, never modified, whenever they
+ * change, so publishing takes no lock. Each subscription chooses whether it
+ * is called on the publishing thread or handed off to the event pool, so a
+ * slow listener (e.g. a database insert) doesn't hold up whoever raised the
+ * event. Attachments are shared between listeners and threads, so they
+ * must not be modified once published.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class EventBus
+{
+    private static final Logger log = Logger.getLogger(EventBus.class);
+    private static final int ASYNC_THREADS = 2;
+    private static final Subscription[] NONE = new Subscription[0];
+    private static final ExecutorService asyncPool = Executors.newFixedThreadPool(ASYNC_THREADS, new ThreadFactory()
+    {
+        private int count = 1;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Event-" + (count++));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile Subscription[][] subscriptions = new Subscription[0][];
+
+    private static final class Subscription
+    {
+        private final UserModule module;
+        private final boolean async;
+
+        private Subscription(UserModule module, boolean async) {
+            this.module = module;
+            this.async = async;
+        }
+    }
+
+    public synchronized void subscribe(int id, UserModule module, boolean async) {
+        Subscription[][] table = subscriptions;
+        if (id >= table.length) {
+            final Subscription[][] bigger = new Subscription[id + 1][];
+            System.arraycopy(table, 0, bigger, 0, table.length);
+            for (int i = table.length; i < bigger.length; i++) {
+                bigger[i] = NONE;
+            }
+            table = bigger;
+        } else {
+            table = table.clone();
+        }
+        final Subscription[] current = table[id];
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].module == module) return;
+        }
+        final Subscription[] added = new Subscription[current.length + 1];
+        System.arraycopy(current, 0, added, 0, current.length);
+        added[current.length] = new Subscription(module, async);
+        table[id] = added;
+        subscriptions = table;
+    }
+
+    public synchronized void unsubscribe(UserModule module) {
+        final Subscription[][] table = subscriptions.clone();
+        for (int id = 0; id < table.length; id++) {
+            int keep = 0;
+            for (int i = 0; i < table[id].length; i++) {
+                if (table[id][i].module != module) keep++;
+            }
+            if (keep == table[id].length) continue;
+            final Subscription[] remaining = (keep == 0) ? NONE : new Subscription[keep];
+            for (int i = 0, j = 0; i < table[id].length; i++) {
+                if (table[id][i].module != module) remaining[j++] = table[id][i];
+            }
+            table[id] = remaining;
+        }
+        subscriptions = table;
+    }
+
+    public synchronized void clear() {
+        subscriptions = new Subscription[0][];
+    }
+
+    public void publish(final int id, final Object attachment) {
+        final Subscription[][] table = subscriptions;
+        final EventType type = EventType.forId(id);
+        if (type != null) type.countPublished();
+        if (id >= table.length) return;
+        final Subscription[] subs = table[id];
+        for (int i = 0; i < subs.length; i++) {
+            final Subscription sub = subs[i];
+            if (!sub.async) {
+                deliver(sub, id, type, attachment);
+            } else {
+                final Runnable delivery = new Runnable()
+                {
+                    public void run() {
+                        deliver(sub, id, type, attachment);
+                    }
+                };
+                if (Threads.isVirtual()) {
+                    Threads.start(delivery, null, true);
+                } else {
+                    asyncPool.execute(delivery);
+                }
+            }
+        }
+    }
+
+    private static void deliver(Subscription sub, int id, EventType type, Object attachment) {
+        try {
+            sub.module.userEvent(id, attachment);
+            if (type != null) type.countDelivered(sub.async);
+        } catch (Throwable e) {
+            if (type != null) type.countError();
+            log.error("Module error in userEvent(" + type + ")", e);
+        }
+    }
+}
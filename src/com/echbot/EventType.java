@@ -0,0 +1,127 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An interned user event name. Each name gets one instance and a small
+ * integer id for the lifetime of the process, so modules loaded at
+ * different times (or reloaded) agree on ids. Also keeps the fan-out
+ * counters for the event.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class EventType
+{
+    private static final ConcurrentHashMap byName = new ConcurrentHashMap();
+    /**
+     * Indexed by id. Replaced, never modified, when a type is added, so
+     * looking one up takes no lock.
+     */
+    private static volatile EventType[] byId = new EventType[0];
+    private final String name;
+    private final int id;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong deliveredAsync = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private EventType(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * @param name event name, e.g. "pickup.start"
+     * @return the one EventType with that name, created if need be
+     */
+    public static EventType forName(String name) {
+        EventType type = (EventType)byName.get(name);
+        if (type != null) return type;
+        synchronized (byName) {
+            type = (EventType)byName.get(name);
+            if (type == null) {
+                final EventType[] types = byId;
+                final EventType[] added = new EventType[types.length + 1];
+                System.arraycopy(types, 0, added, 0, types.length);
+                type = added[types.length] = new EventType(name, types.length);
+                // by id first, so anyone who finds it by name can look up its id
+                byId = added;
+                byName.put(name, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * @return the EventType with the given id, or null if there isn't one
+     */
+    public static EventType forId(int id) {
+        final EventType[] types = byId;
+        return ((id < 0) || (id >= types.length)) ? null : types[id];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    void countPublished() {
+        published.incrementAndGet();
+    }
+
+    void countDelivered(boolean async) {
+        (async ? deliveredAsync : delivered).incrementAndGet();
+    }
+
+    void countError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * @return one line per event type with publish and delivery counts
+     */
+    public static List getStats() {
+        final List res = new ArrayList();
+        final EventType[] types = byId;
+        for (int i = 0; i < types.length; i++) {
+            final EventType type = types[i];
+            final long published = type.published.get();
+            final long sync = type.delivered.get(), async = type.deliveredAsync.get();
+            final String fanout = (published == 0) ? "0" :
+                    Double.toString(Math.round((sync + async) * 10.0 / published) / 10.0);
+            res.add(type.name + ": " + published + " published, " + (sync + async) + " delivered (" +
+                    async + " async), avg fan-out " + fanout + ", " + type.errors.get() + " errors");
+        }
+        return res;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent map whose entries expire a fixed time after they were put.
+ * Each entry has its own deadline on the timing wheel, so expiry costs the
+ * same however many entries there are and nothing ever scans for them.
+ * Optionally the cache holds at most maxSize entries, evicting the least
+ * recently used (LRU) or least frequently used (LFU, oldest first among
+ * equals) to make room. Lookups on an unbounded cache take no lock.
+ * <p>
+ * Entries put with a ttl of FOREVER never expire, though a bounded cache
+ * may still evict them.
+ * <p>
+ * Listeners hear about entries that expired or were evicted, not ones
+ * removed by hand. Hits, misses, evictions and expiries are counted for
+ * each cache name across every clone and module reload, see getStats().
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class ExpiringCache
+{
+    public static final int LRU = 0;
+    public static final int LFU = 1;
+    /**
+     * Causes passed to Listener.removed
+     */
+    public static final int EXPIRED = 0, EVICTED = 1;
+    /**
+     * ttl for entries that never expire
+     */
+    public static final long FOREVER = 0;
+    private static final Map stats = new TreeMap();
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+    private final ConcurrentHashMap map = new ConcurrentHashMap();
+    private final long ttl;
+    private final int maxSize;
+    private final int policy;
+    private final Stats counts;
+    private volatile Listener[] listeners = NO_LISTENERS;
+    /**
+     * Entries of a bounded cache in eviction order: buckets of ascending use
+     * count, each oldest first. An LRU cache only ever has the one bucket.
+     */
+    private Bucket lowest;
+
+    public interface Listener
+    {
+        /**
+         * Called after the entry has gone, outside the cache's lock.
+         * @param cause EXPIRED or EVICTED
+         */
+        public void removed(Object key, Object value, int cause);
+    }
+
+    private final class Entry implements Runnable
+    {
+        private final Object key, value;
+        private final long deadline;
+        private final boolean expires;
+        private TimingWheel.Timeout timeout;
+        private Bucket bucket;
+        private Entry prev, next;
+
+        private Entry(Object key, Object value, long ttl) {
+            this.key = key;
+            this.value = value;
+            this.expires = ttl != FOREVER;
+            this.deadline = System.nanoTime() + ttl * 1000000L;
+        }
+
+        private boolean isExpired() {
+            return expires && (System.nanoTime() - deadline >= 0);
+        }
+
+        public void run() {
+            expire(this);
+        }
+    }
+
+    private static final class Bucket
+    {
+        private final int count;
+        private Bucket prev, next;
+        private Entry head, tail;
+
+        private Bucket(int count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Stats
+    {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expirations = new AtomicLong();
+    }
+
+    /**
+     * An unbounded cache.
+     * @param name what to list its statistics under
+     * @param ttl milliseconds entries live for, or FOREVER
+     */
+    public ExpiringCache(String name, long ttl) {
+        this(name, ttl, 0, LRU);
+    }
+
+    /**
+     * @param name what to list its statistics under
+     * @param ttl milliseconds entries live for, or FOREVER
+     * @param maxSize most entries to hold, 0 for no limit
+     * @param policy LRU or LFU, which entry to evict when full
+     */
+    public ExpiringCache(String name, long ttl, int maxSize, int policy) {
+        if ((policy != LRU) && (policy != LFU)) throw new IllegalArgumentException("Unknown policy " + policy);
+        this.ttl = ttl;
+        this.maxSize = (maxSize < 0) ? 0 : maxSize;
+        this.policy = policy;
+        this.counts = statsFor(name);
+    }
+
+    public synchronized void addListener(Listener listener) {
+        final Listener[] added = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, added, 0, listeners.length);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    /**
+     * @return the live value for key, or null
+     */
+    public Object get(Object key) {
+        final Entry entry = (Entry)map.get(key);
+        if ((entry == null) || entry.isExpired()) {
+            counts.misses.incrementAndGet();
+            return null;
+        }
+        counts.hits.incrementAndGet();
+        if (maxSize > 0) {
+            synchronized (this) {
+                touch(entry);
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * Unlike get this doesn't count as a use of the entry.
+     */
+    public boolean containsKey(Object key) {
+        final Entry entry = (Entry)map.get(key);
+        return (entry != null) && !entry.isExpired();
+    }
+
+    /**
+     * Store value under key for the cache's ttl.
+     * @return the live value it replaced, or null
+     */
+    public Object put(Object key, Object value) {
+        return put(key, value, ttl);
+    }
+
+    /**
+     * Store value under key for the given number of milliseconds, or
+     * FOREVER.
+     * @return the live value it replaced, or null
+     */
+    public Object put(Object key, Object value, long ttl) {
+        final Entry entry = new Entry(key, value, ttl);
+        Entry old, evicted = null;
+        synchronized (this) {
+            old = (Entry)map.put(key, entry);
+            if (old != null) {
+                discard(old);
+            } else if ((maxSize > 0) && (map.size() > maxSize)) {
+                evicted = lowest.head;
+                map.remove(evicted.key);
+                discard(evicted);
+            }
+            if (maxSize > 0) link(entry);
+            if (entry.expires) entry.timeout = TimingWheel.getInstance().schedule(entry, ttl);
+        }
+        if (evicted != null) {
+            counts.evictions.incrementAndGet();
+            notify(evicted, EVICTED);
+        }
+        return ((old == null) || old.isExpired()) ? null : old.value;
+    }
+
+    /**
+     * Copy every live entry from another cache, keeping what is left of
+     * their lifetimes. Used to carry a module's cache over a reload.
+     */
+    public void putAll(ExpiringCache from) {
+        final long now = System.nanoTime();
+        for (Iterator i = from.map.values().iterator(); i.hasNext();) {
+            final Entry entry = (Entry)i.next();
+            if (!entry.expires) {
+                put(entry.key, entry.value, FOREVER);
+                continue;
+            }
+            final long left = (entry.deadline - now) / 1000000L;
+            if (left > 0) put(entry.key, entry.value, left);
+        }
+    }
+
+    /**
+     * @return the live value that was removed, or null
+     */
+    public Object remove(Object key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = (Entry)map.remove(key);
+            if (entry == null) return null;
+            discard(entry);
+        }
+        return entry.isExpired() ? null : entry.value;
+    }
+
+    /**
+     * @return a copy of the keys, which may include some that have only
+     * just expired
+     */
+    public List keys() {
+        return new ArrayList(map.keySet());
+    }
+
+    public synchronized void clear() {
+        for (Iterator i = map.values().iterator(); i.hasNext();) {
+            final Entry entry = (Entry)i.next();
+            if (entry.timeout != null) entry.timeout.cancel();
+        }
+        map.clear();
+        lowest = null;
+    }
+
+    /**
+     * @return number of entries, which may include some that have only just
+     * expired
+     */
+    public int size() {
+        return map.size();
+    }
+
+    private void expire(Entry entry) {
+        synchronized (this) {
+            if (!map.remove(entry.key, entry)) return;
+            if (entry.bucket != null) unlink(entry);
+        }
+        counts.expirations.incrementAndGet();
+        notify(entry, EXPIRED);
+    }
+
+    /**
+     * Entry has left the map, stop its timer and take it out of the eviction
+     * order. Caller holds the lock.
+     */
+    private void discard(Entry entry) {
+        if (entry.timeout != null) entry.timeout.cancel();
+        if (entry.bucket != null) unlink(entry);
+    }
+
+    private void notify(Entry entry, int cause) {
+        final Listener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].removed(entry.key, entry.value, cause);
+        }
+    }
+
+    private void link(Entry entry) {
+        if ((lowest == null) || (lowest.count != 1)) {
+            final Bucket first = new Bucket(1);
+            first.next = lowest;
+            if (lowest != null) lowest.prev = first;
+            lowest = first;
+        }
+        append(entry, lowest);
+    }
+
+    /**
+     * Move a used entry to the back of its bucket, or for LFU the back of the
+     * next bucket up. Caller holds the lock.
+     */
+    private void touch(Entry entry) {
+        final Bucket bucket = entry.bucket;
+        if (bucket == null) return;
+        if ((policy == LRU) || (bucket.count == Integer.MAX_VALUE)) {
+            if (bucket.tail == entry) return;
+            unlink(entry);
+            append(entry, bucket);
+            return;
+        }
+        Bucket up = bucket.next;
+        if ((up == null) || (up.count != bucket.count + 1)) {
+            up = new Bucket(bucket.count + 1);
+            up.prev = bucket;
+            up.next = bucket.next;
+            if (bucket.next != null) bucket.next.prev = up;
+            bucket.next = up;
+        }
+        unlink(entry);
+        append(entry, up);
+    }
+
+    private static void append(Entry entry, Bucket bucket) {
+        entry.bucket = bucket;
+        entry.prev = bucket.tail;
+        entry.next = null;
+        if (bucket.tail != null) {
+            bucket.tail.next = entry;
+        } else {
+            bucket.head = entry;
+        }
+        bucket.tail = entry;
+    }
+
+    private void unlink(Entry entry) {
+        final Bucket bucket = entry.bucket;
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            bucket.head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            bucket.tail = entry.prev;
+        }
+        entry.prev = entry.next = null;
+        entry.bucket = null;
+        if (bucket.head == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                lowest = bucket.next;
+            }
+            if (bucket.next != null) bucket.next.prev = bucket.prev;
+        }
+    }
+
+    private static Stats statsFor(String name) {
+        synchronized (stats) {
+            Stats found = (Stats)stats.get(name);
+            if (found == null) {
+                found = new Stats();
+                stats.put(name, found);
+            }
+            return found;
+        }
+    }
+
+    // counts are shared by every cache with the same name
+
+    public long getHits() {
+        return counts.hits.get();
+    }
+
+    public long getMisses() {
+        return counts.misses.get();
+    }
+
+    public long getEvictions() {
+        return counts.evictions.get();
+    }
+
+    public long getExpirations() {
+        return counts.expirations.get();
+    }
+
+    /**
+     * @return one line per cache name with its hit rate, evictions and
+     * expiries
+     */
+    public static List getStats() {
+        final List lines = new ArrayList();
+        synchronized (stats) {
+            for (Iterator i = stats.entrySet().iterator(); i.hasNext();) {
+                final Map.Entry entry = (Map.Entry)i.next();
+                final Stats s = (Stats)entry.getValue();
+                final long hits = s.hits.get(), lookups = hits + s.misses.get();
+                lines.add(entry.getKey() + ": " + lookups + " lookups, " +
+                        ((lookups == 0) ? 0 : hits * 100 / lookups) + "% hits, " + s.evictions.get() +
+                        " evicted, " + s.expirations.get() + " expired");
+            }
+        }
+        return lines;
+    }
+}
@@ -46,8 +46,7 @@ public class FloodProtect
     }
 
     public void send(OutboundMessage message, int priority) {
-        queue.add(message, priority);
-        addedMessage();
+        if (queue.add(message, priority)) addedMessage();
     }
 
     public synchronized void addedMessage() {
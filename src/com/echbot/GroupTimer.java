@@ -25,16 +25,20 @@ import org.apache.log4j.Logger;
 import java.util.*;
 
 /**
+ * A group of scheduled tasks which can all be cancelled together, along with
+ * any child groups. Tasks are kept on the shared <code>TimingWheel</code>
+ * and run one at a time on its executor thread, so no two timer tasks ever
+ * run at once.
  * @author Chris Pearson
  * @version $Id: GroupTimer.java,v 1.4 2003/09/22 23:02:12 chris Exp $
  */
 public class GroupTimer
 {
     private static final Logger log = Logger.getLogger(GroupTimer.class);
-    private static final Timer timer = new Timer(true);
+    private static final TimingWheel wheel = TimingWheel.getInstance();
     private final GroupTimer parent;
-    private final List children = new ArrayList();
-    private final List tasks = new ArrayList();
+    private final Set children = new LinkedHashSet();
+    private final Set tasks = new HashSet();
     private boolean cancelled = false;
 
     /**
@@ -55,12 +59,13 @@ public class GroupTimer
 
     public void schedule(final Runnable task, long delay) {
         if (delay < 5) delay = 5;
-        TimerTask newTask = new TimerTask()
+        final TimingWheel.Timeout[] handle = new TimingWheel.Timeout[1];
+        Runnable groupTask = new Runnable()
         {
             public void run() {
                 synchronized (tasks) {
                     if (cancelled) return;
-                    tasks.remove(this);
+                    tasks.remove(handle[0]);
                 }
                 try {
                     task.run();
@@ -71,8 +76,8 @@ public class GroupTimer
         };
         synchronized (tasks) {
             if (cancelled) return;
-            tasks.add(newTask);
-            timer.schedule(newTask, delay);
+            handle[0] = wheel.schedule(groupTask, delay);
+            tasks.add(handle[0]);
         }
     }
 
@@ -84,13 +89,13 @@ public class GroupTimer
         }
         synchronized (children) {
             while (!children.isEmpty()) {
-                ((GroupTimer)children.get(0)).cancel();
+                ((GroupTimer)children.iterator().next()).cancel();
             }
         }
         synchronized (tasks) {
             cancelled = true;
             for (Iterator i = tasks.iterator(); i.hasNext();) {
-                ((TimerTask)i.next()).cancel();
+                ((TimingWheel.Timeout)i.next()).cancel();
                 i.remove();
             }
         }
@@ -101,4 +106,13 @@ public class GroupTimer
             return tasks.isEmpty();
         }
     }
+
+    /**
+     * @return a line describing the shared timer: pending tasks and how late
+     * tasks have been starting
+     */
+    public static String getStats() {
+        return wheel.getPending() + " tasks pending, " + wheel.getFired() + " run, avg " +
+                wheel.getAverageLateness() + "ms late, max " + wheel.getMaxLateness() + "ms late";
+    }
 }
@@ -21,46 +21,304 @@
 package com.echbot;
 
 import com.echbot.messages.InboundMessage;
-import org.apache.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Bounded multi-producer multi-consumer queue of messages waiting for a
+ * worker. The slots are preallocated in a ring, and each slot carries a
+ * sequence number which tells producers and consumers whose turn it is, so
+ * neither side ever takes a lock on the fast path. Readers (one per clone)
+ * block in <code>add</code> when the ring is full, workers block in
+ * <code>getItem</code> when it is empty; how they wait is decided by the
+ * <code>WaitStrategy</code>.
  * @author Chris Pearson
  * @version $Id: InboundQueue.java,v 1.4 2003/08/28 13:56:19 chris Exp $
  */
 public class InboundQueue
 {
-    private final List queue = new ArrayList();
+    public static final int DEFAULT_CAPACITY = 8192;
+    private final PaddedCounter head = new PaddedCounter();
+    private final PaddedCounter tail = new PaddedCounter();
+    private final QueueEntry[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
 
     public static class QueueEntry
     {
         public final InboundMessage message;
         public final Clone clone;
+        public final long queuedAt;
 
         private QueueEntry(InboundMessage message, Clone clone) {
             this.message = message;
             this.clone = clone;
+            this.queuedAt = System.nanoTime();
         }
     }
 
+    /**
+     * Decides what a thread does while the queue is empty (for workers) or
+     * full (for readers). Implementations may return spuriously, callers
+     * always re-check the queue.
+     */
+    public interface WaitStrategy
+    {
+        public void awaitItem(InboundQueue queue);
+
+        public void awaitSpace(InboundQueue queue);
+
+        /**
+         * Called after an item has been published or consumed.
+         */
+        public void signal();
+    }
+
+    /**
+     * Parks waiting threads on a lock condition. Cheap on CPU, a few
+     * microseconds of wakeup latency. Only touches the lock when somebody is
+     * waiting. Uses a <code>ReentrantLock</code> rather than a monitor so a
+     * waiting virtual thread gives its carrier back.
+     */
+    public static class BlockingWait implements WaitStrategy
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        public void awaitItem(InboundQueue queue) {
+            waiting.incrementAndGet();
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    changed.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+                waiting.decrementAndGet();
+            }
+        }
+
+        public void awaitSpace(InboundQueue queue) {
+            waiting.incrementAndGet();
+            lock.lock();
+            try {
+                while (queue.isFull()) {
+                    changed.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+                waiting.decrementAndGet();
+            }
+        }
+
+        public void signal() {
+            if (waiting.get() == 0) return;
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Busy-spins, then yields, then parks for short periods. Lowest latency
+     * but burns a core per idle worker, so only worth it on dedicated boxes.
+     */
+    public static class SpinningWait implements WaitStrategy
+    {
+        private static final int SPIN_TRIES = 100;
+        private static final int YIELD_TRIES = 200;
+        private static final long PARK_NANOS = 50000;
+
+        public void awaitItem(InboundQueue queue) {
+            int tries = 0;
+            while (queue.isEmpty()) {
+                idle(tries++);
+            }
+        }
+
+        public void awaitSpace(InboundQueue queue) {
+            int tries = 0;
+            while (queue.isFull()) {
+                idle(tries++);
+            }
+        }
+
+        private static void idle(int tries) {
+            if (tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (tries < YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        public void signal() {
+        }
+    }
+
+    /**
+     * Sequence counter kept on its own cache line so that producers bumping
+     * the tail don't invalidate the line consumers are reading the head from.
+     */
+    private static final class PaddedCounter extends AtomicLong
+    {
+        private static final long serialVersionUID = 1L;
+        public long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    public InboundQueue() {
+        this(DEFAULT_CAPACITY, new BlockingWait());
+    }
+
+    /**
+     * @param capacity maximum number of queued messages, rounded up to the
+     * next power of two
+     * @param waitStrategy how threads wait for items or space
+     */
+    public InboundQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2) capacity = 2;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) throw new IllegalArgumentException("Capacity too large: " + capacity);
+        this.buffer = new QueueEntry[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Create a queue from the <code>inbound,capacity</code> and
+     * <code>inbound,wait</code> (blocking or spinning) config settings.
+     * @param capacity config value for the capacity, may be null
+     * @param wait config value for the wait strategy, may be null
+     * @return a new queue
+     */
+    public static InboundQueue create(String capacity, String wait) {
+        int size = DEFAULT_CAPACITY;
+        if (capacity != null) {
+            try {
+                size = Integer.parseInt(capacity.trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        WaitStrategy strategy = "spinning".equalsIgnoreCase(wait) ? (WaitStrategy)new SpinningWait() : new BlockingWait();
+        return new InboundQueue(size, strategy);
+    }
+
     public void add(InboundMessage message, Clone clone) {
-        synchronized (queue) {
-            queue.add(new QueueEntry(message, clone));
-            queue.notify();
+        final QueueEntry entry = new QueueEntry(message, clone);
+        while (!offer(entry)) {
+            waitStrategy.awaitSpace(this);
         }
+        waitStrategy.signal();
+    }
+
+    /**
+     * Like add, but gives up rather than waiting for space.
+     * @return false if the queue was full
+     */
+    public boolean tryAdd(InboundMessage message, Clone clone) {
+        if (!offer(new QueueEntry(message, clone))) return false;
+        waitStrategy.signal();
+        return true;
     }
 
     public QueueEntry getItem() {
-        synchronized (queue) {
-            while (queue.isEmpty()) {
-                try {
-                    queue.wait();
-                } catch (InterruptedException e) {
+        QueueEntry entry;
+        while ((entry = poll()) == null) {
+            waitStrategy.awaitItem(this);
+        }
+        waitStrategy.signal();
+        return entry;
+    }
+
+    /**
+     * Move up to <code>max</code> waiting entries into the given list without
+     * blocking.
+     * @param into list to append entries to
+     * @param max maximum number of entries to move
+     * @return the number of entries moved
+     */
+    public int drainTo(List into, int max) {
+        int count = 0;
+        QueueEntry entry;
+        while ((count < max) && ((entry = poll()) != null)) {
+            into.add(entry);
+            count++;
+        }
+        if (count > 0) waitStrategy.signal();
+        return count;
+    }
+
+    private boolean offer(QueueEntry entry) {
+        while (true) {
+            final long pos = tail.get();
+            final int index = (int)pos & mask;
+            final long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = entry;
+                    // full fence, pairs with the waiter count in BlockingWait
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    private QueueEntry poll() {
+        while (true) {
+            final long pos = head.get();
+            final int index = (int)pos & mask;
+            final long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    final QueueEntry entry = buffer[index];
+                    buffer[index] = null;
+                    sequences.set(index, pos + mask + 1);
+                    return entry;
                 }
+            } else if (diff < 0) {
+                return null;
             }
-            return (QueueEntry)queue.remove(0);
         }
     }
+
+    public boolean isEmpty() {
+        final long pos = head.get();
+        return sequences.get((int)pos & mask) - (pos + 1) < 0;
+    }
+
+    public boolean isFull() {
+        final long pos = tail.get();
+        return sequences.get((int)pos & mask) - pos < 0;
+    }
+
+    /**
+     * @return approximate number of queued messages
+     */
+    public int size() {
+        final long size = tail.get() - head.get();
+        return (size < 0) ? 0 : (int)Math.min(size, buffer.length);
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
+import com.echbot.messages.in.ChatMessageIn;
+
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many messages one clone can have waiting for a worker. Once a
+ * clone is over its quota, either its socket reader is paused until the
+ * workers catch up, or (with the shed policy) low-value messages are
+ * dropped. Only plain chat and unrecognised lines can ever be dropped;
+ * commands, numerics and everything else still wait for room. Readers that
+ * mustn't block use offer instead, which keeps hold of a message there's no
+ * room for until the reader retries or discards it.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class InboundQuota
+{
+    static final int DEFAULT_QUOTA = 1024;
+    /** offer results: queued or shed, waiting for the quota, or waiting for the sink */
+    public static final int TAKEN = 0, WAIT = 1, BUSY = 2;
+    private final int quota;
+    private final boolean shed;
+    private final boolean[] sheddable = new boolean[MessageTypes.COUNT];
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition drained = lock.newCondition();
+    private volatile boolean waiting = false;
+    private volatile Runnable resume;
+    // the message offer kept back, and for which reader; guarded by lock
+    private InboundMessage kept;
+    private boolean keptAdmitted;
+    private Runnable keptFor;
+
+    /**
+     * Where offered messages go once admitted.
+     */
+    public interface Sink
+    {
+        /**
+         * Must not block.
+         * @return false if there's no room for the message
+         */
+        public boolean tryAdd(InboundMessage message);
+    }
+
+    /**
+     * @param quota inbound,quota setting, may be null
+     * @param policy inbound,overload setting: "pause" (the default) or "shed"
+     * @param shedTypes inbound,shed setting: which messages the shed policy
+     * may drop, from "chat" (non-command chat) and "unknown". Defaults to chat.
+     */
+    public InboundQuota(String quota, String policy, String shedTypes) {
+        int limit = DEFAULT_QUOTA;
+        if (quota != null) {
+            try {
+                limit = Integer.parseInt(quota.trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        this.quota = (limit < 1) ? 1 : limit;
+        this.shed = "shed".equalsIgnoreCase(policy);
+        StringTokenizer tokens = new StringTokenizer((shedTypes == null) ? "chat" : shedTypes, ", ");
+        while (tokens.hasMoreTokens()) {
+            final String next = tokens.nextToken();
+            if ("chat".equalsIgnoreCase(next)) {
+                sheddable[MessageTypes.CHAT_MESSAGE] = true;
+            } else if ("unknown".equalsIgnoreCase(next)) {
+                sheddable[MessageTypes.UNKNOWN] = true;
+            }
+        }
+    }
+
+    /**
+     * Called by the clone's reader before queueing a message. May block.
+     * @return true if the message should be queued, false if it was shed
+     */
+    boolean admit(InboundMessage message) {
+        if (queued.get() >= quota) {
+            if (shed && canShed(message)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            pauses.incrementAndGet();
+            lock.lock();
+            try {
+                waiting = true;
+                while (queued.get() >= quota) {
+                    drained.awaitUninterruptibly();
+                }
+            } finally {
+                waiting = false;
+                lock.unlock();
+            }
+        }
+        queued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Like admit, but never blocks: if the message can't be passed to the
+     * sink yet it is kept, and the reader should stop until resume has been
+     * run and then call retry.
+     * @param resume identifies the reader; run on a worker thread once there
+     * is room again if this returns WAIT
+     * @return TAKEN if the message was queued or shed, WAIT if the clone is
+     * over quota, or BUSY if the sink was full, in which case nothing will
+     * run resume and the reader must arrange its own retry
+     */
+    public int offer(InboundMessage message, Sink sink, Runnable resume) {
+        return offer(message, false, sink, resume);
+    }
+
+    /**
+     * Offer the message kept back for this reader again.
+     * @return as for offer, TAKEN if nothing was kept for this reader
+     */
+    public int retry(Sink sink, Runnable resume) {
+        final InboundMessage message;
+        final boolean admitted;
+        lock.lock();
+        try {
+            if ((kept == null) || (keptFor != resume)) return TAKEN;
+            message = kept;
+            admitted = keptAdmitted;
+            kept = null;
+            keptFor = null;
+        } finally {
+            lock.unlock();
+        }
+        return offer(message, admitted, sink, resume);
+    }
+
+    /**
+     * Forget the message kept back for a reader that has closed, giving back
+     * its place in the quota.
+     */
+    public void discard(Runnable resume) {
+        final boolean release;
+        lock.lock();
+        try {
+            if ((kept == null) || (keptFor != resume)) return;
+            release = keptAdmitted;
+            kept = null;
+            keptFor = null;
+        } finally {
+            lock.unlock();
+        }
+        if (release) done();
+    }
+
+    private int offer(InboundMessage message, boolean admitted, Sink sink, Runnable whenDrained) {
+        if (!admitted && (queued.get() >= quota)) {
+            if (shed && canShed(message)) {
+                dropped.incrementAndGet();
+                return TAKEN;
+            }
+            lock.lock();
+            try {
+                dropStale(whenDrained);
+                // set before checking again, so done() either sees it or left room
+                resume = whenDrained;
+                if (queued.get() >= quota) {
+                    pauses.incrementAndGet();
+                    keep(message, false, whenDrained);
+                    return WAIT;
+                }
+                resume = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!admitted) queued.incrementAndGet();
+        if (sink.tryAdd(message)) return TAKEN;
+        lock.lock();
+        try {
+            dropStale(whenDrained);
+            keep(message, true, whenDrained);
+        } finally {
+            lock.unlock();
+        }
+        return BUSY;
+    }
+
+    /**
+     * Only called with the lock held. Gives back the place of a message left
+     * behind by a reader that closed without discarding it.
+     */
+    private void dropStale(Runnable reader) {
+        if ((kept != null) && (keptFor != reader)) {
+            if (keptAdmitted) queued.decrementAndGet();
+            kept = null;
+            keptFor = null;
+        }
+    }
+
+    /**
+     * Only called with the lock held.
+     */
+    private void keep(InboundMessage message, boolean admitted, Runnable reader) {
+        kept = message;
+        keptAdmitted = admitted;
+        keptFor = reader;
+    }
+
+    /**
+     * Called by a worker once it has finished with one of the clone's
+     * messages.
+     */
+    public void done() {
+        if ((queued.decrementAndGet() < quota) && (waiting || (resume != null))) {
+            final Runnable drainedTask;
+            lock.lock();
+            try {
+                drained.signalAll();
+                drainedTask = resume;
+                resume = null;
+            } finally {
+                lock.unlock();
+            }
+            if (drainedTask != null) drainedTask.run();
+        }
+    }
+
+    private boolean canShed(InboundMessage message) {
+        if (!sheddable[message.getTypeId()]) return false;
+        return !(message instanceof ChatMessageIn) || !((ChatMessageIn)message).isCommand();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getPauses() {
+        return pauses.get();
+    }
+}
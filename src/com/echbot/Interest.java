@@ -0,0 +1,107 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.in.*;
+
+import java.util.Collection;
+
+/**
+ * Says which messages of a registered type a module actually wants, so that
+ * ModuleSet can skip the module without visiting it. The channel a message
+ * is about is worked out once per message; each interest then only has to
+ * index an array or look the channel up in a set.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class Interest
+{
+    private static final int MAX_NUMERIC = 999;
+    private final boolean[] numerics;
+    private final Collection channels;
+
+    private Interest(boolean[] numerics, Collection channels) {
+        this.numerics = numerics;
+        this.channels = channels;
+    }
+
+    /**
+     * @param numbers the server numerics wanted, for SystemIn registrations
+     */
+    public static Interest numerics(int[] numbers) {
+        final boolean[] wanted = new boolean[MAX_NUMERIC + 1];
+        for (int i = 0; i < numbers.length; i++) {
+            if ((numbers[i] >= 0) && (numbers[i] <= MAX_NUMERIC)) wanted[numbers[i]] = true;
+        }
+        return new Interest(wanted, null);
+    }
+
+    /**
+     * Interest in messages about any of the given channels. The collection is
+     * kept rather than copied, so a module can pass a live (thread-safe) view
+     * of the channels it's looking after, and should hold names in lower
+     * case. Messages that aren't about a channel never match.
+     * @param channels lower case channel names
+     */
+    public static Interest channels(Collection channels) {
+        return new Interest(null, channels);
+    }
+
+    /**
+     * @return the channel a message is about, or null if it isn't about one
+     */
+    static String channelOf(InboundMessage message) {
+        if (message instanceof ChatMessageIn) {
+            final ChatMessageIn chat = (ChatMessageIn)message;
+            return chat.isToChannel() ? chat.getTo() : null;
+        } else if (message instanceof JoinIn) {
+            return ((JoinIn)message).getChannel();
+        } else if (message instanceof PartIn) {
+            return ((PartIn)message).getChannel();
+        } else if (message instanceof KickIn) {
+            return ((KickIn)message).getChannel();
+        } else if (message instanceof ModeIn) {
+            return ((ModeIn)message).getChannel();
+        } else if (message instanceof TopicIn) {
+            return ((TopicIn)message).getTarget();
+        }
+        return null;
+    }
+
+    boolean wantsChannel() {
+        return channels != null;
+    }
+
+    /**
+     * @param message the message being dispatched
+     * @param channel channelOf(message) in lower case if wantsChannel(),
+     * otherwise not used
+     */
+    boolean accepts(InboundMessage message, String channel) {
+        if (numerics != null) {
+            if (!(message instanceof SystemIn)) return false;
+            final int number = ((SystemIn)message).getNumber();
+            if ((number < 0) || (number > MAX_NUMERIC) || !numerics[number]) return false;
+        }
+        return (channels == null) || ((channel != null) && channels.contains(channel));
+    }
+}
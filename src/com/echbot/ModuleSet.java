@@ -21,7 +21,9 @@
 package com.echbot;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
+import com.echbot.messages.in.ChatMessageIn;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -37,13 +39,41 @@ import java.util.*;
 class ModuleSet
 {
     private static final Logger log = Logger.getLogger(ModuleSet.class);
-    private static final Map moduleClasses = new HashMap();
+    private static final Visitors NO_VISITORS = new Visitors(new MessageVisitor[0], new Interest[0]);
+    private static final Map moduleClasses = new LinkedHashMap();
     private static final Set moduleSets = Collections.synchronizedSet(new HashSet());
     private static ModuleLoader loader = new ModuleLoader();
     private final Map modules = new HashMap();
     private final Clone clone;
     private final Map regMessages = new HashMap();
-    private final Map regUserEvents = new HashMap();
+    private final EventBus events = new EventBus();
+    private final CommandRouter commands = new CommandRouter();
+    /**
+     * Visitors for each message type id, rebuilt whenever registrations change
+     * and only ever replaced, never modified, so received() needs no lock.
+     */
+    private volatile Visitors[] dispatch = emptyDispatch();
+
+    /**
+     * The modules registered for one message type, with what each of them is
+     * interested in (null for everything).
+     */
+    private static final class Visitors
+    {
+        private final MessageVisitor[] modules;
+        private final Interest[] interests;
+        private final boolean needChannel;
+
+        private Visitors(MessageVisitor[] modules, Interest[] interests) {
+            this.modules = modules;
+            this.interests = interests;
+            boolean channel = false;
+            for (int i = 0; i < interests.length; i++) {
+                if ((interests[i] != null) && interests[i].wantsChannel()) channel = true;
+            }
+            this.needChannel = channel;
+        }
+    }
 
     ModuleSet(Clone clone) {
         this.clone = clone;
@@ -96,58 +126,87 @@ class ModuleSet
         return className.toString();
     }
 
-    void register(Class messageType, UserModule module) {
+    void register(Class messageType, UserModule module, Interest interest) {
+        if (MessageTypes.idOf(messageType) == -1) {
+            log.warn("Can't register for unknown message type " + messageType.getName());
+            return;
+        }
         synchronized (regMessages) {
-            Set modules = (Set)regMessages.get(messageType);
+            Map modules = (Map)regMessages.get(messageType);
             if (modules == null) {
-                modules = new HashSet();
+                // keep registration order so modules are visited predictably
+                modules = new LinkedHashMap();
                 regMessages.put(messageType, modules);
             }
-            modules.add(module);
+            modules.put(module, interest);
+            rebuildDispatch();
         }
     }
 
-    void received(InboundMessage message) {
-        synchronized (regMessages) {
-            Set modules = (Set)regMessages.get(message.getClass());
-            if (modules == null) return;
-            for (Iterator i = modules.iterator(); i.hasNext();) {
-                try {
-                    MessageVisitor visitor = (MessageVisitor)i.next();
-                    message.visit(visitor);
-                } catch (Throwable e) {
-                    log.error("Module error in received(" + message.getClass().getName() + ")", e);
-                }
-            }
+    private static Visitors[] emptyDispatch() {
+        final Visitors[] table = new Visitors[MessageTypes.COUNT];
+        Arrays.fill(table, NO_VISITORS);
+        return table;
+    }
+
+    /**
+     * Compile regMessages into a fresh dispatch table and publish it. Caller
+     * must hold the regMessages lock.
+     */
+    private void rebuildDispatch() {
+        final Visitors[] table = emptyDispatch();
+        for (Iterator i = regMessages.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            final Map modules = (Map)entry.getValue();
+            table[MessageTypes.idOf((Class)entry.getKey())] = new Visitors(
+                    (MessageVisitor[])modules.keySet().toArray(new MessageVisitor[modules.size()]),
+                    (Interest[])modules.values().toArray(new Interest[modules.size()]));
         }
+        dispatch = table;
     }
 
-    void registerForEvent(int id, UserModule module) {
-        synchronized (regUserEvents) {
-            Integer eventId = new Integer(id);
-            Set modules = (Set)regUserEvents.get(eventId);
-            if (modules == null) {
-                modules = new HashSet();
-                regUserEvents.put(eventId, modules);
+    void received(InboundMessage message) {
+        final List changes = clone.getUsers().update(message, clone.getNickname());
+        final Visitors visitors = dispatch[message.getTypeId()];
+        String channel = null;
+        if (visitors.needChannel) {
+            channel = Interest.channelOf(message);
+            if (channel != null) channel = channel.toLowerCase();
+        }
+        for (int i = 0; i < visitors.modules.length; i++) {
+            final Interest interest = visitors.interests[i];
+            if ((interest != null) && !interest.accepts(message, channel)) continue;
+            try {
+                message.visit(visitors.modules[i]);
+            } catch (Throwable e) {
+                log.error("Module error in received(" + message.getClass().getName() + ")", e);
+            }
+        }
+        if ((message.getTypeId() == MessageTypes.CHAT_MESSAGE) && ((ChatMessageIn)message).isCommand()) {
+            commands.dispatch((ChatMessageIn)message);
+        }
+        if (changes != null) {
+            for (int i = 0; i < changes.size(); i++) {
+                final Users.Change change = (Users.Change)changes.get(i);
+                triggerEvent(change.id, change.user);
             }
-            modules.add(module);
         }
     }
 
+    void registerCommand(String trigger, UserModule module, int id) {
+        commands.register(trigger, module, id);
+    }
+
+    List getCommandStats() {
+        return commands.getStats();
+    }
+
+    void registerForEvent(int id, UserModule module, boolean async) {
+        events.subscribe(id, module, async);
+    }
+
     void triggerEvent(int id, Object attachment) {
-        synchronized (regUserEvents) {
-            Integer eventId = new Integer(id);
-            Set modules = (Set)regUserEvents.get(eventId);
-            if (modules == null) return;
-            for (Iterator i = modules.iterator(); i.hasNext();) {
-                UserModule module = (UserModule)i.next();
-                try {
-                    module.userEvent(id, attachment);
-                } catch (Throwable e) {
-                    log.error("Module error in userEvent(..)", e);
-                }
-            }
-        }
+        events.publish(id, attachment);
     }
 
     public void instantiateModules(Map savedState) {
@@ -202,10 +261,10 @@ class ModuleSet
                 ModuleSet moduleSet = (ModuleSet)i.next();
                 synchronized (moduleSet.regMessages) {
                     moduleSet.regMessages.clear();
+                    moduleSet.rebuildDispatch();
                 }
-                synchronized (moduleSet.regUserEvents) {
-                    moduleSet.regUserEvents.clear();
-                }
+                moduleSet.events.clear();
+                moduleSet.commands.clear();
                 final Map moduleState = new HashMap();
                 synchronized (moduleSet.modules) {
                     for (Iterator j = moduleSet.modules.keySet().iterator(); j.hasNext();) {
@@ -274,22 +333,24 @@ class ModuleSet
                     Object module = set.modules.get(name);
                     set.modules.remove(name);
                     synchronized (set.regMessages) {
-                        removeFromSetMap(set.regMessages, module);
+                        removeFromRegistrations(set.regMessages, module);
+                        set.rebuildDispatch();
                     }
-                    synchronized (set.regUserEvents) {
-                        removeFromSetMap(set.regUserEvents, module);
+                    if (module != null) {
+                        set.events.unsubscribe((UserModule)module);
+                        set.commands.unregister((UserModule)module);
                     }
                 }
             }
         }
     }
 
-    private static final void removeFromSetMap(Map map, Object o) {
+    private static final void removeFromRegistrations(Map map, Object o) {
         synchronized (map) {
             for (Iterator i = map.values().iterator(); i.hasNext();) {
-                Set set = (Set)i.next();
-                set.remove(o);
-                if (set.isEmpty()) i.remove();
+                Map modules = (Map)i.next();
+                modules.remove(o);
+                if (modules.isEmpty()) i.remove();
             }
         }
     }
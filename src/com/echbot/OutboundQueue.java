@@ -49,21 +49,27 @@ public class OutboundQueue
             messageList.add(message);
         }
 
+        /**
+         * Swap a topic change into the place of an unsent one for the same
+         * channel, if there is one.
+         * @return true if it replaced a queued topic
+         */
+        private synchronized boolean replaceTopic(TopicOut topic) {
+            final List messageList = (List)messages.get(topic.getTarget());
+            if (messageList == null) return false;
+            for (int i = 0; i < messageList.size(); i++) {
+                if (messageList.get(i) instanceof TopicOut) {
+                    messageList.set(i, topic);
+                    return true;
+                }
+            }
+            return false;
+        }
+
         private synchronized OutboundMessage removeItem() {
             String nextTarget = (String)order.remove(0);
             List messageList = (List)messages.get(nextTarget);
             OutboundMessage result = (OutboundMessage)messageList.remove(0);
-            // If we're sending a topic change, make sure there's no overriding
-            // topic changes later on in the queue
-//            if (result instanceof TopicOut) {
-//                for (Iterator i = messageList.iterator(); i.hasNext();) {
-//                    OutboundMessage message = (OutboundMessage)i.next();
-//                    if (message instanceof TopicOut) {
-//                        result = message;
-//                        i.remove();
-//                    }
-//                }
-//            }
             // If no messages remain for this target, remove it from the order
             if (messageList.isEmpty()) {
                 messages.remove(nextTarget);
@@ -88,10 +94,23 @@ public class OutboundQueue
         }
     }
 
-    public void add(OutboundMessage message, int priority) {
+    /**
+     * Queue a message. A topic change takes the place of any topic change
+     * for the same channel that hasn't been sent yet, since only the last one
+     * would stick anyway.
+     * @return true if the message was queued, false if it replaced one that
+     * was already waiting (so there's nothing extra to send)
+     */
+    public boolean add(OutboundMessage message, int priority) {
         synchronized (priorities) {
+            if (message instanceof TopicOut) {
+                for (Iterator i = priorities.iterator(); i.hasNext();) {
+                    if (((PriorityQueueItem)i.next()).queue.replaceTopic((TopicOut)message)) return false;
+                }
+            }
             getQueue(priority).queue.add(message);
             priorities.notify();
+            return true;
         }
     }
 
@@ -0,0 +1,79 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Attachment for the pickup.start event. It is handed to every clone's
+ * listeners, some on other threads, so it can't be changed once created.
+ * Kept out of the pickup package so listeners such as the db module don't
+ * need the pickup module to load.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class PickupStartEvent
+{
+    private final UserModuleInterface clone;
+    private final String channel;
+    private final String id;
+    private final String ip;
+    private final List players;
+
+    public PickupStartEvent(UserModuleInterface clone, String channel, String id, String ip, List players) {
+        this.clone = clone;
+        this.channel = channel;
+        this.id = id;
+        this.ip = ip;
+        this.players = Collections.unmodifiableList(new ArrayList(players));
+    }
+
+    /**
+     * @return the clone the game started on
+     */
+    public UserModuleInterface getClone() {
+        return clone;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the game's id within its channel
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    /**
+     * @return unmodifiable list of the nicks that were picked
+     */
+    public List getPlayers() {
+        return players;
+    }
+}
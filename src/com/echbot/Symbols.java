@@ -0,0 +1,273 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import org.apache.log4j.Logger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A clone's table of nick and channel names. Each name is folded once,
+ * using the casemapping the server advertised in RPL_ISUPPORT (rfc1459 if
+ * it didn't say), and interned as a {@link Symbol} with a small integer id.
+ * Names that only differ by case, including <tt>[]\~</tt> against
+ * <tt>{}|^</tt> under rfc1459, give the same Symbol, so modules can key
+ * their maps on Symbols and compare them with == rather than lowercasing
+ * strings. A Symbol lives as long as something holds on to it; once
+ * nothing does, it drops out of the table and the name gets a new one next
+ * time. A new table is made for each connection, before any modules are
+ * loaded.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class Symbols
+{
+    private static final Logger log = Logger.getLogger(Symbols.class);
+    public static final int ASCII = 0;
+    public static final int RFC1459 = 1;
+    public static final int STRICT_RFC1459 = 2;
+    private volatile int casemapping = RFC1459;
+    // folded name -> Ref, and the exact names we've been asked for -> Ref
+    private final ConcurrentHashMap folded = new ConcurrentHashMap();
+    private final ConcurrentHashMap exact = new ConcurrentHashMap();
+    private final ReferenceQueue collected = new ReferenceQueue();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * An interned nick or channel. Two Symbols from the same table are the
+     * same name exactly when they are the same object.
+     */
+    public static final class Symbol
+    {
+        private final int id;
+        private volatile String name;
+        private volatile String key;
+
+        private Symbol(int id, String name, String key) {
+            this.id = id;
+            this.name = name;
+            this.key = key;
+        }
+
+        /**
+         * @return number unique to this Symbol within its table
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the name as it was first seen, or as the nick was last
+         * changed to
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the name folded to lower case by the server's casemapping
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public int hashCode() {
+            return id;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Ref extends WeakReference
+    {
+        private final ConcurrentHashMap map;
+        private final String name;
+
+        private Ref(Symbol symbol, ConcurrentHashMap map, String name, ReferenceQueue queue) {
+            super(symbol, queue);
+            this.map = map;
+            this.name = name;
+        }
+    }
+
+    /**
+     * @return ASCII, RFC1459 or STRICT_RFC1459
+     */
+    public int getCasemapping() {
+        return casemapping;
+    }
+
+    /**
+     * Pick up CASEMAPPING from an RPL_ISUPPORT (005) line. Anything we don't
+     * know is treated as rfc1459.
+     */
+    public void isupport(String tokens) {
+        final StringTokenizer words = new StringTokenizer(tokens, " ");
+        while (words.hasMoreTokens()) {
+            final String next = words.nextToken();
+            if (next.startsWith(":")) break;
+            if (!next.regionMatches(true, 0, "CASEMAPPING=", 0, 12)) continue;
+            final String value = next.substring(12);
+            int mapping = RFC1459;
+            if ("ascii".equalsIgnoreCase(value)) {
+                mapping = ASCII;
+            } else if ("strict-rfc1459".equalsIgnoreCase(value)) {
+                mapping = STRICT_RFC1459;
+            }
+            if (mapping != casemapping) setCasemapping(mapping);
+        }
+    }
+
+    /**
+     * Change the casemapping, refolding anything already interned. If two
+     * Symbols now fold to the same name, the table keeps one of them.
+     */
+    synchronized void setCasemapping(int mapping) {
+        log.debug("Using casemapping " + mapping);
+        casemapping = mapping;
+        exact.clear();
+        for (Iterator i = folded.values().iterator(); i.hasNext();) {
+            final Symbol symbol = (Symbol)((Ref)i.next()).get();
+            i.remove();
+            if (symbol == null) continue;
+            symbol.key = fold(symbol.name);
+            folded.putIfAbsent(symbol.key, new Ref(symbol, folded, symbol.key, collected));
+        }
+    }
+
+    /**
+     * @return the Symbol for the name, creating it if need be
+     */
+    public Symbol intern(String name) {
+        expunge();
+        Symbol symbol = lookup(name);
+        if (symbol != null) return symbol;
+        final String key = fold(name);
+        while (true) {
+            final Ref ref = (Ref)folded.get(key);
+            symbol = (ref == null) ? null : (Symbol)ref.get();
+            if (symbol == null) {
+                final Symbol created = new Symbol(nextId.getAndIncrement(), name, key);
+                final Ref newRef = new Ref(created, folded, key, collected);
+                if ((ref == null) ? (folded.putIfAbsent(key, newRef) != null) : !folded.replace(key, ref, newRef)) {
+                    continue;
+                }
+                symbol = created;
+            }
+            exact.put(name, new Ref(symbol, exact, name, collected));
+            return symbol;
+        }
+    }
+
+    /**
+     * Someone has changed their nick to the name, which may only differ by
+     * case from the one they had, so intern it and show it as they now
+     * write it.
+     * @return the Symbol for the name
+     */
+    public Symbol rename(String name) {
+        final Symbol symbol = intern(name);
+        symbol.name = name;
+        return symbol;
+    }
+
+    /**
+     * @return the Symbol for the name, or null if nothing is holding one
+     */
+    public Symbol lookup(String name) {
+        Ref ref = (Ref)exact.get(name);
+        Symbol symbol = (ref == null) ? null : (Symbol)ref.get();
+        if (symbol != null) return symbol;
+        ref = (Ref)folded.get(fold(name));
+        return (ref == null) ? null : (Symbol)ref.get();
+    }
+
+    /**
+     * @return true if the two names are the same under the casemapping
+     */
+    public boolean equals(String a, String b) {
+        if (a.length() != b.length()) return false;
+        final int mapping = casemapping;
+        for (int i = 0; i < a.length(); i++) {
+            if (fold(a.charAt(i), mapping) != fold(b.charAt(i), mapping)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the name in lower case under the casemapping; the same String
+     * if it already was
+     */
+    public String fold(String name) {
+        final int mapping = casemapping;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (fold(c, mapping) != c) {
+                final char[] chars = name.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    chars[j] = fold(chars[j], mapping);
+                }
+                return new String(chars);
+            }
+        }
+        return name;
+    }
+
+    private static char fold(char c, int mapping) {
+        if ((c >= 'A') && (c <= 'Z')) return (char)(c + ('a' - 'A'));
+        if (mapping == ASCII) return c;
+        switch (c) {
+            case '[':
+                return '{';
+            case ']':
+                return '}';
+            case '\\':
+                return '|';
+            case '~':
+                return (mapping == RFC1459) ? '^' : c;
+            default:
+                return c;
+        }
+    }
+
+    private void expunge() {
+        Reference next;
+        while ((next = collected.poll()) != null) {
+            final Ref ref = (Ref)next;
+            ref.map.remove(ref.name, ref);
+        }
+    }
+
+    /**
+     * @return how many names are in the table
+     */
+    public int size() {
+        return folded.size();
+    }
+}
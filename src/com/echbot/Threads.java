@@ -0,0 +1,113 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+
+/**
+ * Starts the bot's long-running threads (socket readers and workers) either
+ * as ordinary platform threads or as virtual threads, depending on the
+ * <code>threads,mode</code> setting. Virtual threads are looked up by
+ * reflection so the bot still builds and runs on JVMs without them, in which
+ * case we quietly fall back to platform threads.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class Threads
+{
+    private static final Logger log = Logger.getLogger(Threads.class);
+    private static final Method ofVirtual, unstarted, name;
+    private static volatile boolean virtual = false;
+
+    static {
+        Method of = null, start = null, setName = null;
+        try {
+            final Class builder = Class.forName("java.lang.Thread$Builder");
+            of = Thread.class.getMethod("ofVirtual", new Class[0]);
+            start = builder.getMethod("unstarted", new Class[]{Runnable.class});
+            setName = builder.getMethod("name", new Class[]{String.class});
+        } catch (Exception e) {
+            of = null;
+        }
+        ofVirtual = of;
+        unstarted = start;
+        name = setName;
+    }
+
+    private Threads() {
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean virtualAvailable() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Choose the execution mode from a <code>threads,mode</code> value.
+     * @param mode "virtual" or "platform" (the default)
+     */
+    public static void setMode(String mode) {
+        boolean wanted = "virtual".equalsIgnoreCase(mode);
+        if (wanted && !virtualAvailable()) {
+            log.warn("Virtual threads not supported by this JVM, using platform threads");
+            wanted = false;
+        }
+        virtual = wanted;
+        log.info("Using " + (virtual ? "virtual" : "platform") + " threads");
+    }
+
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Create and start a thread in the current mode. Platform threads are
+     * daemons if asked, virtual threads always are.
+     * @param task what to run
+     * @param threadName thread name, or null for the default
+     * @param daemon whether a platform thread should be a daemon
+     * @return the started thread
+     */
+    public static Thread start(Runnable task, String threadName, boolean daemon) {
+        Thread thread = virtual ? newVirtual(task, threadName) : null;
+        if (thread == null) {
+            thread = (threadName == null) ? new Thread(task) : new Thread(task, threadName);
+            thread.setDaemon(daemon);
+        }
+        thread.start();
+        return thread;
+    }
+
+    private static Thread newVirtual(Runnable task, String threadName) {
+        try {
+            Object builder = ofVirtual.invoke(null, new Object[0]);
+            if (threadName != null) builder = name.invoke(builder, new Object[]{threadName});
+            return (Thread)unstarted.invoke(builder, new Object[]{task});
+        } catch (Exception e) {
+            log.warn("Couldn't create virtual thread, using a platform thread", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed hierarchical timing wheel. Six levels of 64 slots; level 0 slots
+ * are one tick wide, each slot on level n covers a whole turn of level n-1.
+ * Timeouts sit in doubly linked lists so scheduling and cancelling are both
+ * O(1); when a level comes round, the due slot of the level above is
+ * cascaded down. A ticker thread advances the wheel and hands tasks, as
+ * they fall due, to a single executor thread. Tasks run one at a time, as
+ * they did on the java.util.Timer this replaced, since pickup timeouts,
+ * reconnects and topic renders were written expecting that; a slow task
+ * delays the ones after it but not the ticking.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class TimingWheel implements Runnable
+{
+    private static final Logger log = Logger.getLogger(TimingWheel.class);
+    private static final long TICK_MILLIS = 10;
+    private static final long TICK_NANOS = TICK_MILLIS * 1000000L;
+    private static final int LEVELS = 6;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final TimingWheel instance = new TimingWheel();
+    private final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService executor;
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong totalLateness = new AtomicLong();
+    private volatile long maxLateness = 0;
+    private long currentTick = 0;
+    private int pending = 0;
+
+    /**
+     * A scheduled task. Belongs to the wheel's lock while it is pending.
+     */
+    static final class Timeout implements Runnable
+    {
+        private final TimingWheel owner;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final long deadlineTick;
+        private Timeout prev, next;
+        private int level = -1, slot;
+
+        private Timeout(TimingWheel owner, Runnable task, long deadlineNanos, long deadlineTick) {
+            this.owner = owner;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return true if the task was still pending and now won't run
+         */
+        boolean cancel() {
+            return owner.cancel(this);
+        }
+
+        public void run() {
+            owner.recordLateness(System.nanoTime() - deadlineNanos);
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("Error running timed task:", e);
+            }
+        }
+    }
+
+    private TimingWheel() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Thread ticker = new Thread(this, "Timer-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    static TimingWheel getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param task what to run
+     * @param delay milliseconds from now
+     * @return handle that can be used to cancel the task
+     */
+    Timeout schedule(Runnable task, long delay) {
+        final long deadline = System.nanoTime() + delay * 1000000L;
+        // round up so nothing fires early
+        final long tick = (deadline - startNanos + TICK_NANOS - 1) / TICK_NANOS;
+        final Timeout timeout = new Timeout(this, task, deadline, tick);
+        synchronized (this) {
+            pending++;
+            place(timeout);
+        }
+        return timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.level == -1) return false;
+        unlink(timeout);
+        pending--;
+        return true;
+    }
+
+    private void place(Timeout timeout) {
+        final long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while ((level < LEVELS - 1) && (delta >= (1L << (SLOT_BITS * (level + 1))))) {
+            level++;
+        }
+        long tick = timeout.deadlineTick;
+        if (delta <= 0) {
+            // already due, run on the next tick
+            tick = currentTick + 1;
+        } else if (delta >= (1L << (SLOT_BITS * LEVELS))) {
+            // beyond the top level, park it as far out as we can and let it cascade
+            tick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        final int slot = (int)(tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = wheel[level][slot];
+        if (timeout.next != null) timeout.next.prev = timeout;
+        wheel[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.level = -1;
+    }
+
+    /**
+     * Take everything out of the given slot.
+     */
+    private Timeout detach(int level, int slot) {
+        final Timeout head = wheel[level][slot];
+        wheel[level][slot] = null;
+        for (Timeout t = head; t != null; t = t.next) {
+            t.level = -1;
+        }
+        return head;
+    }
+
+    /**
+     * Advance the wheel by one tick, collecting any tasks that are now due.
+     */
+    private void tick(List due) {
+        currentTick++;
+        // cascade higher levels whenever the level below wraps
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) break;
+            final int slot = (int)(currentTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+            expireOrPlace(detach(level, slot), due);
+        }
+        expireOrPlace(detach(0, (int)currentTick & SLOT_MASK), due);
+    }
+
+    private void expireOrPlace(Timeout t, List due) {
+        while (t != null) {
+            final Timeout next = t.next;
+            t.prev = t.next = null;
+            if (t.deadlineTick <= currentTick) {
+                pending--;
+                due.add(t);
+            } else {
+                place(t);
+            }
+            t = next;
+        }
+    }
+
+    public void run() {
+        final List due = new ArrayList();
+        while (true) {
+            final long nowTick = (System.nanoTime() - startNanos) / TICK_NANOS;
+            synchronized (this) {
+                while (currentTick < nowTick) {
+                    tick(due);
+                }
+            }
+            for (int i = 0; i < due.size(); i++) {
+                try {
+                    executor.execute((Runnable)due.get(i));
+                } catch (RuntimeException e) {
+                    log.error("Couldn't hand timed task to executor", e);
+                }
+            }
+            due.clear();
+            final long sleepNanos = startNanos + (nowTick + 1) * TICK_NANOS - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int)(sleepNanos % 1000000L));
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    private void recordLateness(long nanos) {
+        if (nanos < 0) nanos = 0;
+        fired.incrementAndGet();
+        totalLateness.addAndGet(nanos);
+        if (nanos > maxLateness) maxLateness = nanos;
+    }
+
+    synchronized int getPending() {
+        return pending;
+    }
+
+    long getFired() {
+        return fired.get();
+    }
+
+    /**
+     * @return average milliseconds tasks started after their deadline
+     */
+    long getAverageLateness() {
+        final long count = fired.get();
+        return (count == 0) ? 0 : totalLateness.get() / count / 1000000L;
+    }
+
+    long getMaxLateness() {
+        return maxLateness / 1000000L;
+    }
+}
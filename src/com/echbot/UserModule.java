@@ -26,16 +26,12 @@ import com.echbot.messages.MessageVisitor;
 import com.echbot.messages.OutboundMessage;
 import com.echbot.messages.in.*;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @author Chris Pearson
  * @version $Id: UserModule.java,v 1.14 2003/09/22 23:02:12 chris Exp $
  */
 public abstract class UserModule implements MessageVisitor
 {
-    private static final List userEvents = new ArrayList();
     public final UserModuleInterface parent;
     private final GroupTimer ourTimer;
 
@@ -48,16 +44,12 @@ public abstract class UserModule implements MessageVisitor
 
     public UserModule(UserModuleInterface parent) {
         this.parent = parent;
-        ourTimer = new GroupTimer(((Clone)parent).getTimer());
+        // only a module outside any clone, as in a test, has no parent timer
+        ourTimer = (parent instanceof Clone) ? new GroupTimer(((Clone)parent).getTimer()) : new GroupTimer();
     }
 
     public static final int getUserEventId(String eventString) {
-        synchronized (userEvents) {
-            if (!userEvents.contains(eventString)) {
-                userEvents.add(eventString);
-            }
-            return userEvents.indexOf(eventString);
-        }
+        return EventType.forName(eventString).getId();
     }
 
     public final void register(Class messageType) {
@@ -67,6 +59,30 @@ public abstract class UserModule implements MessageVisitor
         parent.register(messageType, this);
     }
 
+    /**
+     * Like register(messageType), but messages the interest doesn't match are
+     * filtered out before the module is visited, e.g.
+     * <code>register(SystemIn.class, Interest.numerics(new int[]{353}))</code>.
+     */
+    public final void register(Class messageType, Interest interest) {
+        if (!InboundMessage.class.isAssignableFrom(messageType)) {
+            throw new IllegalArgumentException(messageType + " not an InboundMessage");
+        }
+        parent.register(messageType, this, interest);
+    }
+
+    /**
+     * Have command(id, ..) called for chat lines with the given !command. A
+     * trigger ending in '*' matches every command starting with the rest of
+     * it, so "!add*" also catches "!add1". Each module is called at most once
+     * per line, for its exact trigger or else its longest matching prefix.
+     * @param trigger e.g. "!who" or "!add*"
+     * @param id passed back to command(..) to say which trigger matched
+     */
+    public final void registerCommand(String trigger, int id) {
+        parent.registerCommand(trigger, this, id);
+    }
+
     public final Config getConfig() {
         return parent.getConfig();
     }
@@ -141,6 +157,9 @@ public abstract class UserModule implements MessageVisitor
     public void userEvent(int id, Object attachment) {
     }
 
+    public void command(int id, ChatMessageIn message) {
+    }
+
     public Object getState() {
         return null;
     }
@@ -23,6 +23,8 @@ package com.echbot;
 import com.echbot.config.Config;
 import com.echbot.messages.OutboundMessage;
 
+import java.util.List;
+
 /**
  * @author Chris Pearson
  * @version $Id: UserModuleInterface.java,v 1.4 2003/09/22 23:02:12 chris Exp $
@@ -41,6 +43,15 @@ public interface UserModuleInterface
      */
     public void register(Class messageClass, UserModule module);
 
+    /**
+     * Register the given module to receive notification of events of type
+     * messageClass, but only those matching the interest.
+     * @param messageClass
+     * @param module
+     * @param interest which messages to pass on, or null for all of them
+     */
+    public void register(Class messageClass, UserModule module, Interest interest);
+
     /**
      * Register the given module to receive user events with the given id.
      * @param id
@@ -48,6 +59,42 @@ public interface UserModuleInterface
      */
     public void registerForEvent(int id, UserModule module);
 
+    /**
+     * Register the given module to receive user events with the given id. If
+     * async is true the module's userEvent is called on the event pool rather
+     * than on the thread that triggered the event; use this for listeners
+     * that may block, and don't rely on ordering relative to other listeners.
+     * @param id
+     * @param module
+     * @param async
+     */
+    public void registerForEvent(int id, UserModule module, boolean async);
+
+    /**
+     * Register the given module to handle chat commands matching the trigger.
+     * @param trigger command such as "!who", or a prefix such as "!add*"
+     * @param module
+     * @param id passed to the module's command method when the trigger matches
+     */
+    public void registerCommand(String trigger, UserModule module, int id);
+
+    /**
+     * @return the nick and channel names seen on the current connection,
+     * folded by the server's casemapping
+     */
+    public Symbols getSymbols();
+
+    /**
+     * @return everyone the clone can see on its channels
+     */
+    public Users getUsers();
+
+    /**
+     * @return call counts and timings for each of this clone's command
+     * triggers, busiest first
+     */
+    public List getCommandStats();
+
     /**
      * @return the current config object
      */
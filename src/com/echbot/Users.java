@@ -0,0 +1,352 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot;
+
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
+import com.echbot.messages.in.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everyone the clone can see on its channels: nick, user@host once we've
+ * seen it, the account they're known by and which channels they're on. It
+ * is brought up to date once per inbound message, before any module sees
+ * the message, so modules can look people up here rather than each keeping
+ * their own lists of nicks. Records are replaced, never changed, so a User
+ * can be kept or passed to another thread.
+ * <p>
+ * Modules hear about changes through user events, each with the User as it
+ * is afterwards: users.renamed after a nick change, users.lost once someone
+ * has quit or is no longer on any of our channels, and users.account when
+ * we learn who someone is. Events for a message are triggered after every
+ * module has seen the message itself.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class Users
+{
+    public static final String RENAMED = "users.renamed";
+    public static final String LOST = "users.lost";
+    public static final String ACCOUNT = "users.account";
+    private static final int RPL_NAMREPLY = 353;
+    private static final int RENAMED_ID = EventType.forName(RENAMED).getId();
+    private static final int LOST_ID = EventType.forName(LOST).getId();
+    private static final int ACCOUNT_ID = EventType.forName(ACCOUNT).getId();
+    private static final Symbols.Symbol[] NONE = new Symbols.Symbol[0];
+    private final Symbols symbols;
+    private final UserModuleInterface clone;
+    private final ConcurrentHashMap users = new ConcurrentHashMap();
+
+    /**
+     * One person as we last saw them.
+     */
+    public static final class User
+    {
+        private final Symbols.Symbol symbol;
+        private final String nick, userhost, account, previousNick;
+        private final Symbols.Symbol[] channels;
+
+        private User(Symbols.Symbol symbol, String nick, String userhost, String account, String previousNick,
+                     Symbols.Symbol[] channels) {
+            this.symbol = symbol;
+            this.nick = nick;
+            this.userhost = userhost;
+            this.account = account;
+            this.previousNick = previousNick;
+            this.channels = channels;
+        }
+
+        public Symbols.Symbol getSymbol() {
+            return symbol;
+        }
+
+        public String getNick() {
+            return nick;
+        }
+
+        /**
+         * @return user@host, or null if we haven't seen it yet
+         */
+        public String getUserhost() {
+            return userhost;
+        }
+
+        /**
+         * @return nick!user@host, or null if we haven't seen the user@host
+         */
+        public String getHostmask() {
+            return (userhost == null) ? null : nick + "!" + userhost;
+        }
+
+        /**
+         * @return the account they're known by, or null if we don't know
+         */
+        public String getAccount() {
+            return account;
+        }
+
+        /**
+         * @return the nick they had before their last nick change, or null
+         */
+        public String getPreviousNick() {
+            return previousNick;
+        }
+
+        /**
+         * @return names of the channels they're on, lower case as the
+         * inbound messages give them
+         */
+        public List getChannels() {
+            final List res = new ArrayList(channels.length);
+            for (int i = 0; i < channels.length; i++) {
+                res.add(channels[i].getName());
+            }
+            return Collections.unmodifiableList(res);
+        }
+
+        public boolean isOn(Symbols.Symbol channel) {
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i] == channel) return true;
+            }
+            return false;
+        }
+
+        private User withChannels(Symbols.Symbol[] on) {
+            return new User(symbol, nick, userhost, account, previousNick, on);
+        }
+
+        public String toString() {
+            return (userhost == null) ? nick : getHostmask();
+        }
+    }
+
+    /**
+     * A user event waiting to be triggered.
+     */
+    public static final class Change
+    {
+        public final int id;
+        public final User user;
+
+        private Change(int id, User user) {
+            this.id = id;
+            this.user = user;
+        }
+    }
+
+    /**
+     * @param symbols the clone's names
+     * @param clone where to trigger users.account
+     */
+    public Users(Symbols symbols, UserModuleInterface clone) {
+        this.symbols = symbols;
+        this.clone = clone;
+    }
+
+    /**
+     * @return the user with that nick, or null if we can't see them
+     */
+    public User get(String nick) {
+        final Symbols.Symbol symbol = symbols.lookup(nick);
+        return (symbol == null) ? null : (User)users.get(symbol);
+    }
+
+    public User get(Symbols.Symbol nick) {
+        return (nick == null) ? null : (User)users.get(nick);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Record the account someone is known by and trigger users.account.
+     * @param hostmask nick!user@host they were using when they identified
+     * @param account
+     * @return false if we can't see them
+     */
+    public boolean learnAccount(String hostmask, String account) {
+        final User learnt;
+        synchronized (this) {
+            final int bang = hostmask.indexOf('!');
+            final User user = get((bang == -1) ? hostmask : hostmask.substring(0, bang));
+            if (user == null) return false;
+            final String userhost = (bang == -1) ? user.userhost : hostmask.substring(bang + 1);
+            if (account.equals(user.account) && ((userhost == null) || userhost.equals(user.userhost))) return true;
+            learnt = new User(user.symbol, user.nick, userhost, account, user.previousNick, user.channels);
+            users.put(user.symbol, learnt);
+        }
+        clone.triggerEvent(ACCOUNT_ID, learnt);
+        return true;
+    }
+
+    /**
+     * Apply one inbound message. The clone must pass them all, in the order
+     * the server sent them.
+     * @param message
+     * @param ourNick the clone's current nickname
+     * @return Changes to trigger once modules have seen the message, or null
+     */
+    public synchronized List update(InboundMessage message, String ourNick) {
+        switch (message.getTypeId()) {
+            case MessageTypes.JOIN:
+                final JoinIn join = (JoinIn)message;
+                joined(join.getChannel(), join.getJoiner(), userhostOf(join.getJoinerWithHost()));
+                return null;
+            case MessageTypes.PART:
+                final PartIn part = (PartIn)message;
+                return left(part.getChannel(), part.getLeaver(), ourNick);
+            case MessageTypes.KICK:
+                final KickIn kick = (KickIn)message;
+                return left(kick.getChannel(), kick.getKicked(), ourNick);
+            case MessageTypes.QUIT:
+                final User quitter = get(((QuitIn)message).getQuitter());
+                if (quitter == null) return null;
+                users.remove(quitter.symbol);
+                return changed(null, LOST_ID, quitter);
+            case MessageTypes.NICK:
+                return renamed((NickIn)message);
+            case MessageTypes.CHAT_MESSAGE:
+                final ChatMessageIn chat = (ChatMessageIn)message;
+                final User from = get(chat.getFrom());
+                if ((from != null) && (from.userhost == null)) {
+                    users.put(from.symbol, new User(from.symbol, from.nick, userhostOf(chat.getFromWithHost()),
+                            from.account, from.previousNick, from.channels));
+                }
+                return null;
+            case MessageTypes.SYSTEM:
+                if (((SystemIn)message).getNumber() == RPL_NAMREPLY) names(((SystemIn)message).getMessage());
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void joined(String channel, String nick, String userhost) {
+        final Symbols.Symbol name = symbols.intern(channel);
+        final Symbols.Symbol symbol = symbols.intern(nick);
+        final User user = (User)users.get(symbol);
+        if (user == null) {
+            users.put(symbol, new User(symbol, nick, userhost, null, null, new Symbols.Symbol[]{name}));
+        } else if (!user.isOn(name) || ((userhost != null) && !userhost.equals(user.userhost))) {
+            final Symbols.Symbol[] on = user.isOn(name) ? user.channels : plus(user.channels, name);
+            users.put(symbol, new User(symbol, user.nick, (userhost == null) ? user.userhost : userhost,
+                    user.account, user.previousNick, on));
+        }
+    }
+
+    private List left(String channel, String nick, String ourNick) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        if (name == null) return null;
+        if (symbols.equals(nick, ourNick)) return forget(name);
+        final User user = get(nick);
+        if ((user == null) || !user.isOn(name)) return null;
+        final Symbols.Symbol[] on = minus(user.channels, name);
+        if (on.length > 0) {
+            users.put(user.symbol, user.withChannels(on));
+            return null;
+        }
+        users.remove(user.symbol);
+        return changed(null, LOST_ID, user.withChannels(on));
+    }
+
+    /**
+     * We've left the channel, so we can no longer see anyone on it. Doesn't
+     * happen often enough to be worth keeping a list of who is on each one.
+     */
+    private List forget(Symbols.Symbol channel) {
+        List res = null;
+        for (Iterator i = users.values().iterator(); i.hasNext();) {
+            final User user = (User)i.next();
+            if (!user.isOn(channel)) continue;
+            final Symbols.Symbol[] on = minus(user.channels, channel);
+            if (on.length > 0) {
+                users.put(user.symbol, user.withChannels(on));
+            } else {
+                i.remove();
+                res = changed(res, LOST_ID, user.withChannels(on));
+            }
+        }
+        return res;
+    }
+
+    private List renamed(NickIn message) {
+        final User user = get(message.getOldNick());
+        if (user == null) return null;
+        final Symbols.Symbol symbol = symbols.rename(message.getNewNick());
+        final String userhost = (user.userhost == null) ? userhostOf(message.getOldNickWithHost()) : user.userhost;
+        final User renamed = new User(symbol, message.getNewNick(), userhost, user.account, user.nick, user.channels);
+        users.remove(user.symbol);
+        users.put(symbol, renamed);
+        return changed(null, RENAMED_ID, renamed);
+    }
+
+    private void names(String reply) {
+        final StringTokenizer names = new StringTokenizer(reply, ",: ");
+        // channel type symbol, then the channel
+        if (!names.hasMoreTokens()) return;
+        names.nextToken();
+        if (!names.hasMoreTokens()) return;
+        final String channel = names.nextToken().toLowerCase();
+        while (names.hasMoreTokens()) {
+            final String name = names.nextToken();
+            final char first = name.charAt(0);
+            joined(channel, ((first == '@') || (first == '+')) ? name.substring(1) : name, null);
+        }
+    }
+
+    private static List changed(List changes, int id, User user) {
+        if (changes == null) changes = new ArrayList(1);
+        changes.add(new Change(id, user));
+        return changes;
+    }
+
+    private static String userhostOf(String hostmask) {
+        final int bang = hostmask.indexOf('!');
+        return (bang == -1) ? null : hostmask.substring(bang + 1);
+    }
+
+    private static Symbols.Symbol[] plus(Symbols.Symbol[] on, Symbols.Symbol channel) {
+        final Symbols.Symbol[] res = new Symbols.Symbol[on.length + 1];
+        System.arraycopy(on, 0, res, 0, on.length);
+        res[on.length] = channel;
+        return res;
+    }
+
+    private static Symbols.Symbol[] minus(Symbols.Symbol[] on, Symbols.Symbol channel) {
+        for (int i = 0; i < on.length; i++) {
+            if (on[i] == channel) {
+                if (on.length == 1) return NONE;
+                final Symbols.Symbol[] res = new Symbols.Symbol[on.length - 1];
+                System.arraycopy(on, 0, res, 0, i);
+                System.arraycopy(on, i + 1, res, i, res.length - i);
+                return res;
+            }
+        }
+        return on;
+    }
+}
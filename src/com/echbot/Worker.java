@@ -22,6 +22,10 @@ package com.echbot;
 
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * @author Chris Pearson
  * @version $Id: Worker.java,v 1.9 2003/08/27 19:48:37 chris Exp $
@@ -29,33 +33,78 @@ import org.apache.log4j.Logger;
 public class Worker implements Runnable
 {
     private static final Logger log = Logger.getLogger(Worker.class);
+    private static final int BATCH_SIZE = 16;
     private static int nextWorker = 1;
     private final InboundQueue queue;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong totalWait = new AtomicLong();
+    private volatile long maxWait = 0;
 
     public Worker(InboundQueue queue) {
         this.queue = queue;
     }
 
     public void run() {
-        becomeWorker(queue);
-    }
-
-    public static void becomeWorker(InboundQueue queue) {
         synchronized (Worker.class) {
             Thread.currentThread().setName("Worker-" + (nextWorker++));
         }
+        final List batch = new ArrayList(BATCH_SIZE);
         while (true) {
+            // block for one entry, then take whatever else is already waiting
+            batch.add(queue.getItem());
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            for (int i = 0; i < batch.size(); i++) {
+                process((InboundQueue.QueueEntry)batch.get(i));
+            }
+            batch.clear();
+        }
+    }
+
+    public static void becomeWorker(InboundQueue queue) {
+        new Worker(queue).run();
+    }
+
+    private void process(InboundQueue.QueueEntry work) {
+        final long waited = System.nanoTime() - work.queuedAt;
+        processed.incrementAndGet();
+        totalWait.addAndGet(waited);
+        if (waited > maxWait) maxWait = waited;
+        try {
+            ModuleSet modules = work.clone.getModules();
+            if (modules != null) modules.received(work.message);
+        } catch (Exception e) {
+            log.warn("Failed to process work:", e);
             try {
-                final InboundQueue.QueueEntry work = queue.getItem();
-                ModuleSet modules = work.clone.getModules();
-                if (modules != null) modules.received(work.message);
-            } catch (Exception e) {
-                log.warn("Failed to process work:", e);
-                try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException e1) {
-                }
+                Thread.sleep(2000);
+            } catch (InterruptedException e1) {
             }
+        } finally {
+            work.clone.inboundDone();
         }
     }
+
+    public InboundQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return number of messages taken off the queue so far
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return total nanoseconds messages spent queued before being picked up
+     */
+    public long getTotalWait() {
+        return totalWait.get();
+    }
+
+    /**
+     * @return longest time in nanoseconds a message has spent queued
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
 }
@@ -24,13 +24,28 @@ import com.echbot.GroupTimer;
 import org.apache.log4j.Logger;
 
 import java.io.*;
-import java.util.Iterator;
-import java.util.Properties;
-import java.util.Set;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 
 /**
  * Class storing all the data for a bot. Saves state and settings between
  * runs.
+ * <p>
+ * Reads never lock: the current state is an immutable snapshot which writers
+ * replace as a whole. So that a single put doesn't have to copy tens of
+ * thousands of keys, a snapshot is a large base map plus a small map of the
+ * changes made since the base was built; once enough changes have piled up
+ * they're folded into a new base.
+ * <p>
+ * Changes are appended to a journal as they're made (see ConfigJournal).
+ * Every so often the journal is compacted: the current state is written to
+ * a temporary file which is then renamed over echbot.cfg, and the journals
+ * it covers are deleted. At startup any journals left behind are replayed
+ * on top of echbot.cfg, and compacted at the first check, once the modules
+ * have registered the defaults that shouldn't be saved. Journal records are
+ * queued under the lock but written to disk outside it.
  * @author Chris Pearson
  * @version $Id: Config.java,v 1.17 2003/09/29 20:24:31 chris Exp $
  */
@@ -38,11 +53,105 @@ public class Config
 {
     private static final Logger log = Logger.getLogger(Config.class);
     private static final String CONFIG_FILENAME = "echbot.cfg";
-    private static final int AUTOSAVE_INTERVAL = 60000;
+    private static final String JOURNAL_PREFIX = CONFIG_FILENAME + ".journal.";
+    private static final String TEMP_FILENAME = CONFIG_FILENAME + ".tmp";
+    private static final int COMPACT_CHECK_INTERVAL = 60000;
+    // compact once the journal has this many records...
+    private static final int COMPACT_RECORDS = 1024;
+    // ...or it has anything in it and we haven't compacted for this long
+    private static final long COMPACT_MAX_AGE = 3600000;
+    // changes kept on top of the base before it gets rebuilt
+    private static final int MAX_OVERLAY = 256;
+    // marks a removed key in a snapshot's overlay
+    private static final Object REMOVED = new Object();
+    private final File directory;
     private final Properties defaults = new Properties();
     private final GroupTimer timer = new GroupTimer();
-    private Properties config;
-    private boolean changed = false;
+    private final VarCache vars = new VarCache();
+    private final KeyIndex index = new KeyIndex();
+    private volatile Snapshot snapshot;
+    private volatile long writes = 0;
+    // one compaction at a time; taken before the config's own lock
+    private final Object compactLock = new Object();
+    private ConfigJournal journal;
+    private long journalNumber;
+    private boolean journalBroken = false;
+    // journals were replayed at startup and haven't been compacted yet
+    private boolean replayPending = false;
+    private long lastCompacted = System.currentTimeMillis();
+    private long compactions = 0;
+    private long compactMillis = 0;
+
+    /**
+     * Immutable view of the config. Neither map is modified once the snapshot
+     * has been published.
+     */
+    private static final class Snapshot
+    {
+        private final Map base;
+        private final Map overlay;
+        private volatile Set keys;
+
+        private Snapshot(Map base, Map overlay) {
+            this.base = base;
+            this.overlay = overlay;
+        }
+
+        private String get(String key) {
+            final Object value = overlay.get(key);
+            if (value == null) return (String)base.get(key);
+            return (value == REMOVED) ? null : (String)value;
+        }
+
+        /**
+         * @param changes key to new value, or to REMOVED
+         */
+        private Snapshot with(Map changes) {
+            if (overlay.size() + changes.size() <= MAX_OVERLAY) {
+                final Map newOverlay = new HashMap(overlay);
+                newOverlay.putAll(changes);
+                return new Snapshot(base, newOverlay);
+            }
+            final Map newBase = new HashMap(base);
+            apply(newBase, overlay);
+            apply(newBase, changes);
+            return new Snapshot(newBase, Collections.EMPTY_MAP);
+        }
+
+        private static void apply(Map map, Map changes) {
+            for (Iterator i = changes.entrySet().iterator(); i.hasNext();) {
+                final Map.Entry entry = (Map.Entry)i.next();
+                if (entry.getValue() == REMOVED) {
+                    map.remove(entry.getKey());
+                } else {
+                    map.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private Set keySet() {
+            Set res = keys;
+            if (res == null) {
+                final Set all = new HashSet(base.keySet());
+                for (Iterator i = overlay.entrySet().iterator(); i.hasNext();) {
+                    final Map.Entry entry = (Map.Entry)i.next();
+                    if (entry.getValue() == REMOVED) {
+                        all.remove(entry.getKey());
+                    } else {
+                        all.add(entry.getKey());
+                    }
+                }
+                keys = res = Collections.unmodifiableSet(all);
+            }
+            return res;
+        }
+
+        private Map toMap() {
+            final Map res = new HashMap(base);
+            apply(res, overlay);
+            return res;
+        }
+    }
 
     /**
      * Creates a new config object. The current config is loaded, or if none
@@ -50,7 +159,17 @@ public class Config
      * @throws IOException if there is an error loading or creating the config
      */
     public Config() throws IOException {
-        File file = new File(CONFIG_FILENAME);
+        this(new File("."));
+    }
+
+    /**
+     * Like Config(), but for the echbot.cfg and journals in another
+     * directory.
+     */
+    public Config(File directory) throws IOException {
+        this.directory = directory;
+        File file = file(CONFIG_FILENAME);
+        Properties config;
         if (file.exists() && file.canRead()) {
             config = new Properties();
             config.load(new BufferedInputStream(new FileInputStream(file)));
@@ -58,14 +177,64 @@ public class Config
         } else {
             config = createConfig();
         }
-        final Runnable saveTask = new Runnable()
+        final Map loaded = new HashMap(config);
+        final long[] journals = findJournals();
+        int replayed = 0;
+        for (int i = 0; i < journals.length; i++) {
+            replayed += ConfigJournal.replay(journalFile(journals[i]), loaded);
+        }
+        snapshot = new Snapshot(loaded, Collections.EMPTY_MAP);
+        for (Iterator i = loaded.keySet().iterator(); i.hasNext();) {
+            index.update((String)i.next(), true);
+        }
+        index.addListener("vars", vars);
+        journalNumber = (journals.length == 0) ? 1 : journals[journals.length - 1] + 1;
+        journal = new ConfigJournal(journalFile(journalNumber));
+        if (replayed > 0) {
+            log.info("Replayed " + replayed + " config changes from " + journals.length + " journal(s)");
+            replayPending = true;
+        } else {
+            for (int i = 0; i < journals.length; i++) {
+                journalFile(journals[i]).delete();
+            }
+        }
+        final Runnable compactTask = new Runnable()
         {
             public void run() {
-                save();
-                timer.schedule(this, AUTOSAVE_INTERVAL);
+                compact(false);
+                timer.schedule(this, COMPACT_CHECK_INTERVAL);
             }
         };
-        timer.schedule(saveTask, AUTOSAVE_INTERVAL);
+        timer.schedule(compactTask, COMPACT_CHECK_INTERVAL);
+    }
+
+    /**
+     * @return the numbers of the journal files on disk, in order
+     */
+    private long[] findJournals() {
+        final String[] names = directory.list();
+        final List found = new ArrayList();
+        for (int i = 0; (names != null) && (i < names.length); i++) {
+            if (!names[i].startsWith(JOURNAL_PREFIX)) continue;
+            try {
+                found.add(Long.valueOf(names[i].substring(JOURNAL_PREFIX.length())));
+            } catch (NumberFormatException e) {
+            }
+        }
+        Collections.sort(found);
+        final long[] res = new long[found.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = ((Long)found.get(i)).longValue();
+        }
+        return res;
+    }
+
+    private File file(String name) {
+        return new File(directory, name);
+    }
+
+    private File journalFile(long number) {
+        return file(JOURNAL_PREFIX + number);
     }
 
     private Properties createConfig() throws IOException {
@@ -76,7 +245,7 @@ public class Config
         properties.put("bot1,channels", "#qlpickup.se");
         properties.put("bot1,nickname", "ra3bot");
 
-        File file = new File(CONFIG_FILENAME);
+        File file = file(CONFIG_FILENAME);
         FileOutputStream configFile = new FileOutputStream(file);
         BufferedOutputStream bos = new BufferedOutputStream(configFile);
         properties.store(bos, "Automatically generated echbot.cfg");
@@ -90,8 +259,8 @@ public class Config
      * @param key unique reference of the config key
      * @return true if the config contains an item by this name, false if not
      */
-    public synchronized boolean containsKey(Object key) {
-        return config.containsKey(key);
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && (snapshot.get((String)key) != null);
     }
 
     /**
@@ -101,8 +270,8 @@ public class Config
      * @return the value associated with the given key, or null if the given key
      * does not exist in the config
      */
-    public synchronized String get(String key) {
-        return config.getProperty(key);
+    public String get(String key) {
+        return snapshot.get(key);
     }
 
     /**
@@ -110,69 +279,313 @@ public class Config
      * @param key unique reference of the config key
      * @param value the value to be associated with the given key
      */
-    public synchronized void put(String key, String value) {
-        changed = true;
-        config.setProperty(key, value);
+    public void put(String key, String value) {
+        if ((key == null) || (value == null)) throw new NullPointerException();
+        final ConfigJournal queuedOn;
+        synchronized (this) {
+            snapshot = snapshot.with(Collections.singletonMap(key, value));
+            written(key, value);
+            try {
+                journal.put(key, value);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+            queuedOn = journal;
+        }
+        flush(queuedOn);
+    }
+
+    /**
+     * Apply several changes at once, so they are published together and only
+     * cost one new snapshot.
+     * @param changes config keys mapped to their new values, or to null for
+     * keys that should be removed
+     */
+    public void putAll(Map changes) {
+        if (changes.isEmpty()) return;
+        final ConfigJournal queuedOn;
+        synchronized (this) {
+            queuedOn = publish(changes);
+        }
+        flush(queuedOn);
     }
 
     /**
-     * Get the set of all keys in the config object. Should synchronize this
-     * on the config object.
+     * Called with the lock held.
+     * @return the journal the changes were queued on
+     */
+    private ConfigJournal publish(Map changes) {
+        final Map applied = new HashMap();
+        for (Iterator i = changes.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            final String key = (String)entry.getKey();
+            if (key == null) throw new NullPointerException();
+            applied.put(key, (entry.getValue() == null) ? REMOVED : entry.getValue());
+        }
+        final Snapshot before = snapshot;
+        snapshot = before.with(applied);
+        for (Iterator i = applied.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            final String key = (String)entry.getKey();
+            if ((entry.getValue() == REMOVED) && (before.get(key) == null)) continue;
+            written(key, (entry.getValue() == REMOVED) ? null : (String)entry.getValue());
+            try {
+                if (entry.getValue() == REMOVED) {
+                    journal.remove(key);
+                } else {
+                    journal.put(key, (String)entry.getValue());
+                }
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Get the set of all keys in the config object. The set is a snapshot: it
+     * can't be modified, and later changes to the config don't show up in
+     * it, so there's no need to lock anything while iterating over it.
      * @return the <code>Set</code> of all keys defined in the config
      */
-    public synchronized Set keySet() {
-        return config.keySet();
+    public Set keySet() {
+        return snapshot.keySet();
     }
 
     /**
      * Remove a key from the config, along with its associated value.
      * @param key unique reference of the config key
      */
-    public synchronized void remove(String key) {
-        changed = config.containsKey(key);
-        config.remove(key);
+    public void remove(String key) {
+        final ConfigJournal queuedOn;
+        synchronized (this) {
+            if (snapshot.get(key) == null) return;
+            snapshot = snapshot.with(Collections.singletonMap(key, REMOVED));
+            written(key, null);
+            try {
+                journal.remove(key);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+            queuedOn = journal;
+        }
+        flush(queuedOn);
     }
 
-    private final synchronized void save() {
-        if (!changed) return;
-        changed = false;
+    /**
+     * Write out what has been queued on the journal, without the lock, so
+     * readers of the config's lock-protected state don't wait on the disk.
+     */
+    private void flush(ConfigJournal queuedOn) {
         try {
-            File file = new File(CONFIG_FILENAME);
-            FileOutputStream configFile = new FileOutputStream(file);
-            BufferedOutputStream bos = new BufferedOutputStream(configFile);
+            queuedOn.flush();
+        } catch (IOException e) {
+            synchronized (this) {
+                journalFailed(e);
+            }
+        }
+    }
 
-            Properties nonVars = new Properties();
-            nonVars.putAll(config);
-            Properties theVars = new Properties();
-            theVars.putAll(nonVars);
-            for (Iterator i = nonVars.keySet().iterator(); i.hasNext();) {
-                final String key = (String)i.next();
-                if (defaults.containsKey(key) && defaults.getProperty(key).equals(nonVars.get(key))) {
-                    i.remove();
-                    theVars.remove(key);
-                } else if (key.startsWith("vars,")) {
-                    i.remove();
-                } else {
-                    theVars.remove(key);
+    /**
+     * The journal can't be trusted any more, so get everything onto disk
+     * with a compaction as soon as we can. Called with the lock held.
+     */
+    private void journalFailed(IOException e) {
+        if (!journalBroken) log.warn("Error writing config journal, will rewrite " + CONFIG_FILENAME, e);
+        journalBroken = true;
+    }
+
+    /**
+     * Called with the lock held once a write has been published.
+     * @param value the new value, or null if the key was removed
+     */
+    private void written(String key, String value) {
+        writes++;
+        index.update(key, value != null);
+        final ConfigListener[] listeners = index.listenersFor(key);
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].configChanged(key, value);
+            } catch (Throwable e) {
+                log.error("Error in config listener", e);
+            }
+        }
+    }
+
+    /**
+     * Find keys by their comma separated segments, without looking at every
+     * key in the config.
+     * @param pattern the segments to match, where "*" matches any one
+     * segment and "abc*" any segment starting with abc, e.g.
+     * "vars,quakenet,*,bans,*" or "bot*,network"
+     * @return a <code>List</code> of the matching keys, in no particular
+     * order
+     */
+    public List keysMatching(String pattern) {
+        return index.keysMatching(pattern);
+    }
+
+    /**
+     * @param prefix one or more whole segments, e.g. "vars,quakenet,#chan,alias"
+     * @return a <code>List</code> of every key that starts with the prefix
+     * followed by a comma, in no particular order
+     */
+    public List keysUnder(String prefix) {
+        return index.keysUnder(prefix);
+    }
+
+    /**
+     * Be told whenever a key under the given prefix (or the prefix itself)
+     * is put or removed.
+     * @param prefix whole segments, e.g. "vars,quakenet,#chan"
+     */
+    public synchronized void addListener(String prefix, ConfigListener listener) {
+        index.addListener(prefix, listener);
+    }
+
+    public synchronized void removeListener(String prefix, ConfigListener listener) {
+        index.removeListener(prefix, listener);
+    }
+
+    /**
+     * @return how many writes have been published, for VarCache
+     */
+    long getWriteCount() {
+        return writes;
+    }
+
+    /**
+     * Look up a variable through the resolution cache. See
+     * ConfigUtils.getVar.
+     */
+    String getVar(String varname, String network, String channel) {
+        return vars.get(this, varname, network, channel);
+    }
+
+    /**
+     * Look up a format variable through the resolution cache, compiled. See
+     * FormatUtils.
+     */
+    Template getTemplate(String varname, String network, String channel) {
+        return vars.getTemplate(this, varname, network, channel);
+    }
+
+    /**
+     * @return lines describing the config's caches
+     */
+    public List getStats() {
+        final List res = new ArrayList();
+        res.add(vars.getStats());
+        synchronized (this) {
+            res.add("Journal: " + journal.getRecords() + " changes since last compaction, " +
+                    compactions + " compactions, last took " + compactMillis + "ms");
+        }
+        return res;
+    }
+
+    /**
+     * Write the current state to echbot.cfg and delete the journals it
+     * covers. The snapshot is taken and a new journal started under the
+     * lock, so nothing is missed; the file itself is written outside it.
+     * @param force compact even if the journal is still small
+     */
+    private void compact(boolean force) {
+        synchronized (compactLock) {
+            final long start = System.currentTimeMillis();
+            final Snapshot state;
+            final Properties defaultsNow;
+            final long covered;
+            synchronized (this) {
+                final long records = journal.getRecords();
+                if (!force && !journalBroken && !replayPending && (records < COMPACT_RECORDS) &&
+                        ((records == 0) || (start - lastCompacted < COMPACT_MAX_AGE))) {
+                    return;
+                }
+                state = snapshot;
+                defaultsNow = (Properties)defaults.clone();
+                covered = journalNumber;
+                try {
+                    final ConfigJournal next = new ConfigJournal(journalFile(journalNumber + 1));
+                    journal.close();
+                    journal = next;
+                    journalNumber++;
+                } catch (IOException e) {
+                    log.warn("Couldn't start a new config journal", e);
+                    return;
                 }
+                journalBroken = false;
+                replayPending = false;
+                lastCompacted = start;
+            }
+            try {
+                writeConfig(state.toMap(), defaultsNow);
+            } catch (IOException e) {
+                log.warn("Error compacting config file", e);
+                // the old journals are still there, so nothing is lost
+                synchronized (this) {
+                    journalBroken = true;
+                }
+                return;
+            }
+            final long[] journals = findJournals();
+            for (int i = 0; i < journals.length; i++) {
+                if (journals[i] <= covered) journalFile(journals[i]).delete();
+            }
+            synchronized (this) {
+                compactions++;
+                compactMillis = System.currentTimeMillis() - start;
             }
+            log.debug("Compacted configuration");
+        }
+    }
+
+    /**
+     * Write the config to a temporary file, make sure it's on disk, and
+     * rename it over echbot.cfg so the file is never half written.
+     */
+    private void writeConfig(Map state, Properties defaults) throws IOException {
+        Properties nonVars = new Properties();
+        Properties theVars = new Properties();
+        for (Iterator i = state.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            final String key = (String)entry.getKey();
+            if (defaults.containsKey(key) && defaults.getProperty(key).equals(entry.getValue())) {
+                continue;
+            } else if (key.startsWith("vars,")) {
+                theVars.put(key, entry.getValue());
+            } else {
+                nonVars.put(key, entry.getValue());
+            }
+        }
+        final File temp = file(TEMP_FILENAME);
+        final FileOutputStream configFile = new FileOutputStream(temp);
+        try {
+            BufferedOutputStream bos = new BufferedOutputStream(configFile);
             nonVars.store(bos, "Automatically generated echbot.cfg");
             bos.write('\n');
             theVars.store(bos, "Everything below are variables");
-
+            bos.flush();
+            configFile.getFD().sync();
+        } finally {
             configFile.close();
-            log.debug("Autosaved configuration");
-        } catch (IOException e) {
-            log.warn("Error autosaving config file", e);
         }
+        Files.move(temp.toPath(), file(CONFIG_FILENAME).toPath(),
+                new CopyOption[]{StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING});
+    }
+
+    /**
+     * Write everything to echbot.cfg now rather than at the next check.
+     */
+    public void save() {
+        compact(true);
     }
 
     /**
-     * Object destructor. Saves the configuration file.
+     * Object destructor. Compacts the configuration file.
      * @throws Throwable if something goes wrong?
      */
     protected void finalize() throws Throwable {
-        save();
+        compact(true);
         super.finalize();
     }
 
@@ -184,6 +597,10 @@ public class Config
     public synchronized void setDefault(String key, String value) {
         boolean reset = !containsKey(key) || get(key).equals(defaults.get(key));
         defaults.setProperty(key, value);
-        if (reset) put(key, value);
+        if (reset && !value.equals(get(key))) {
+            // not journalled: defaults are never saved
+            snapshot = snapshot.with(Collections.singletonMap(key, value));
+            written(key, value);
+        }
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.config;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead log of config changes. Each put or remove is appended as it
+ * happens, so the main config file only has to be rewritten now and then
+ * (see Config.compact) rather than in full every minute. A record is an op
+ * byte followed by the key and, for puts, the value, both in modified UTF-8.
+ * If the bot dies part way through appending, replay stops at the torn
+ * record and everything before it is kept.
+ * <p>
+ * Records are encoded and queued by put and remove, which are cheap enough
+ * to call under the config's lock, and only reach the file on flush. A
+ * record is always written whole, and in the order it was queued.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class ConfigJournal
+{
+    private static final Logger log = Logger.getLogger(ConfigJournal.class);
+    private static final int PUT = 'P';
+    private static final int REMOVE = 'R';
+    private final File file;
+    private final OutputStream out;
+    // encoded records waiting for flush, guarded by itself
+    private final List pending = new ArrayList();
+    private long records = 0;
+    private boolean closed = false;
+
+    /**
+     * Open the journal for appending, creating it if need be.
+     */
+    ConfigJournal(File file) throws IOException {
+        this.file = file;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true));
+    }
+
+    /**
+     * @throws IOException if the record can't be encoded, e.g. the value is
+     * over 64K, in which case nothing is queued
+     */
+    void put(String key, String value) throws IOException {
+        queue(encode(PUT, key, value));
+    }
+
+    void remove(String key) throws IOException {
+        queue(encode(REMOVE, key, null));
+    }
+
+    private static byte[] encode(int op, String key, String value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(op);
+        record.writeUTF(key);
+        if (value != null) record.writeUTF(value);
+        return bytes.toByteArray();
+    }
+
+    private void queue(byte[] record) {
+        synchronized (pending) {
+            pending.add(record);
+            records++;
+        }
+    }
+
+    /**
+     * Write every record queued so far, whoever queued it.
+     */
+    synchronized void flush() throws IOException {
+        final Object[] queued;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            queued = pending.toArray();
+            pending.clear();
+        }
+        if (closed) throw new IOException("Journal " + file.getPath() + " is closed");
+        for (int i = 0; i < queued.length; i++) {
+            out.write((byte[])queued[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return records appended since the journal was opened
+     */
+    long getRecords() {
+        synchronized (pending) {
+            return records;
+        }
+    }
+
+    long getSize() {
+        return file.length();
+    }
+
+    /**
+     * Flush and close. Anything queued afterwards is an error on the next
+     * flush.
+     */
+    synchronized void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.warn("Error flushing config journal", e);
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Error closing config journal", e);
+        }
+    }
+
+    /**
+     * Apply the changes recorded in a journal file to the given map.
+     * @return the number of records applied
+     */
+    static int replay(File file, Map config) throws IOException {
+        if (!file.exists()) return 0;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        int applied = 0;
+        try {
+            while (true) {
+                final int op = in.read();
+                if (op == -1) break;
+                final String key = in.readUTF();
+                if (op == PUT) {
+                    config.put(key, in.readUTF());
+                } else if (op == REMOVE) {
+                    config.remove(key);
+                } else {
+                    log.warn("Corrupt record in " + file.getPath() + ", ignoring the rest");
+                    break;
+                }
+                applied++;
+            }
+        } catch (EOFException e) {
+            log.warn("Incomplete last record in " + file.getPath() + ", ignoring it");
+        } catch (UTFDataFormatException e) {
+            log.warn("Corrupt record in " + file.getPath() + ", ignoring the rest");
+        } finally {
+            in.close();
+        }
+        return applied;
+    }
+}
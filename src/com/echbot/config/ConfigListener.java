@@ -0,0 +1,38 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.config;
+
+/**
+ * Told about changes to config keys under a prefix, see
+ * Config.addListener.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public interface ConfigListener
+{
+    /**
+     * Called on the writing thread, with the config locked, after the change
+     * is visible to readers. Don't do anything slow here.
+     * @param key the key that changed
+     * @param value its new value, or null if it was removed
+     */
+    public void configChanged(String key, String value);
+}
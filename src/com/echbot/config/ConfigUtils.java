@@ -22,8 +22,10 @@ package com.echbot.config;
 
 import org.apache.log4j.Logger;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -54,16 +56,9 @@ public final class ConfigUtils
      */
     public static Set getCloneNames(Config config) {
         final Set cloneNames = new HashSet();
-        synchronized (config) {
-            for (Iterator i = config.keySet().iterator(); i.hasNext();) {
-                String key = (String)i.next();
-                if (key.startsWith("bot") && (key.indexOf(',') != -1)) {
-                    String cloneName = key.substring(0, key.indexOf(','));
-                    if (config.containsKey(cloneName + ",network")) {
-                        cloneNames.add(cloneName);
-                    }
-                }
-            }
+        for (Iterator i = config.keysMatching("bot*,network").iterator(); i.hasNext();) {
+            String key = (String)i.next();
+            cloneNames.add(key.substring(0, key.indexOf(',')));
         }
         return cloneNames;
     }
@@ -103,11 +98,7 @@ public final class ConfigUtils
      * defined
      */
     public static String getVar(Config config, String varname) {
-        final String key = "vars," + varname;
-        if (config.containsKey(key)) {
-            return config.get(key);
-        }
-        return null;
+        return config.getVar(varname, null, null);
     }
 
     /**
@@ -119,16 +110,12 @@ public final class ConfigUtils
      * defined
      */
     public static String getVar(Config config, String varname, String network) {
-        if (network == null) return getVar(config, varname);
-        final String key = "vars," + network + "," + varname;
-        if (config.containsKey(key)) {
-            return config.get(key);
-        }
-        return getVar(config, varname);
+        return config.getVar(varname, network, null);
     }
 
     /**
-     * Retrieves the value of the given channel variable.
+     * Retrieves the value of the given channel variable. Resolved values are
+     * cached by the config until a write touches one of the keys involved.
      * @param config <code>Config</code> object
      * @param varname variable name
      * @param network which irc network the variable belongs to
@@ -137,12 +124,7 @@ public final class ConfigUtils
      * defined
      */
     public static String getVar(Config config, String varname, String network, String channel) {
-        if (channel == null) return getVar(config, varname, network);
-        final String key = "vars," + network + "," + channel + "," + varname;
-        if (config.containsKey(key)) {
-            return config.get(key);
-        }
-        return getVar(config, varname, network);
+        return config.getVar(varname, network, channel);
     }
 
     /**
@@ -181,4 +163,25 @@ public final class ConfigUtils
             config.put("vars," + network + "," + channel + "," + varname, varvalue);
         }
     }
+
+    /**
+     * Sets several channel variables at once, so they're written together.
+     * @param config <code>Config</code> object
+     * @param vars variable names mapped to their new values, or to null for
+     * variables that should be removed
+     * @param network which irc network the variables belong to
+     * @param channel which channel on the network the variables are being used in
+     */
+    public static void setChannelVars(Config config, Map vars, String network, String channel) {
+        if ((network == null) || (channel == null)) {
+            log.warn("setChannelVars called with network=" + network + " and channel=" + channel);
+            return;
+        }
+        final Map changes = new HashMap();
+        for (Iterator i = vars.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            changes.put("vars," + network + "," + channel + "," + entry.getKey(), entry.getValue());
+        }
+        config.putAll(changes);
+    }
 }
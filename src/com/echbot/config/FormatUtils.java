@@ -20,19 +20,26 @@
  */
 package com.echbot.config;
 
-import org.apache.log4j.Logger;
-
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Fills in format variables such as pickup,format with values. Formats are
+ * compiled on first use and cached by the config (see Template), and
+ * output is built in a per-thread buffer that's reused between calls.
  * @author Chris Pearson
  * @version $Id: FormatUtils.java,v 1.5 2003/08/10 10:03:26 chris Exp $
  */
 public final class FormatUtils
 {
-    private static final Logger log = Logger.getLogger(FormatUtils.class);
+    private static final int INITIAL_BUFFER = 512;
+    private static final int MAX_BUFFER = 16384;
+    private static final ThreadLocal buffers = new ThreadLocal()
+    {
+        protected Object initialValue() {
+            return new StringBuilder(INITIAL_BUFFER);
+        }
+    };
 
     private FormatUtils() {
     }
@@ -46,9 +53,9 @@ public final class FormatUtils
     }
 
     public static String format(Config config, String varName, Map vars, String network, String channel) {
-        final StringBuffer result = new StringBuffer();
-        doFormat(varName, network, channel, config, vars, result);
-        return result.toString();
+        final StringBuilder result = builder();
+        Template.render(config, varName, network, channel, vars, result);
+        return finish(result);
     }
 
     public static String format(Config config, String varName, List vars) {
@@ -60,70 +67,24 @@ public final class FormatUtils
     }
 
     public static String format(Config config, String varName, List vars, String network, String channel) {
-        final StringBuffer result = new StringBuffer();
-        doFormat(varName, network, channel, config, vars, result);
-        return result.toString();
+        final StringBuilder result = builder();
+        Template.render(config, varName, varName + ",sep", network, channel, vars, result);
+        return finish(result);
     }
 
-    private static final void doFormat(String varName, String network, String channel, Config config, Map vars, StringBuffer result) {
-        final String var = ConfigUtils.getVar(config, varName, network, channel);
-        if (var == null) {
-            log.warn("No variable settings for " + varName);
-            return;
-        }
-        int index = 0;
-        while (index < var.length()) {
-            char thisChar = var.charAt(index);
-            if ((thisChar == '$') && (index + 1 < var.length())) {
-                int endVar = var.indexOf('$', index + 1);
-                if (endVar != -1) {
-                    // Check for ${header}var$
-                    String header = "", thisVar = null;
-                    if (var.charAt(index + 1) == '{') {
-                        int endHeader = var.indexOf('}', index);
-                        if ((endHeader > -1) && (endHeader < endVar)) {
-                            header = var.substring(index + 2, endHeader);
-                            thisVar = var.substring(endHeader + 1, endVar);
-                        }
-                    }
-                    if (thisVar == null) {
-                        thisVar = var.substring(index + 1, endVar);
-                    }
-
-                    Object thisObj = vars.get(thisVar);
-                    if (thisObj == null) {
-                        // do nothing
-                    } else if (thisObj instanceof Map) {
-                        result.append(header);
-                        doFormat(varName + "," + thisVar, network, channel, config, (Map)thisObj, result);
-                    } else if (thisObj instanceof List) {
-                        result.append(header);
-                        doFormat(varName + "," + thisVar, network, channel, config, (List)thisObj, result);
-                    } else if (!"".equals(thisObj)) { // Just ignore a blank string
-                        result.append(header).append(thisObj);
-                    }
-                    index = endVar;
-                } else {
-                    result.append(thisChar);
-                }
-            } else {
-                result.append(thisChar);
-            }
-            index++;
-        }
+    /**
+     * @return this thread's render buffer, emptied
+     */
+    private static StringBuilder builder() {
+        final StringBuilder result = (StringBuilder)buffers.get();
+        result.setLength(0);
+        return result;
     }
 
-    private static final void doFormat(String varName, String network, String channel, Config config, List list, StringBuffer result) {
-        String separator = ConfigUtils.getVar(config, varName + ",sep", network, channel);
-        if (separator == null) separator = ",";
-        for (Iterator i = list.iterator(); i.hasNext();) {
-            final Object thisObj = i.next();
-            if (thisObj instanceof Map) {
-                doFormat(varName, network, channel, config, (Map)thisObj, result);
-            } else {
-                result.append(thisObj);
-            }
-            if (i.hasNext()) result.append(separator);
-        }
+    private static String finish(StringBuilder result) {
+        final String res = result.toString();
+        // don't hang on to the odd huge buffer
+        if (result.capacity() > MAX_BUFFER) buffers.set(new StringBuilder(INITIAL_BUFFER));
+        return res;
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.config;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trie over the comma separated segments of the config keys, so that
+ * questions like "which channels on this network have bans" can be
+ * answered by walking the relevant branch instead of scanning every key.
+ * Only changed by Config with its lock held; lookups don't lock and see
+ * each change as soon as it's made.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class KeyIndex
+{
+    private static final ConfigListener[] NO_LISTENERS = new ConfigListener[0];
+    private final Node root = new Node(null, null);
+
+    private static final class Node
+    {
+        private final Node parent;
+        private final String segment;
+        private final Map children = new ConcurrentHashMap();
+        // true if the path to this node is a key in its own right
+        private volatile boolean present = false;
+        private volatile ConfigListener[] listeners = NO_LISTENERS;
+
+        private Node(Node parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        private boolean unused() {
+            return !present && children.isEmpty() && (listeners.length == 0);
+        }
+    }
+
+    /**
+     * Split a key (or prefix, or pattern) into its segments.
+     */
+    static String[] split(String key) {
+        if (key.length() == 0) return new String[0];
+        final List segments = new ArrayList();
+        int start = 0;
+        while (true) {
+            final int comma = key.indexOf(',', start);
+            if (comma == -1) {
+                segments.add(key.substring(start));
+                break;
+            }
+            segments.add(key.substring(start, comma));
+            start = comma + 1;
+        }
+        return (String[])segments.toArray(new String[segments.size()]);
+    }
+
+    private Node find(String[] segments) {
+        Node node = root;
+        for (int i = 0; (node != null) && (i < segments.length); i++) {
+            node = (Node)node.children.get(segments[i]);
+        }
+        return node;
+    }
+
+    private Node create(String[] segments) {
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            Node child = (Node)node.children.get(segments[i]);
+            if (child == null) {
+                child = new Node(node, segments[i]);
+                node.children.put(segments[i], child);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Record that a key has been added or removed.
+     */
+    void update(String key, boolean present) {
+        final String[] segments = split(key);
+        if (present) {
+            create(segments).present = true;
+        } else {
+            Node node = find(segments);
+            if (node == null) return;
+            node.present = false;
+            prune(node);
+        }
+    }
+
+    private static void prune(Node node) {
+        while ((node.parent != null) && node.unused()) {
+            node.parent.children.remove(node.segment);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * @return the listeners on the key and on every prefix of it
+     */
+    ConfigListener[] listenersFor(String key) {
+        final String[] segments = split(key);
+        List found = null;
+        Node node = root;
+        for (int i = 0; (node != null) && (i <= segments.length); i++) {
+            if (node.listeners.length > 0) {
+                if (found == null) found = new ArrayList();
+                found.addAll(Arrays.asList(node.listeners));
+            }
+            if (i < segments.length) node = (Node)node.children.get(segments[i]);
+        }
+        return (found == null) ? NO_LISTENERS : (ConfigListener[])found.toArray(new ConfigListener[found.size()]);
+    }
+
+    void addListener(String prefix, ConfigListener listener) {
+        final Node node = create(split(prefix));
+        final List updated = new ArrayList(Arrays.asList(node.listeners));
+        updated.add(listener);
+        node.listeners = (ConfigListener[])updated.toArray(new ConfigListener[updated.size()]);
+    }
+
+    void removeListener(String prefix, ConfigListener listener) {
+        final Node node = find(split(prefix));
+        if (node == null) return;
+        final List updated = new ArrayList(Arrays.asList(node.listeners));
+        updated.remove(listener);
+        node.listeners = (ConfigListener[])updated.toArray(new ConfigListener[updated.size()]);
+        prune(node);
+    }
+
+    /**
+     * @param prefix whole segments, e.g. "vars,quakenet,#chan,alias"
+     * @return every key made up of the prefix plus at least one more
+     * segment
+     */
+    List keysUnder(String prefix) {
+        final List res = new ArrayList();
+        final Node node = find(split(prefix));
+        if (node != null) collect(node, new StringBuffer(prefix), node == root, res);
+        return res;
+    }
+
+    private static void collect(Node node, StringBuffer path, boolean top, List res) {
+        final int length = path.length();
+        for (Iterator i = node.children.values().iterator(); i.hasNext();) {
+            final Node child = (Node)i.next();
+            if (!top) path.append(',');
+            path.append(child.segment);
+            if (child.present) res.add(path.toString());
+            collect(child, path, false, res);
+            path.setLength(length);
+        }
+    }
+
+    /**
+     * @param pattern segments to match, where "*" matches any one segment
+     * and "abc*" any segment starting with abc, e.g. "bot*,network" or
+     * "vars,quakenet,*,bans,*"
+     * @return the matching keys
+     */
+    List keysMatching(String pattern) {
+        final List res = new ArrayList();
+        match(root, split(pattern), 0, new StringBuffer(), res);
+        return res;
+    }
+
+    private static void match(Node node, String[] pattern, int depth, StringBuffer path, List res) {
+        if (depth == pattern.length) {
+            if (node.present) res.add(path.toString());
+            return;
+        }
+        final String segment = pattern[depth];
+        final int length = path.length();
+        if (!segment.endsWith("*")) {
+            final Node child = (Node)node.children.get(segment);
+            if (child != null) {
+                if (depth > 0) path.append(',');
+                match(child, pattern, depth + 1, path.append(segment), res);
+                path.setLength(length);
+            }
+            return;
+        }
+        final String start = segment.substring(0, segment.length() - 1);
+        for (Iterator i = node.children.values().iterator(); i.hasNext();) {
+            final Node child = (Node)i.next();
+            if (!child.segment.startsWith(start)) continue;
+            if (depth > 0) path.append(',');
+            match(child, pattern, depth + 1, path.append(child.segment), res);
+            path.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.config;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A format variable compiled into a list of literal text and $var$
+ * references, so it only has to be parsed once. The names of the nested
+ * variables a reference can expand into (varname,ref and varname,ref,sep)
+ * are worked out at compile time too. Compiled templates are kept with the
+ * resolved values in VarCache, so they're thrown away whenever the config
+ * key they came from changes.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class Template
+{
+    private static final Logger log = Logger.getLogger(Template.class);
+    // each part is either a String to copy or a Ref to expand
+    private final Object[] parts;
+
+    private static final class Ref
+    {
+        private final String header;
+        private final String name;
+        private final String childVar;
+        private final String sepVar;
+
+        private Ref(String varName, String header, String name) {
+            this.header = header;
+            this.name = name;
+            this.childVar = varName + "," + name;
+            this.sepVar = childVar + ",sep";
+        }
+    }
+
+    private Template(Object[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Parse a format string. $name$ is replaced by the value called name,
+     * ${header}name$ also puts header in front of it if it's not empty, and
+     * a $ without a closing $ is left as it is.
+     * @param varName the variable the format came from
+     * @param format its value
+     */
+    static Template compile(String varName, String format) {
+        final List parts = new ArrayList();
+        final StringBuffer literal = new StringBuffer();
+        int index = 0;
+        while (index < format.length()) {
+            final char thisChar = format.charAt(index);
+            final int endVar = ((thisChar == '$') && (index + 1 < format.length())) ?
+                    format.indexOf('$', index + 1) : -1;
+            if (endVar == -1) {
+                literal.append(thisChar);
+                index++;
+                continue;
+            }
+            // Check for ${header}var$
+            String header = "", thisVar = null;
+            if (format.charAt(index + 1) == '{') {
+                int endHeader = format.indexOf('}', index);
+                if ((endHeader > -1) && (endHeader < endVar)) {
+                    header = format.substring(index + 2, endHeader);
+                    thisVar = format.substring(endHeader + 1, endVar);
+                }
+            }
+            if (thisVar == null) {
+                thisVar = format.substring(index + 1, endVar);
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                literal.setLength(0);
+            }
+            parts.add(new Ref(varName, header, thisVar));
+            index = endVar + 1;
+        }
+        if (literal.length() > 0) parts.add(literal.toString());
+        return new Template(parts.toArray());
+    }
+
+    void render(Config config, String network, String channel, Map vars, StringBuilder result) {
+        for (int i = 0; i < parts.length; i++) {
+            final Object part = parts[i];
+            if (part instanceof String) {
+                result.append((String)part);
+                continue;
+            }
+            final Ref ref = (Ref)part;
+            final Object thisObj = vars.get(ref.name);
+            if (thisObj == null) {
+                // do nothing
+            } else if (thisObj instanceof Map) {
+                result.append(ref.header);
+                render(config, ref.childVar, network, channel, (Map)thisObj, result);
+            } else if (thisObj instanceof List) {
+                result.append(ref.header);
+                render(config, ref.childVar, ref.sepVar, network, channel, (List)thisObj, result);
+            } else if (!"".equals(thisObj)) { // Just ignore a blank string
+                result.append(ref.header).append(thisObj);
+            }
+        }
+    }
+
+    /**
+     * Render the named format variable with the given values.
+     */
+    static void render(Config config, String varName, String network, String channel, Map vars, StringBuilder result) {
+        final Template template = config.getTemplate(varName, network, channel);
+        if (template == null) {
+            log.warn("No variable settings for " + varName);
+            return;
+        }
+        template.render(config, network, channel, vars, result);
+    }
+
+    /**
+     * Render each item of a list, maps with the named format variable and
+     * anything else as it is, separated by the value of sepVar (or a comma).
+     */
+    static void render(Config config, String varName, String sepVar, String network, String channel, List list, StringBuilder result) {
+        String separator = config.getVar(sepVar, network, channel);
+        if (separator == null) separator = ",";
+        for (Iterator i = list.iterator(); i.hasNext();) {
+            final Object thisObj = i.next();
+            if (thisObj instanceof Map) {
+                render(config, varName, network, channel, (Map)thisObj, result);
+            } else {
+                result.append(thisObj);
+            }
+            if (i.hasNext()) result.append(separator);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.config;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers what ConfigUtils.getVar resolved to for each variable, network
+ * and channel, so a lookup that would otherwise probe the channel, network
+ * and global keys in turn is a couple of hash lookups. Config has us listen
+ * to everything under "vars", and we drop just the entries each written key
+ * could have changed. Format variables also keep their compiled Template here,
+ * so it goes when the value does.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class VarCache implements ConfigListener
+{
+    private final ConcurrentHashMap byVar = new ConcurrentHashMap();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    /**
+     * What a variable resolved to, null if it isn't set anywhere.
+     */
+    private static final class Entry
+    {
+        private final String value;
+        private volatile Template template;
+
+        private Entry(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Where a variable is being looked up from. Either part may be null.
+     */
+    private static final class Scope
+    {
+        private final String network;
+        private final String channel;
+        private final int hash;
+
+        private Scope(String network, String channel) {
+            this.network = network;
+            this.channel = channel;
+            this.hash = ((network == null) ? 0 : network.hashCode() * 31) + ((channel == null) ? 0 : channel.hashCode());
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Scope)) return false;
+            final Scope other = (Scope)o;
+            return same(network, other.network) && same(channel, other.channel);
+        }
+
+        private static boolean same(String a, String b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+
+    /**
+     * Look the variable up the way ConfigUtils.getVar always has: channel,
+     * then network, then global. Config's write count is checked before and
+     * after, so a value resolved while a write was going on can't outlive
+     * that write's invalidation.
+     */
+    String get(Config config, String varname, String network, String channel) {
+        return lookup(config, varname, network, channel).value;
+    }
+
+    /**
+     * @return the variable compiled as a format, or null if it isn't set
+     */
+    Template getTemplate(Config config, String varname, String network, String channel) {
+        final Entry entry = lookup(config, varname, network, channel);
+        if (entry.value == null) return null;
+        Template template = entry.template;
+        if (template == null) {
+            entry.template = template = Template.compile(varname, entry.value);
+        }
+        return template;
+    }
+
+    private Entry lookup(Config config, String varname, String network, String channel) {
+        ConcurrentHashMap scopes = (ConcurrentHashMap)byVar.get(varname);
+        final Scope scope = new Scope(network, channel);
+        if (scopes != null) {
+            final Entry cached = (Entry)scopes.get(scope);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        } else {
+            scopes = new ConcurrentHashMap();
+            final ConcurrentHashMap existing = (ConcurrentHashMap)byVar.putIfAbsent(varname, scopes);
+            if (existing != null) scopes = existing;
+        }
+        misses.incrementAndGet();
+        final long before = config.getWriteCount();
+        final Entry entry = new Entry(resolve(config, varname, network, channel));
+        scopes.put(scope, entry);
+        if (config.getWriteCount() != before) {
+            // a write may have been invalidating while we resolved
+            scopes.remove(scope, entry);
+        }
+        return entry;
+    }
+
+    private static String resolve(Config config, String varname, String network, String channel) {
+        String value;
+        if (channel != null) {
+            value = config.get("vars," + network + "," + channel + "," + varname);
+            if (value != null) return value;
+        }
+        if (network != null) {
+            value = config.get("vars," + network + "," + varname);
+            if (value != null) return value;
+        }
+        return config.get("vars," + varname);
+    }
+
+    public void configChanged(String key, String value) {
+        if (key.startsWith("vars,")) invalidate(key.substring(5));
+    }
+
+    /**
+     * Forget everything the given config key could have changed.
+     * @param key the key written, without its "vars," prefix
+     */
+    private void invalidate(String key) {
+        // as a global variable
+        invalidate(key, null, null);
+        // as a network variable
+        final int firstComma = key.indexOf(',');
+        if (firstComma == -1) return;
+        final String network = key.substring(0, firstComma);
+        invalidate(key.substring(firstComma + 1), network, null);
+        // as a channel variable
+        final int secondComma = key.indexOf(',', firstComma + 1);
+        if (secondComma == -1) return;
+        invalidate(key.substring(secondComma + 1), network, key.substring(firstComma + 1, secondComma));
+    }
+
+    /**
+     * @param network only entries looked up from this network, or null for
+     * all of them
+     * @param channel only entries looked up from this channel, or null for
+     * all of them
+     */
+    private void invalidate(String varname, String network, String channel) {
+        final Map scopes = (Map)byVar.get(varname);
+        if (scopes == null) return;
+        for (Iterator i = scopes.keySet().iterator(); i.hasNext();) {
+            final Scope scope = (Scope)i.next();
+            if ((network != null) && !network.equals(String.valueOf(scope.network))) continue;
+            if ((channel != null) && !channel.equals(scope.channel)) continue;
+            i.remove();
+            invalidated.incrementAndGet();
+        }
+    }
+
+    String getStats() {
+        int entries = 0;
+        for (Iterator i = byVar.values().iterator(); i.hasNext();) {
+            entries += ((Map)i.next()).size();
+        }
+        final long hitCount = hits.get();
+        final long total = hitCount + misses.get();
+        return "Variable cache: " + entries + " entries, " + hitCount + "/" + total + " hits (" +
+                ((total == 0) ? 0 : hitCount * 100 / total) + "%), " + invalidated.get() + " invalidated";
+    }
+}
@@ -27,4 +27,9 @@ package com.echbot.messages;
 public interface InboundMessage
 {
     public void visit(MessageVisitor module);
+
+    /**
+     * @return this message's id from <code>MessageTypes</code>
+     */
+    public int getTypeId();
 }
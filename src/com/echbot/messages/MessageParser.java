@@ -22,72 +22,147 @@ package com.echbot.messages;
 
 import com.echbot.messages.in.*;
 
-import java.util.StringTokenizer;
+import java.util.Arrays;
 
 /**
+ * Turns lines from the server into messages. Each line is scanned once,
+ * recording where the prefix, command and parameters start and end; the
+ * messages keep those offsets and only cut out the parts asked for. Commands are
+ * looked up in a small perfect hash table and numerics are parsed by hand.
+ * An IRCv3 tag section (<code>@key=value;...</code>) at the start of a line
+ * is recognised and skipped.
  * @author Chris Pearson
  * @version $Id: MessageParser.java,v 1.2 2003/07/27 10:43:49 chris Exp $
  */
 public final class MessageParser
 {
+    private static final int NONE = -1, QUIT = 0, JOIN = 1, PART = 2, NICK = 3, PRIVMSG = 4, NOTICE = 5,
+            MODE = 6, TOPIC = 7, KICK = 8;
+    private static final String[] COMMANDS = {"QUIT", "JOIN", "PART", "NICK", "PRIVMSG", "NOTICE", "MODE",
+                                              "TOPIC", "KICK"};
+    private static final int TABLE_MASK = 15;
+    private static final int[] table = new int[TABLE_MASK + 1];
+    private static final int NOT_NUMERIC = Integer.MIN_VALUE;
+
+    static {
+        Arrays.fill(table, NONE);
+        for (int i = 0; i < COMMANDS.length; i++) {
+            final int slot = hash(COMMANDS[i], 0, COMMANDS[i].length());
+            if (table[slot] != NONE) throw new IllegalStateException("Command table collision: " + COMMANDS[i]);
+            table[slot] = i;
+        }
+    }
+
     private MessageParser() {
     }
 
     public static InboundMessage parseMessage(String line) {
         if (line == null) return new UnknownIn(line);
+        final int length = line.length();
 
-        StringTokenizer tokens = new StringTokenizer(line);
-        final int tokenCount = tokens.countTokens();
-
-        if (tokenCount < 2) return new UnknownIn(line);
-        String part1 = tokens.nextToken();
-        String part2 = tokens.nextToken();
-        if (part1.equals("PING")) {
-            return new PingIn(part2);
-        }
-        if (part2.equals("QUIT")) {
-            return new QuitIn(part1, tokens.nextToken(""));
-        }
-
-        if (tokenCount < 3) return new UnknownIn(line);
-        String part3 = tokens.nextToken();
-        if (part2.equals("JOIN")) {
-            return new JoinIn(part1, part3);
+        int s1 = skipSpace(line, 0, length);
+        if ((s1 < length) && (line.charAt(s1) == '@')) {
+            // message tags, nothing uses them yet
+            s1 = skipSpace(line, tokenEnd(line, s1, length), length);
         }
-        if (part2.equals("PART")) {
-            String msg = tokens.hasMoreTokens() ? tokens.nextToken("") : "";
-            return new PartIn(part1, part3, msg);
+        final int e1 = tokenEnd(line, s1, length);
+        final int s2 = skipSpace(line, e1, length);
+        if (s2 == length) return new UnknownIn(line);
+        final int e2 = tokenEnd(line, s2, length);
+        if (matches(line, s1, e1, "PING")) {
+            return new PingIn(line.substring(s2, e2));
         }
-        if (part2.equals("NICK")) {
-            return new NickIn(part1, part3);
+        final int command = commandOf(line, s2, e2);
+        if (command == QUIT) {
+            return new QuitIn(line, s1, e1, e2);
         }
 
-        if (tokenCount < 4) return new UnknownIn(line);
-        if (part2.equals("PRIVMSG")) {
-            return new ChatMessageIn(part1, part3, tokens.nextToken(""), true);
-        }
-        if (part2.equals("NOTICE")) {
-            return new ChatMessageIn(part1, part3, tokens.nextToken(""), false);
+        final int s3 = skipSpace(line, e2, length);
+        if (s3 == length) return new UnknownIn(line);
+        final int e3 = tokenEnd(line, s3, length);
+        switch (command) {
+            case JOIN:
+                return new JoinIn(line, s1, e1, s3, e3);
+            case PART:
+                final int messageStart = (skipSpace(line, e3, length) < length) ? e3 : length;
+                return new PartIn(line, s1, e1, s3, e3, messageStart);
+            case NICK:
+                return new NickIn(line, s1, e1, s3, e3);
         }
-        if (part2.equals("MODE")) {
-            return new ModeIn(part1, part3, tokens.nextToken(""));
-        }
-        if (part2.equals("TOPIC")) {
-            return new TopicIn(part1, part3, tokens.nextToken(""));
+
+        final int s4 = skipSpace(line, e3, length);
+        if (s4 == length) return new UnknownIn(line);
+        switch (command) {
+            case PRIVMSG:
+                return new ChatMessageIn(line, s1, e1, s3, e3, e3, true);
+            case NOTICE:
+                return new ChatMessageIn(line, s1, e1, s3, e3, e3, false);
+            case MODE:
+                return new ModeIn(line, s1, e1, s3, e3, e3);
+            case TOPIC:
+                return new TopicIn(line, s1, e1, s3, e3, e3);
         }
 
         // If the second parameter is numeric, it's a system message
-        try {
-            return new SystemIn(Integer.parseInt(part2), part3, tokens.nextToken(""));
-        } catch (NumberFormatException e) {
+        final int numeric = parseNumeric(line, s2, e2);
+        if (numeric != NOT_NUMERIC) {
+            return new SystemIn(numeric, line, s3, e3, e3);
         }
 
-        if (tokenCount < 5) return new UnknownIn(line);
-        String part4 = tokens.nextToken();
-        if (part2.equals("KICK")) {
-            return new KickIn(part1, part3, part4, tokens.nextToken(""));
+        final int e4 = tokenEnd(line, s4, length);
+        if (skipSpace(line, e4, length) == length) return new UnknownIn(line);
+        if (command == KICK) {
+            return new KickIn(line, s1, e1, s3, e3, s4, e4, e4);
         }
 
         return new UnknownIn(line);
     }
+
+    private static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == '\f');
+    }
+
+    private static int skipSpace(String line, int pos, int length) {
+        while ((pos < length) && isSpace(line.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static int tokenEnd(String line, int pos, int length) {
+        while ((pos < length) && !isSpace(line.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static boolean matches(String line, int start, int end, String word) {
+        return (end - start == word.length()) && line.startsWith(word, start);
+    }
+
+    private static int hash(String line, int start, int end) {
+        return ((end - start) * 3 + line.charAt(start) + line.charAt(start + 1) * 3) & TABLE_MASK;
+    }
+
+    private static int commandOf(String line, int start, int end) {
+        if (end - start < 2) return NONE;
+        final int command = table[hash(line, start, end)];
+        return ((command != NONE) && matches(line, start, end, COMMANDS[command])) ? command : NONE;
+    }
+
+    /**
+     * Parse a token the way Integer.parseInt would, without throwing.
+     * @return the number, or NOT_NUMERIC
+     */
+    private static int parseNumeric(String line, int start, int end) {
+        boolean negative = false;
+        if ((start < end) && ((line.charAt(start) == '-') || (line.charAt(start) == '+'))) {
+            negative = line.charAt(start) == '-';
+            start++;
+        }
+        if ((start == end) || (end - start > 9)) return NOT_NUMERIC;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if ((c < '0') || (c > '9')) return NOT_NUMERIC;
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.messages;
+
+import com.echbot.messages.in.*;
+
+/**
+ * Small integer ids for each kind of <code>InboundMessage</code>, so
+ * per-type tables can be plain arrays instead of maps keyed by class.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class MessageTypes
+{
+    public static final int CHAT_MESSAGE = 0;
+    public static final int JOIN = 1;
+    public static final int KICK = 2;
+    public static final int MODE = 3;
+    public static final int NICK = 4;
+    public static final int PART = 5;
+    public static final int PING = 6;
+    public static final int QUIT = 7;
+    public static final int SYSTEM = 8;
+    public static final int TOPIC = 9;
+    public static final int UNKNOWN = 10;
+    public static final int COUNT = 11;
+    private static final Class[] classes = {
+        ChatMessageIn.class, JoinIn.class, KickIn.class, ModeIn.class, NickIn.class, PartIn.class,
+        PingIn.class, QuitIn.class, SystemIn.class, TopicIn.class, UnknownIn.class
+    };
+
+    private MessageTypes() {
+    }
+
+    /**
+     * @param messageClass an <code>InboundMessage</code> class
+     * @return the type id for the class, or -1 if it isn't a known message
+     */
+    public static int idOf(Class messageClass) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == messageClass) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id a type id
+     * @return the message class with the given id
+     */
+    public static Class classOf(int id) {
+        return classes[id];
+    }
+}
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,23 +32,32 @@ import org.apache.log4j.Logger;
 public class ChatMessageIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(ChatMessageIn.class);
-    private String from, to, message;
-    private boolean privmsg;
+    private static final String CHANNEL_PREFIXES = "#&+!";
+    private final String line;
+    private final int fromStart, fromEnd, toStart, toEnd, messageStart;
+    private final boolean privmsg;
+    // worked out on first use
+    private String from, fromNick, to, message;
     private Boolean cachedIsCommand = null;
     private String cachedCommand = null;
 
-    public ChatMessageIn(String from, String to, String message, boolean privmsg) {
-        if ((from != null) && (from.length() > 1) && (from.charAt(0) == ':')) {
-            this.from = from.substring(1);
-        } else {
-            this.from = from;
-        }
-        this.to = (to.charAt(0) == '#') ? to.toLowerCase() : to;
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+    /**
+     * @param line the raw line
+     * @param fromStart start of the prefix
+     * @param fromEnd end of the prefix
+     * @param toStart start of the target
+     * @param toEnd end of the target
+     * @param messageStart start of the text, just after the target
+     * @param privmsg true for PRIVMSG, false for NOTICE
+     */
+    public ChatMessageIn(String line, int fromStart, int fromEnd, int toStart, int toEnd, int messageStart,
+                         boolean privmsg) {
+        this.line = line;
+        this.fromStart = Slices.skipColon(line, fromStart, fromEnd);
+        this.fromEnd = fromEnd;
+        this.toStart = toStart;
+        this.toEnd = toEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
         this.privmsg = privmsg;
     }
 
@@ -55,20 +65,39 @@ public class ChatMessageIn implements InboundMessage
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.CHAT_MESSAGE;
+    }
+
     public String getFrom() {
-        int exc = from.indexOf('!');
-        return (exc == -1) ? from : from.substring(0, exc);
+        if (fromNick == null) fromNick = line.substring(fromStart, Slices.nickEnd(line, fromStart, fromEnd));
+        return fromNick;
     }
 
     public String getFromWithHost() {
+        if (from == null) from = line.substring(fromStart, fromEnd);
         return from;
     }
 
     public String getTo() {
+        if (to == null) {
+            final String target = line.substring(toStart, toEnd);
+            to = (line.charAt(toStart) == '#') ? target.toLowerCase() : target;
+        }
         return to;
     }
 
+    /**
+     * @return true if sent to a channel rather than to us, decided from the
+     * raw line so the target needn't be cut out. Any of the RFC 2811 channel
+     * prefixes count.
+     */
+    public boolean isToChannel() {
+        return (toStart < toEnd) && (CHANNEL_PREFIXES.indexOf(line.charAt(toStart)) != -1);
+    }
+
     public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
         return message;
     }
 
@@ -78,8 +107,9 @@ public class ChatMessageIn implements InboundMessage
 
     public boolean isCommand() {
         if (cachedIsCommand != null) return cachedIsCommand.booleanValue();
-        for (int i = 0; i < message.length(); i++) {
-            final char next = message.charAt(i);
+        // look at the raw line, most chatter never needs its text cut out
+        for (int i = messageStart; i < line.length(); i++) {
+            final char next = line.charAt(i);
             if (next != ' ') {
                 if (next == '!') {
                     cachedIsCommand = Boolean.TRUE;
@@ -96,6 +126,7 @@ public class ChatMessageIn implements InboundMessage
 
     public String getCommand() {
         if (cachedCommand != null) return cachedCommand;
+        final String message = getMessage();
         final int exc = message.indexOf('!');
         int end = message.indexOf(' ', exc);
         if (end == -1) end = message.length();
@@ -105,6 +136,7 @@ public class ChatMessageIn implements InboundMessage
 
     public String getArguments() {
         if (!isCommand()) return "";
+        final String message = getMessage();
         final String cmd = getCommand();
         int endindex = message.indexOf(cmd) + cmd.length() + 1;
         if (endindex >= message.length()) return "";
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,35 +32,38 @@ import org.apache.log4j.Logger;
 public class JoinIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(JoinIn.class);
-    private String joiner, channel;
+    private final String line;
+    private final int joinerStart, joinerEnd, channelStart, channelEnd;
+    private String joiner, joinerNick, channel;
 
-    public JoinIn(String joiner, String channel) {
-        if ((joiner != null) && (joiner.length() > 1) && (joiner.charAt(0) == ':')) {
-            this.joiner = joiner.substring(1);
-        } else {
-            this.joiner = joiner;
-        }
-        if ((channel != null) && (channel.length() > 1) && (channel.charAt(0) == ':')) {
-            this.channel = channel.substring(1).toLowerCase();
-        } else {
-            this.channel = channel.toLowerCase();
-        }
+    public JoinIn(String line, int joinerStart, int joinerEnd, int channelStart, int channelEnd) {
+        this.line = line;
+        this.joinerStart = Slices.skipColon(line, joinerStart, joinerEnd);
+        this.joinerEnd = joinerEnd;
+        this.channelStart = Slices.skipColon(line, channelStart, channelEnd);
+        this.channelEnd = channelEnd;
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.JOIN;
+    }
+
     public String getJoiner() {
-        int exc = joiner.indexOf('!');
-        return (exc == -1) ? joiner : joiner.substring(0, exc);
+        if (joinerNick == null) joinerNick = line.substring(joinerStart, Slices.nickEnd(line, joinerStart, joinerEnd));
+        return joinerNick;
     }
 
     public String getJoinerWithHost() {
+        if (joiner == null) joiner = line.substring(joinerStart, joinerEnd);
         return joiner;
     }
 
     public String getChannel() {
+        if (channel == null) channel = line.substring(channelStart, channelEnd).toLowerCase();
         return channel;
     }
 }
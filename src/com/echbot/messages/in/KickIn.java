@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,42 +32,53 @@ import org.apache.log4j.Logger;
 public class KickIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(KickIn.class);
-    private String kicker, channel, kicked, message;
+    private final String line;
+    private final int kickerStart, kickerEnd, channelStart, channelEnd, kickedStart, kickedEnd, messageStart;
+    private String kicker, kickerNick, channel, kicked, message;
 
-    public KickIn(String kicker, String channel, String kicked, String message) {
-        if ((kicker != null) && (kicker.length() > 1) && (kicker.charAt(0) == ':')) {
-            this.kicker = kicker.substring(1);
-        } else {
-            this.kicker = kicker;
-        }
-        this.channel = channel.toLowerCase();
-        this.kicked = kicked;
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+    public KickIn(String line, int kickerStart, int kickerEnd, int channelStart, int channelEnd, int kickedStart,
+                  int kickedEnd, int messageStart) {
+        this.line = line;
+        this.kickerStart = Slices.skipColon(line, kickerStart, kickerEnd);
+        this.kickerEnd = kickerEnd;
+        this.channelStart = channelStart;
+        this.channelEnd = channelEnd;
+        this.kickedStart = kickedStart;
+        this.kickedEnd = kickedEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.KICK;
+    }
+
     public String getKicker() {
-        int exc = kicker.indexOf('!');
-        return (exc == -1) ? kicker : kicker.substring(0, exc);
+        if (kickerNick == null) kickerNick = line.substring(kickerStart, Slices.nickEnd(line, kickerStart, kickerEnd));
+        return kickerNick;
     }
 
     public String getKickerWithHost() {
+        if (kicker == null) kicker = line.substring(kickerStart, kickerEnd);
         return kicker;
     }
 
     public String getChannel() {
+        if (channel == null) channel = line.substring(channelStart, channelEnd).toLowerCase();
         return channel;
     }
 
     public String getKicked() {
+        if (kicked == null) kicked = line.substring(kickedStart, kickedEnd);
         return kicked;
     }
+
+    public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
+        return message;
+    }
 }
 
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,36 +32,44 @@ import org.apache.log4j.Logger;
 public class ModeIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(ModeIn.class);
-    private String from, channel, modes;
+    private final String line;
+    private final int fromStart, fromEnd, channelStart, channelEnd, modesStart;
+    private String from, fromNick, channel, modes;
 
-    public ModeIn(String from, String channel, String modes) {
-        if ((from != null) && (from.length() > 1) && (from.charAt(0) == ':')) {
-            this.from = from.substring(1);
-        } else {
-            this.from = from;
-        }
-        this.channel = channel.toLowerCase();
-        this.modes = modes;
+    public ModeIn(String line, int fromStart, int fromEnd, int channelStart, int channelEnd, int modesStart) {
+        this.line = line;
+        this.fromStart = Slices.skipColon(line, fromStart, fromEnd);
+        this.fromEnd = fromEnd;
+        this.channelStart = channelStart;
+        this.channelEnd = channelEnd;
+        this.modesStart = modesStart;
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.MODE;
+    }
+
     public String getFrom() {
-        int exc = from.indexOf('!');
-        return (exc == -1) ? from : from.substring(0, exc);
+        if (fromNick == null) fromNick = line.substring(fromStart, Slices.nickEnd(line, fromStart, fromEnd));
+        return fromNick;
     }
 
     public String getFromWithHost() {
+        if (from == null) from = line.substring(fromStart, fromEnd);
         return from;
     }
 
     public String getChannel() {
+        if (channel == null) channel = line.substring(channelStart, channelEnd).toLowerCase();
         return channel;
     }
 
     public String getModes() {
+        if (modes == null) modes = line.substring(modesStart);
         return modes;
     }
 }
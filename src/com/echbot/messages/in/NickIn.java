@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,35 +32,38 @@ import org.apache.log4j.Logger;
 public class NickIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(NickIn.class);
-    private String oldNick, newNick;
+    private final String line;
+    private final int oldNickStart, oldNickEnd, newNickStart, newNickEnd;
+    private String oldNickWithHost, oldNick, newNick;
 
-    public NickIn(String oldNick, String newNick) {
-        if ((oldNick != null) && (oldNick.length() > 1) && (oldNick.charAt(0) == ':')) {
-            this.oldNick = oldNick.substring(1);
-        } else {
-            this.oldNick = oldNick;
-        }
-        if ((newNick != null) && (newNick.length() > 1) && (newNick.charAt(0) == ':')) {
-            this.newNick = newNick.substring(1);
-        } else {
-            this.newNick = newNick;
-        }
+    public NickIn(String line, int oldNickStart, int oldNickEnd, int newNickStart, int newNickEnd) {
+        this.line = line;
+        this.oldNickStart = Slices.skipColon(line, oldNickStart, oldNickEnd);
+        this.oldNickEnd = oldNickEnd;
+        this.newNickStart = Slices.skipColon(line, newNickStart, newNickEnd);
+        this.newNickEnd = newNickEnd;
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.NICK;
+    }
+
     public String getOldNick() {
-        int exc = oldNick.indexOf('!');
-        return (exc == -1) ? oldNick : oldNick.substring(0, exc);
+        if (oldNick == null) oldNick = line.substring(oldNickStart, Slices.nickEnd(line, oldNickStart, oldNickEnd));
+        return oldNick;
     }
 
     public String getOldNickWithHost() {
-        return oldNick;
+        if (oldNickWithHost == null) oldNickWithHost = line.substring(oldNickStart, oldNickEnd);
+        return oldNickWithHost;
     }
 
     public String getNewNick() {
+        if (newNick == null) newNick = line.substring(newNickStart, newNickEnd);
         return newNick;
     }
 }
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,40 +32,48 @@ import org.apache.log4j.Logger;
 public class PartIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(PartIn.class);
-    private String leaver, channel, message;
+    private final String line;
+    private final int leaverStart, leaverEnd, channelStart, channelEnd, messageStart;
+    private String leaver, leaverNick, channel, message;
 
-    public PartIn(String leaver, String channel, String message) {
-        if ((leaver != null) && (leaver.length() > 1) && (leaver.charAt(0) == ':')) {
-            this.leaver = leaver.substring(1);
-        } else {
-            this.leaver = leaver;
-        }
-        this.channel = channel.toLowerCase();
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+    /**
+     * @param messageStart start of the part message, or the end of the line
+     * if there isn't one
+     */
+    public PartIn(String line, int leaverStart, int leaverEnd, int channelStart, int channelEnd, int messageStart) {
+        this.line = line;
+        this.leaverStart = Slices.skipColon(line, leaverStart, leaverEnd);
+        this.leaverEnd = leaverEnd;
+        this.channelStart = channelStart;
+        this.channelEnd = channelEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.PART;
+    }
+
     public String getLeaver() {
-        int exc = leaver.indexOf('!');
-        return (exc == -1) ? leaver : leaver.substring(0, exc);
+        if (leaverNick == null) leaverNick = line.substring(leaverStart, Slices.nickEnd(line, leaverStart, leaverEnd));
+        return leaverNick;
     }
 
     public String getLeaverWithHost() {
+        if (leaver == null) leaver = line.substring(leaverStart, leaverEnd);
         return leaver;
     }
 
     public String getChannel() {
+        if (channel == null) channel = line.substring(channelStart, channelEnd).toLowerCase();
         return channel;
     }
 
     public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
         return message;
     }
 }
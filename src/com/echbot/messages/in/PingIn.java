@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 
 /**
@@ -39,6 +40,10 @@ public class PingIn implements InboundMessage
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.PING;
+    }
+
     public String getPingCode() {
         return pingCode;
     }
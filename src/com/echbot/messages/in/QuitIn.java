@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,35 +32,37 @@ import org.apache.log4j.Logger;
 public class QuitIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(QuitIn.class);
-    private String quitter, message;
+    private final String line;
+    private final int quitterStart, quitterEnd, messageStart;
+    private String quitter, quitterNick, message;
 
-    public QuitIn(String quitter, String message) {
-        if ((quitter != null) && (quitter.length() > 1) && (quitter.charAt(0) == ':')) {
-            this.quitter = quitter.substring(1);
-        } else {
-            this.quitter = quitter;
-        }
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+    public QuitIn(String line, int quitterStart, int quitterEnd, int messageStart) {
+        this.line = line;
+        this.quitterStart = Slices.skipColon(line, quitterStart, quitterEnd);
+        this.quitterEnd = quitterEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.QUIT;
+    }
+
     public String getQuitter() {
-        int exc = quitter.indexOf('!');
-        return (exc == -1) ? quitter : quitter.substring(0, exc);
+        if (quitterNick == null) quitterNick = line.substring(quitterStart, Slices.nickEnd(line, quitterStart, quitterEnd));
+        return quitterNick;
     }
 
     public String getQuitterWithHost() {
+        if (quitter == null) quitter = line.substring(quitterStart, quitterEnd);
         return quitter;
     }
 
     public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
         return message;
     }
 }
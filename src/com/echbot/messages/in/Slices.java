@@ -0,0 +1,56 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.messages.in;
+
+/**
+ * Offset arithmetic shared by the inbound messages, which keep the raw line
+ * and only cut out the parts that are asked for.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class Slices
+{
+    private Slices() {
+    }
+
+    /**
+     * @return start of a prefix or argument, past a leading ':' if anything
+     * follows it
+     */
+    static int skipColon(String line, int start, int end) {
+        return ((end - start > 1) && (line.charAt(start) == ':')) ? start + 1 : start;
+    }
+
+    /**
+     * @return start of a trailing parameter, past " :" if anything follows it
+     */
+    static int trailing(String line, int start) {
+        return (line.startsWith(" :", start) && (line.length() - start > 2)) ? start + 2 : start;
+    }
+
+    /**
+     * @return end of the nick in a nick!user@host prefix
+     */
+    static int nickEnd(String line, int start, int end) {
+        final int exc = line.indexOf('!', start);
+        return ((exc == -1) || (exc >= end)) ? end : exc;
+    }
+}
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,32 +32,38 @@ import org.apache.log4j.Logger;
 public class SystemIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(SystemIn.class);
-    private int number;
+    private final int number;
+    private final String line;
+    private final int targetStart, targetEnd, messageStart;
     private String target, message;
 
-    public SystemIn(int number, String target, String message) {
+    public SystemIn(int number, String line, int targetStart, int targetEnd, int messageStart) {
         this.number = number;
-        this.target = target;
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+        this.line = line;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.SYSTEM;
+    }
+
     public int getNumber() {
         return number;
     }
 
     public String getTarget() {
+        if (target == null) target = line.substring(targetStart, targetEnd);
         return target;
     }
 
     public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
         return message;
     }
 }
@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -31,40 +32,44 @@ import org.apache.log4j.Logger;
 public class TopicIn implements InboundMessage
 {
     private static final Logger log = Logger.getLogger(TopicIn.class);
-    private String from, target, message;
+    private final String line;
+    private final int fromStart, fromEnd, targetStart, targetEnd, messageStart;
+    private String from, fromNick, target, message;
 
-    public TopicIn(String from, String target, String message) {
-        if ((from != null) && (from.length() > 1) && (from.charAt(0) == ':')) {
-            this.from = from.substring(1);
-        } else {
-            this.from = from;
-        }
-        this.target = target.toLowerCase();
-        if ((message != null) && message.startsWith(" :") && (message.length() > 2)) {
-            this.message = message.substring(2);
-        } else {
-            this.message = message;
-        }
+    public TopicIn(String line, int fromStart, int fromEnd, int targetStart, int targetEnd, int messageStart) {
+        this.line = line;
+        this.fromStart = Slices.skipColon(line, fromStart, fromEnd);
+        this.fromEnd = fromEnd;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.messageStart = Slices.trailing(line, messageStart);
     }
 
     public void visit(MessageVisitor module) {
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.TOPIC;
+    }
+
     public String getFrom() {
-        int exc = from.indexOf('!');
-        return (exc == -1) ? from : from.substring(0, exc);
+        if (fromNick == null) fromNick = line.substring(fromStart, Slices.nickEnd(line, fromStart, fromEnd));
+        return fromNick;
     }
 
     public String getFromWithHost() {
+        if (from == null) from = line.substring(fromStart, fromEnd);
         return from;
     }
 
     public String getTarget() {
+        if (target == null) target = line.substring(targetStart, targetEnd).toLowerCase();
         return target;
     }
 
     public String getMessage() {
+        if (message == null) message = line.substring(messageStart);
         return message;
     }
 }
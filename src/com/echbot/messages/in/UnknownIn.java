@@ -21,6 +21,7 @@
 package com.echbot.messages.in;
 
 import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageTypes;
 import com.echbot.messages.MessageVisitor;
 import org.apache.log4j.Logger;
 
@@ -42,6 +43,10 @@ public class UnknownIn implements InboundMessage
         module.received(this);
     }
 
+    public int getTypeId() {
+        return MessageTypes.UNKNOWN;
+    }
+
     public String getLine() {
         return line;
     }
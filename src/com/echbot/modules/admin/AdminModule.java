@@ -21,6 +21,9 @@
 package com.echbot.modules.admin;
 
 import com.echbot.Echbot;
+import com.echbot.EventType;
+import com.echbot.ExpiringCache;
+import com.echbot.GroupTimer;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
 import com.echbot.config.ConfigUtils;
@@ -41,6 +44,33 @@ import java.util.*;
 public class AdminModule extends UserModule
 {
     private static final Logger log = Logger.getLogger(AdminModule.class);
+    private static final int CMD_HELP = 0;
+    private static final int CMD_TOPIC = 1;
+    private static final int CMD_ADDMODULE = 2;
+    private static final int CMD_REMOVEMODULE = 3;
+    private static final int CMD_RELOADMODULES = 4;
+    private static final int CMD_LISTCLONES = 5;
+    private static final int CMD_LANES = 6;
+    private static final int CMD_TIMERS = 7;
+    private static final int CMD_EVENTS = 8;
+    private static final int CMD_KILLCLONE = 9;
+    private static final int CMD_STARTCLONE = 10;
+    private static final int CMD_SETADMINS = 11;
+    private static final int CMD_CLEARADMINS = 12;
+    private static final int CMD_NETWORK = 13;
+    private static final int CMD_REMOVENETWORK = 14;
+    private static final int CMD_RECONNECT = 15;
+    private static final int CMD_JOIN = 16;
+    private static final int CMD_PART = 17;
+    private static final int CMD_ANNOUNCE = 18;
+    private static final int CMD_CHANNELS = 19;
+    private static final int CMD_SET = 20;
+    private static final int CMD_UNSET = 21;
+    private static final int CMD_ALIAS = 22;
+    private static final int CMD_UNALIAS = 23;
+    private static final int CMD_COMMANDS = 24;
+    private static final int CMD_CONFIG = 25;
+    private static final int CMD_CACHES = 26;
     private int broadcastEventId;
 
     public AdminModule(UserModuleInterface parent) {
@@ -48,7 +78,33 @@ public class AdminModule extends UserModule
         broadcastEventId = getUserEventId("admin.broadcast");
         parent.registerForEvent(broadcastEventId, this);
         setDefault("limit,alias", "admins,opped");
-        register(ChatMessageIn.class);
+        registerCommand("!help", CMD_HELP);
+        registerCommand("!topic", CMD_TOPIC);
+        registerCommand("!addmodule", CMD_ADDMODULE);
+        registerCommand("!removemodule", CMD_REMOVEMODULE);
+        registerCommand("!reloadmodules", CMD_RELOADMODULES);
+        registerCommand("!listclones", CMD_LISTCLONES);
+        registerCommand("!lanes", CMD_LANES);
+        registerCommand("!timers", CMD_TIMERS);
+        registerCommand("!events", CMD_EVENTS);
+        registerCommand("!commands", CMD_COMMANDS);
+        registerCommand("!config", CMD_CONFIG);
+        registerCommand("!caches", CMD_CACHES);
+        registerCommand("!killclone", CMD_KILLCLONE);
+        registerCommand("!startclone", CMD_STARTCLONE);
+        registerCommand("!setadmins", CMD_SETADMINS);
+        registerCommand("!clearadmins", CMD_CLEARADMINS);
+        registerCommand("!network", CMD_NETWORK);
+        registerCommand("!removenetwork", CMD_REMOVENETWORK);
+        registerCommand("!reconnect", CMD_RECONNECT);
+        registerCommand("!join", CMD_JOIN);
+        registerCommand("!part", CMD_PART);
+        registerCommand("!announce", CMD_ANNOUNCE);
+        registerCommand("!channels", CMD_CHANNELS);
+        registerCommand("!set", CMD_SET);
+        registerCommand("!unset", CMD_UNSET);
+        registerCommand("!alias*", CMD_ALIAS);
+        registerCommand("!unalias*", CMD_UNALIAS);
     }
 
     private static final class ChannelRecord
@@ -91,8 +147,7 @@ public class AdminModule extends UserModule
         }
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
+    public void command(int id, ChatMessageIn message) {
         String channel = message.getTo().startsWith("#") ? message.getTo().toLowerCase() : null;
         boolean replyByPrivmsg = (channel == null) && message.isPrivmsg();
 
@@ -103,224 +158,305 @@ public class AdminModule extends UserModule
             log.warn("Requires auth module", e);
             return;
         }
-        /*
-         * GLOBAL COMMANDS
-         */
-        if (message.getCommand().equals("!help")) {
-            send(new ChatMessageOut(message.getFrom(), "See \00312\037http://www.echbot.com\037\003 for help!", replyByPrivmsg));
-        } else if (message.getCommand().equals("!topic")) {
-            send(new ChatMessageOut(message.getFrom(), "In mIRC, press alt+r, go to the Aliases tab, and paste \00312 /f5 /topic $chan \003 then F5 will show topic.", replyByPrivmsg));
+        switch (id) {
+            /*
+             * GLOBAL COMMANDS
+             */
+            case CMD_HELP:
+                send(new ChatMessageOut(message.getFrom(), "See \00312\037http://www.echbot.com\037\003 for help!", replyByPrivmsg));
+                break;
+            case CMD_TOPIC:
+                send(new ChatMessageOut(message.getFrom(), "In mIRC, press alt+r, go to the Aliases tab, and paste \00312 /f5 /topic $chan \003 then F5 will show topic.", replyByPrivmsg));
+                break;
             /*
              * MODULE CONTROL COMMANDS (GLOBAL ADMIN ONLY)
              */
-        } else if (message.getCommand().equals("!addmodule") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.hasMoreTokens()) {
-                parent.addModule(args.nextToken());
+            case CMD_ADDMODULE: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.hasMoreTokens()) {
+                    parent.addModule(args.nextToken());
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!removemodule") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.hasMoreTokens()) {
-                parent.removeModule(args.nextToken());
+            case CMD_REMOVEMODULE: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.hasMoreTokens()) {
+                    parent.removeModule(args.nextToken());
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!reloadmodules") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            sendUrgent(new ChatMessageOut(message.getFrom(), "Reloading modules...", replyByPrivmsg));
-            parent.reloadModules();
+            case CMD_RELOADMODULES:
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                sendUrgent(new ChatMessageOut(message.getFrom(), "Reloading modules...", replyByPrivmsg));
+                parent.reloadModules();
+                break;
             /*
              * CLONE CONTROL COMMANDS (GLOBAL ADMIN ONLY)
              */
-        } else if (message.getCommand().equals("!listclones") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            List clones = Echbot.cloneList();
-            for (Iterator i = clones.iterator(); i.hasNext();) {
-                String clone = (String)i.next();
-                send(new ChatMessageOut(message.getFrom(), clone, replyByPrivmsg));
+            case CMD_LISTCLONES: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List clones = Echbot.cloneList();
+                for (Iterator i = clones.iterator(); i.hasNext();) {
+                    String clone = (String)i.next();
+                    send(new ChatMessageOut(message.getFrom(), clone, replyByPrivmsg));
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!killclone") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            String name = message.getArguments().trim();
-            if (name.length() > 0) {
-                getConfig().remove(name + ",network");
-                getConfig().remove(name + ",channels");
-                getConfig().remove(name + ",nickname");
-                Echbot.killClone(name);
+            case CMD_LANES: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List lanes = Echbot.laneStats();
+                for (Iterator i = lanes.iterator(); i.hasNext();) {
+                    send(new ChatMessageOut(message.getFrom(), (String)i.next(), replyByPrivmsg));
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!startclone") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            startClone(message.getArguments(), message.getFrom(), replyByPrivmsg);
+            case CMD_TIMERS:
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                send(new ChatMessageOut(message.getFrom(), GroupTimer.getStats(), replyByPrivmsg));
+                break;
+            case CMD_EVENTS: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List events = EventType.getStats();
+                for (Iterator i = events.iterator(); i.hasNext();) {
+                    send(new ChatMessageOut(message.getFrom(), (String)i.next(), replyByPrivmsg));
+                }
+                break;
+            }
+            case CMD_COMMANDS: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List commands = parent.getCommandStats();
+                for (Iterator i = commands.iterator(); i.hasNext();) {
+                    send(new ChatMessageOut(message.getFrom(), (String)i.next(), replyByPrivmsg));
+                }
+                break;
+            }
+            case CMD_CONFIG: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List stats = getConfig().getStats();
+                for (Iterator i = stats.iterator(); i.hasNext();) {
+                    send(new ChatMessageOut(message.getFrom(), (String)i.next(), replyByPrivmsg));
+                }
+                break;
+            }
+            case CMD_CACHES: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                List caches = ExpiringCache.getStats();
+                for (Iterator i = caches.iterator(); i.hasNext();) {
+                    send(new ChatMessageOut(message.getFrom(), (String)i.next(), replyByPrivmsg));
+                }
+                break;
+            }
+            case CMD_KILLCLONE: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                String name = message.getArguments().trim();
+                if (name.length() > 0) {
+                    Map removed = new HashMap();
+                    removed.put(name + ",network", null);
+                    removed.put(name + ",channels", null);
+                    removed.put(name + ",nickname", null);
+                    getConfig().putAll(removed);
+                    Echbot.killClone(name);
+                }
+                break;
+            }
+            case CMD_STARTCLONE:
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                startClone(message.getArguments(), message.getFrom(), replyByPrivmsg);
+                break;
             /*
              * MORE GLOBAL ADMIN COMMANDS
              */
-        } else if (message.getCommand().equals("!setadmins") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            String args = message.getArguments().trim();
-            if ("".equals(args)) {
-                String currentAdmins = getConfig().get("vars," + parent.getNetwork() + ",admins");
-                if (currentAdmins == null) {
-                    send(new ChatMessageOut(message.getFrom(), "There are no " + parent.getNetwork() + " admins at the moment", replyByPrivmsg));
+            case CMD_SETADMINS: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                String args = message.getArguments().trim();
+                if ("".equals(args)) {
+                    String currentAdmins = getConfig().get("vars," + parent.getNetwork() + ",admins");
+                    if (currentAdmins == null) {
+                        send(new ChatMessageOut(message.getFrom(), "There are no " + parent.getNetwork() + " admins at the moment", replyByPrivmsg));
+                    } else {
+                        send(new ChatMessageOut(message.getFrom(), "Current network admins: " + currentAdmins, replyByPrivmsg));
+                    }
                 } else {
-                    send(new ChatMessageOut(message.getFrom(), "Current network admins: " + currentAdmins, replyByPrivmsg));
+                    getConfig().put("vars," + parent.getNetwork() + ",admins", args);
+                    String currentAdmins = getConfig().get("vars," + parent.getNetwork() + ",admins");
+                    send(new ChatMessageOut(message.getFrom(), "Updated network admins: " + currentAdmins, replyByPrivmsg));
                 }
-            } else {
-                getConfig().put("vars," + parent.getNetwork() + ",admins", args);
-                String currentAdmins = getConfig().get("vars," + parent.getNetwork() + ",admins");
-                send(new ChatMessageOut(message.getFrom(), "Updated network admins: " + currentAdmins, replyByPrivmsg));
+                break;
             }
-        } else if (message.getCommand().equals("!clearadmins") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            getConfig().remove("vars," + parent.getNetwork() + ",admins");
-            send(new ChatMessageOut(message.getFrom(), "Admins cleared", replyByPrivmsg));
-        } else if (message.getCommand().equals("!network") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.countTokens() == 2) {
-                // we're setting a new network's servers
-                getConfig().put("servers," + args.nextToken().toLowerCase(),
-                        args.nextToken());
-            } else if (args.countTokens() == 1) {
-                // We're querying the state of a network's servers
-                String network = args.nextToken().toLowerCase();
-                String servers = getConfig().get("servers," + network);
-                if ((servers == null) || "".equals(servers)) {
-                    send(new ChatMessageOut(message.getFrom(), "There are no servers saved for " + network, replyByPrivmsg));
+            case CMD_CLEARADMINS:
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                getConfig().remove("vars," + parent.getNetwork() + ",admins");
+                send(new ChatMessageOut(message.getFrom(), "Admins cleared", replyByPrivmsg));
+                break;
+            case CMD_NETWORK: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.countTokens() == 2) {
+                    // we're setting a new network's servers
+                    getConfig().put("servers," + args.nextToken().toLowerCase(),
+                            args.nextToken());
+                } else if (args.countTokens() == 1) {
+                    // We're querying the state of a network's servers
+                    String network = args.nextToken().toLowerCase();
+                    String servers = getConfig().get("servers," + network);
+                    if ((servers == null) || "".equals(servers)) {
+                        send(new ChatMessageOut(message.getFrom(), "There are no servers saved for " + network, replyByPrivmsg));
+                    } else {
+                        send(new ChatMessageOut(message.getFrom(), "Servers for " + network + " are: " + servers, replyByPrivmsg));
+                    }
                 } else {
-                    send(new ChatMessageOut(message.getFrom(), "Servers for " + network + " are: " + servers, replyByPrivmsg));
+                    send(new ChatMessageOut(message.getFrom(), "Usage: !network <network> [serverlist]", replyByPrivmsg));
                 }
-            } else {
-                send(new ChatMessageOut(message.getFrom(), "Usage: !network <network> [serverlist]", replyByPrivmsg));
+                break;
             }
-        } else if (message.getCommand().equals("!removenetwork") &&
-                auth.isAdmin(message.getFromWithHost(), null, null)) {
-            StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.countTokens() == 1) {
-                // we're removing a network
-                String network = args.nextToken().toLowerCase();
-                getConfig().remove("servers," + network);
-                send(new ChatMessageOut(message.getFrom(), "Removed servers for " + network, replyByPrivmsg));
-            } else {
-                send(new ChatMessageOut(message.getFrom(), "Usage: !removenetwork <network>", replyByPrivmsg));
+            case CMD_REMOVENETWORK: {
+                if (!auth.isAdmin(message.getFromWithHost(), null, null)) break;
+                StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.countTokens() == 1) {
+                    // we're removing a network
+                    String network = args.nextToken().toLowerCase();
+                    getConfig().remove("servers," + network);
+                    send(new ChatMessageOut(message.getFrom(), "Removed servers for " + network, replyByPrivmsg));
+                } else {
+                    send(new ChatMessageOut(message.getFrom(), "Usage: !removenetwork <network>", replyByPrivmsg));
+                }
+                break;
             }
             /*
              * CHANNEL CONTROL COMMANDS (NETWORK OR GLOBAL ADMINS)
              */
-        } else if (message.getCommand().equals("!reconnect") &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) {
-			send(new QuitOut("Reconnecting..."));
-        } else if (message.getCommand().equals("!join") &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) {
-            // Find which channel we're joining
-            StringTokenizer tokens = new StringTokenizer(message.getArguments().toLowerCase());
-            if (tokens.hasMoreTokens()) {
-                String chan = tokens.nextToken().toLowerCase();
-                ChannelRecord newChan = tokens.hasMoreTokens() ?
-                        new ChannelRecord(chan, tokens.nextToken()) :
-                        new ChannelRecord(chan);
-                // If it exists in the channel list, replace it
-                List channels = getChannels();
-                int chanIndex = channels.indexOf(newChan);
-                if (chanIndex != -1) {
-                    channels.set(chanIndex, newChan);
-                    send(new JoinOut(newChan.toSaveString()));
-                } else if (channels.size() >= 20) {
-                    send(new ChatMessageOut(message.getFrom(), "Cannot join more than 20 channels", replyByPrivmsg));
-                    return;
-                } else {
-                    channels.add(newChan);
-                    send(new JoinOut(newChan.toSaveString()));
-                    send(new ChatMessageOut(message.getFrom(), "Joined " + newChan.channel, replyByPrivmsg));
+            case CMD_RECONNECT:
+                if (!auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) break;
+                send(new QuitOut("Reconnecting..."));
+                break;
+            case CMD_JOIN: {
+                if (!auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) break;
+                // Find which channel we're joining
+                StringTokenizer tokens = new StringTokenizer(message.getArguments().toLowerCase());
+                if (tokens.hasMoreTokens()) {
+                    String chan = tokens.nextToken().toLowerCase();
+                    ChannelRecord newChan = tokens.hasMoreTokens() ?
+                            new ChannelRecord(chan, tokens.nextToken()) :
+                            new ChannelRecord(chan);
+                    // If it exists in the channel list, replace it
+                    List channels = getChannels();
+                    int chanIndex = channels.indexOf(newChan);
+                    if (chanIndex != -1) {
+                        channels.set(chanIndex, newChan);
+                        send(new JoinOut(newChan.toSaveString()));
+                    } else if (channels.size() >= 20) {
+                        send(new ChatMessageOut(message.getFrom(), "Cannot join more than 20 channels", replyByPrivmsg));
+                        return;
+                    } else {
+                        channels.add(newChan);
+                        send(new JoinOut(newChan.toSaveString()));
+                        send(new ChatMessageOut(message.getFrom(), "Joined " + newChan.channel, replyByPrivmsg));
+                    }
+                    saveChannelList(channels);
                 }
-                saveChannelList(channels);
+                break;
             }
-        } else if (message.getCommand().equals("!part") &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) {
-            // Find which channel we're leaving
-            String leaveChan = message.getArguments().trim().toLowerCase();
-            List channels = getChannels();
-            // If it exists in the channel list, remove it
-            ChannelRecord leavingChan = new ChannelRecord(leaveChan);
-            if (channels.remove(leavingChan)) {
-                saveChannelList(channels);
-                send(new PartOut(leaveChan));
-                send(new ChatMessageOut(message.getFrom(), "Left " + leaveChan, replyByPrivmsg));
-            } else if (leaveChan.length() > 0) {
-                send(new ChatMessageOut(message.getFrom(), "Couldn't leave channel, not on " + leaveChan, replyByPrivmsg));
+            case CMD_PART: {
+                if (!auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) break;
+                // Find which channel we're leaving
+                String leaveChan = message.getArguments().trim().toLowerCase();
+                List channels = getChannels();
+                // If it exists in the channel list, remove it
+                ChannelRecord leavingChan = new ChannelRecord(leaveChan);
+                if (channels.remove(leavingChan)) {
+                    saveChannelList(channels);
+                    send(new PartOut(leaveChan));
+                    send(new ChatMessageOut(message.getFrom(), "Left " + leaveChan, replyByPrivmsg));
+                } else if (leaveChan.length() > 0) {
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't leave channel, not on " + leaveChan, replyByPrivmsg));
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!announce") &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null) &&
-                !message.getTo().startsWith("#")) {
-            /*
-             * The format for this command is !announce <message>, and can only
-             * be carried out by network/global admins via a privmsg
-             */
-            String announcement = message.getArguments();
-            if (announcement.length() == 0) {
-                send(new ChatMessageOut(message.getFrom(), "Usage: !announce <message>", true));
-            } else {
-                parent.triggerGlobalEvent(broadcastEventId, announcement);
+            case CMD_ANNOUNCE: {
+                if (!auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null) || message.getTo().startsWith("#")) break;
+                /*
+                 * The format for this command is !announce <message>, and can only
+                 * be carried out by network/global admins via a privmsg
+                 */
+                String announcement = message.getArguments();
+                if (announcement.length() == 0) {
+                    send(new ChatMessageOut(message.getFrom(), "Usage: !announce <message>", true));
+                } else {
+                    parent.triggerGlobalEvent(broadcastEventId, announcement);
+                }
+                break;
             }
-        } else if (message.getCommand().equals("!channels") &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) {
-            // Get the list of channels, and create a message
-            List channels = getChannels();
-            StringBuffer sb = new StringBuffer();
-            sb.append(channels.size()).append(" channels: ");
-            for (Iterator i = channels.iterator(); i.hasNext();) {
-                ChannelRecord chan = (ChannelRecord)i.next();
-                sb.append(chan.toString());
-                if (i.hasNext()) sb.append(", ");
+            case CMD_CHANNELS: {
+                if (!auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) break;
+                // Get the list of channels, and create a message
+                List channels = getChannels();
+                StringBuffer sb = new StringBuffer();
+                sb.append(channels.size()).append(" channels: ");
+                for (Iterator i = channels.iterator(); i.hasNext();) {
+                    ChannelRecord chan = (ChannelRecord)i.next();
+                    sb.append(chan.toString());
+                    if (i.hasNext()) sb.append(", ");
+                }
+                // Send the channel list
+                send(new ChatMessageOut(message.getFrom(), sb.toString(), replyByPrivmsg));
+                break;
             }
-            // Send the channel list
-            send(new ChatMessageOut(message.getFrom(), sb.toString(), replyByPrivmsg));
             /*
              * CHANNEL ADMIN COMMANDS
              */
-        } else if (message.getCommand().equals("!set") && (channel != null) &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), channel)) {
-            final StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.hasMoreTokens()) {
-                final String userVarName = args.nextToken();
-                final int varind = message.getMessage().indexOf(userVarName) + userVarName.length() + 1;
-                if (varind >= message.getMessage().length()) {
-                    // The message has some content: is a get
-                    String varMessage = getVarMessage(userVarName, channel);
-                    if (varMessage == null) {
-                        send(new ChatMessageOut(message.getFrom(), "Invalid variable name (" + userVarName + ")", replyByPrivmsg));
+            case CMD_SET: {
+                if ((channel == null) || !auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), channel)) break;
+                final StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.hasMoreTokens()) {
+                    final String userVarName = args.nextToken();
+                    final int varind = message.getMessage().indexOf(userVarName) + userVarName.length() + 1;
+                    if (varind >= message.getMessage().length()) {
+                        // The message has some content: is a get
+                        String varMessage = getVarMessage(userVarName, channel);
+                        if (varMessage == null) {
+                            send(new ChatMessageOut(message.getFrom(), "Invalid variable name (" + userVarName + ")", replyByPrivmsg));
+                        } else {
+                            send(new ChatMessageOut(message.getFrom(), varMessage, replyByPrivmsg));
+                        }
                     } else {
-                        send(new ChatMessageOut(message.getFrom(), varMessage, replyByPrivmsg));
-                    }
-                } else {
-                    // The message has some content: is a set
-                    if (getConfig().containsKey("vars," + userVarName)) {
-                        ConfigUtils.setChannelVar(getConfig(), userVarName, message.getMessage().substring(varind), parent.getNetwork(), channel);
-                        send(new ChatMessageOut(message.getFrom(), userVarName + " set", replyByPrivmsg));
+                        // The message has some content: is a set
+                        if (getConfig().containsKey("vars," + userVarName)) {
+                            ConfigUtils.setChannelVar(getConfig(), userVarName, message.getMessage().substring(varind), parent.getNetwork(), channel);
+                            send(new ChatMessageOut(message.getFrom(), userVarName + " set", replyByPrivmsg));
+                        }
                     }
                 }
+                break;
             }
-        } else if (message.getCommand().equals("!unset") && (channel != null) &&
-                auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), channel)) {
-            final StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.hasMoreTokens()) {
-                final String varName = args.nextToken();
-                ConfigUtils.setChannelVar(getConfig(), varName, null, parent.getNetwork(), channel);
-                send(new ChatMessageOut(message.getFrom(), "Unset " + varName, replyByPrivmsg));
+            case CMD_UNSET: {
+                if ((channel == null) || !auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), channel)) break;
+                final StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.hasMoreTokens()) {
+                    final String varName = args.nextToken();
+                    ConfigUtils.setChannelVar(getConfig(), varName, null, parent.getNetwork(), channel);
+                    send(new ChatMessageOut(message.getFrom(), "Unset " + varName, replyByPrivmsg));
+                }
+                break;
             }
-        } else if (message.getCommand().startsWith("!alias")) {
-            cmdAlias(message, replyByPrivmsg);
-        } else if (message.getCommand().startsWith("!unalias") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,alias", channel)) {
-            StringTokenizer args = new StringTokenizer(message.getArguments());
-            if (args.hasMoreTokens()) {
-                String aliasName = args.nextToken().toLowerCase();
-                String result = ConfigUtils.getChannelVar(getConfig(), "alias," + aliasName, parent.getNetwork(), channel, null);
-                if (result == null) {
-                    send(new ChatMessageOut(message.getFrom(), aliasName + " hasn't been set", replyByPrivmsg));
-                } else {
-                    ConfigUtils.setChannelVar(getConfig(), "alias," + aliasName, null, parent.getNetwork(), channel);
-                    send(new ChatMessageOut(message.getFrom(), aliasName + " unset", replyByPrivmsg));
+            case CMD_ALIAS:
+                cmdAlias(message, replyByPrivmsg);
+                break;
+            case CMD_UNALIAS: {
+                if (!auth.permittedTo(message.getFromWithHost(), "limit,alias", channel)) break;
+                StringTokenizer args = new StringTokenizer(message.getArguments());
+                if (args.hasMoreTokens()) {
+                    String aliasName = args.nextToken().toLowerCase();
+                    String result = ConfigUtils.getChannelVar(getConfig(), "alias," + aliasName, parent.getNetwork(), channel, null);
+                    if (result == null) {
+                        send(new ChatMessageOut(message.getFrom(), aliasName + " hasn't been set", replyByPrivmsg));
+                    } else {
+                        ConfigUtils.setChannelVar(getConfig(), "alias," + aliasName, null, parent.getNetwork(), channel);
+                        send(new ChatMessageOut(message.getFrom(), aliasName + " unset", replyByPrivmsg));
+                    }
                 }
+                break;
             }
         }
     }
@@ -336,14 +472,10 @@ public class AdminModule extends UserModule
         if (!args.hasMoreTokens()) {
             // Get all the aliases from the config object
             List aliases = new ArrayList();
-            String varStart = "vars," + parent.getNetwork() + "," + channel.toLowerCase() + ",alias,";
-            synchronized (getConfig()) {
-                for (Iterator i = getConfig().keySet().iterator(); i.hasNext();) {
-                    String key = (String)i.next();
-                    if (key.startsWith(varStart)) {
-                        aliases.add(key.substring(varStart.length()));
-                    }
-                }
+            String varStart = "vars," + parent.getNetwork() + "," + channel.toLowerCase() + ",alias";
+            for (Iterator i = getConfig().keysUnder(varStart).iterator(); i.hasNext();) {
+                String key = (String)i.next();
+                aliases.add(key.substring(varStart.length() + 1));
             }
             // Sort the list, and send it back to the user
             Collections.sort(aliases);
@@ -448,10 +580,12 @@ public class AdminModule extends UserModule
             }
         }
         // Now we've got the parameters, go on to start the bot
-        getConfig().put(botName + ",network", network);
-        getConfig().put(botName + ",channels", "#echbot.control control");
-        getConfig().put(botName + ",nickname", nickString.toString());
-        if (!"default".equals(bindTo)) getConfig().put(botName + ",bindto", bindTo);
+        Map settings = new HashMap();
+        settings.put(botName + ",network", network);
+        settings.put(botName + ",channels", "#echbot.control control");
+        settings.put(botName + ",nickname", nickString.toString());
+        if (!"default".equals(bindTo)) settings.put(botName + ",bindto", bindTo);
+        getConfig().putAll(settings);
         Echbot.startClones();
     }
 
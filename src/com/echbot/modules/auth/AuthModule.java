@@ -20,16 +20,21 @@
  */
 package com.echbot.modules.auth;
 
+import com.echbot.ExpiringCache;
+import com.echbot.Interest;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
+import com.echbot.Users;
 import com.echbot.config.ConfigUtils;
 import com.echbot.messages.in.ChatMessageIn;
 import com.echbot.messages.in.SystemIn;
 import com.echbot.messages.out.ChatMessageOut;
 import com.echbot.messages.out.WhoisOut;
 import com.echbot.modules.channels.ChannelsModule;
+import com.echbot.modules.channels.MembershipSnapshot;
 import org.apache.log4j.Logger;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -42,47 +47,63 @@ public class AuthModule extends UserModule
 {
     private static final Logger log = Logger.getLogger(AuthModule.class);
     private static final int RPL_WHOISACCOUNT = 330;
-    private static final int SECS_IN_AN_HOUR = 3600;
-    private final Map authedUsers = new ExpiringHashMap(SECS_IN_AN_HOUR);
-    private final Map pendingQuakenet = new ExpiringHashMap(2000); // 2secs
-    private int lostUserEvent;
+    private static final int CMD_AUTH = 0;
+    private static final int CMD_WHOAMI = 1;
+    private static final int CMD_HELLO = 2;
+    private static final int CMD_NEWPASS = 3;
+    // an auth lasts until the user is lost or the clone reconnects
+    private final ExpiringCache authedUsers = new ExpiringCache("auth.authed", ExpiringCache.FOREVER);
+    private final ExpiringCache pendingQuakenet = new ExpiringCache("auth.whois", 2000); // 2secs
+    private final int lostUserEvent, renamedUserEvent;
 
     public AuthModule(UserModuleInterface parent) {
         super(parent);
-        lostUserEvent = getUserEventId("channels.lostuser");
+        lostUserEvent = getUserEventId(Users.LOST);
+        renamedUserEvent = getUserEventId(Users.RENAMED);
         parent.registerForEvent(lostUserEvent, this);
-        register(ChatMessageIn.class);
-        register(SystemIn.class);
+        parent.registerForEvent(renamedUserEvent, this);
+        register(SystemIn.class, Interest.numerics(new int[]{RPL_WHOISACCOUNT}));
+        registerCommand("!auth", CMD_AUTH);
+        registerCommand("!whoami", CMD_WHOAMI);
+        registerCommand("!hello", CMD_HELLO);
+        registerCommand("!newpass", CMD_NEWPASS);
         setDefault("admins", "quakenet_hajen");
         if (getConfig().get("user,hajen") == null) getConfig().put("user,hajen", "????????");
     }
 
     public void initialise(Object state) {
-        if (state != null) {
-            Map[] saved = (Map[])state;
+        if (state instanceof ExpiringCache[]) {
+            ExpiringCache[] saved = (ExpiringCache[])state;
             authedUsers.putAll(saved[0]);
             pendingQuakenet.putAll(saved[1]);
         }
     }
 
     public Object getState() {
-        return new Map[]{authedUsers, pendingQuakenet};
+        return new ExpiringCache[]{authedUsers, pendingQuakenet};
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
-        try {
-            if (message.getCommand().equals("!auth") &&
-                    ((ChannelsModule)getModule("channels")).canSee(message.getFrom())) {
-                authUser(message);
-            } else if (message.getCommand().equals("!whoami")) {
+    public void command(int id, ChatMessageIn message) {
+        switch (id) {
+            case CMD_AUTH:
+                try {
+                    if (((ChannelsModule)getModule("channels")).canSee(message.getFrom())) {
+                        authUser(message);
+                    }
+                } catch (NoSuchModuleException e) {
+                    log.warn("Auth module requires channels module", e);
+                }
+                break;
+            case CMD_WHOAMI:
                 String authed = getAuthedAs(message.getFromWithHost());
                 if (authed == null) {
                     send(new ChatMessageOut(message.getFrom(), "I don't know who you are!", false));
                 } else {
                     send(new ChatMessageOut(message.getFrom(), "I know you as\002 " + authed, false));
                 }
-            } else if (message.getCommand().equals("!hello") && !"quakenet".equals(parent.getNetwork())) {
+                break;
+            case CMD_HELLO:
+                if ("quakenet".equals(parent.getNetwork())) break;
                 String username = message.getFrom().toLowerCase();
                 StringTokenizer tokens = new StringTokenizer(message.getArguments());
                 if (!tokens.hasMoreTokens()) {
@@ -96,20 +117,17 @@ public class AuthModule extends UserModule
                     send(new ChatMessageOut(message.getFrom(), "\00310To auth with the bot, type\0035 /msg " + parent.getNickname() + " !auth " + username + " " + originalPass, false));
                     send(new ChatMessageOut(message.getFrom(), "\00310To change your password, auth first then type\0035 /msg " + parent.getNickname() + " !newpass " + originalPass + " <newpass>", false));
                 }
-            } else if (message.getCommand().equals("!newpass") && !"quakenet".equals(parent.getNetwork())) {
+                break;
+            case CMD_NEWPASS:
+                if ("quakenet".equals(parent.getNetwork())) break;
                 // todo
-            }
-
-        } catch (NoSuchModuleException e) {
-            log.warn("Auth module requires channels module", e);
+                break;
         }
     }
 
     private void authUser(ChatMessageIn message) {
         if (parent.getNetwork().equals("quakenet")) {
-            synchronized (pendingQuakenet) {
-                pendingQuakenet.put(message.getFrom(), message.getFromWithHost());
-            }
+            pendingQuakenet.put(message.getFrom(), message.getFromWithHost());
             send(new WhoisOut(message.getFrom()));
         } else {
             StringTokenizer args = new StringTokenizer(message.getArguments());
@@ -123,6 +141,7 @@ public class AuthModule extends UserModule
                     send(new ChatMessageOut(message.getFrom(), "\00310Use !hello to create an account first!", false));
                 } else if (UnixCrypt.matches(getConfig().get(varname), password)) {
                     authedUsers.put(message.getFromWithHost(), username);
+                    parent.getUsers().learnAccount(message.getFromWithHost(), username);
                     send(new ChatMessageOut(message.getFrom(), "You are now authed as " + username, false));
                 } else {
                     send(new ChatMessageOut(message.getFrom(), "\00310Usage: /msg " + parent.getNickname() + " !auth <username> <password>", false));
@@ -136,16 +155,14 @@ public class AuthModule extends UserModule
             try {
                 final StringTokenizer tokens = new StringTokenizer(message.getMessage());
                 final String person = tokens.nextToken();
-                synchronized (pendingQuakenet) {
-                    if (pendingQuakenet.containsKey(person)) {
-                        final String authedAs = getQnetAuth(tokens);
-                        if (((ChannelsModule)getModule("channels")).canSee(person)) {
-                            synchronized (authedUsers) {
-                                authedUsers.put(pendingQuakenet.get(person), authedAs);
-                                pendingQuakenet.remove(person);
-                            }
-                            send(new ChatMessageOut(person, "You are now authed as " + authedAs, false));
-                        }
+                final String hostmask = (String)pendingQuakenet.get(person);
+                if (hostmask != null) {
+                    final String authedAs = getQnetAuth(tokens);
+                    if (((ChannelsModule)getModule("channels")).canSee(person)) {
+                        pendingQuakenet.remove(person);
+                        authedUsers.put(hostmask, authedAs);
+                        parent.getUsers().learnAccount(hostmask, authedAs);
+                        send(new ChatMessageOut(person, "You are now authed as " + authedAs, false));
                     }
                 }
             } catch (NoSuchModuleException e) {
@@ -163,30 +180,43 @@ public class AuthModule extends UserModule
     }
 
     public String getAuthedAs(String hostmask) {
-        synchronized (authedUsers) {
-            if (authedUsers.containsKey(hostmask)) {
-                return (String)authedUsers.get(hostmask);
-            }
-        }
-        return null;
+        return (String)authedUsers.get(hostmask);
     }
 
     public void userEvent(int id, Object attachment) {
         if (id == lostUserEvent) {
-            final String searchFor = (String)attachment + "!";
-            synchronized (pendingQuakenet) {
-                for (Iterator i = pendingQuakenet.keySet().iterator(); i.hasNext();) {
-                    final String nick = (String)i.next();
-                    if (nick.equals(attachment)) i.remove();
-                }
+            final Users.User user = (Users.User)attachment;
+            pendingQuakenet.remove(user.getNick());
+            removeAuths(user.getNick());
+        } else if (id == renamedUserEvent) {
+            // the auths follow them to their new nick
+            final Users.User user = (Users.User)attachment;
+            pendingQuakenet.remove(user.getPreviousNick());
+            final int nickLength = user.getPreviousNick().length();
+            final Map moved = removeAuths(user.getPreviousNick());
+            for (Iterator i = moved.entrySet().iterator(); i.hasNext();) {
+                final Map.Entry auth = (Map.Entry)i.next();
+                authedUsers.put(user.getNick() + ((String)auth.getKey()).substring(nickLength), auth.getValue());
             }
-            synchronized (authedUsers) {
-                for (Iterator i = authedUsers.keySet().iterator(); i.hasNext();) {
-                    final String hostmask = (String)i.next();
-                    if (hostmask.startsWith(searchFor)) i.remove();
-                }
+        }
+    }
+
+    /**
+     * Take out every auth made from nick, whichever host it was made from,
+     * since the user@host we have for them may be out of date.
+     * @return the removed auths, by hostmask
+     */
+    private Map removeAuths(String nick) {
+        final String searchFor = nick + "!";
+        final Map removed = new HashMap();
+        for (Iterator i = authedUsers.keys().iterator(); i.hasNext();) {
+            final String hostmask = (String)i.next();
+            if (hostmask.startsWith(searchFor)) {
+                final Object authedAs = authedUsers.remove(hostmask);
+                if (authedAs != null) removed.put(hostmask, authedAs);
             }
         }
+        return removed;
     }
 
     public boolean permittedTo(String hostmask, String varName, String chan) {
@@ -197,7 +227,8 @@ public class AuthModule extends UserModule
         try {
             log.debug("Checking " + permissions);
             if (permissions == null) return false;
-            final ChannelsModule channels = (ChannelsModule)getModule("channels");
+            // one snapshot so that every check sees the same channel state
+            final MembershipSnapshot channels = ((ChannelsModule)getModule("channels")).getSnapshot();
             final StringTokenizer tokens = new StringTokenizer(permissions.toLowerCase(), ", ");
             while (tokens.hasMoreTokens()) {
                 final String next = tokens.nextToken();
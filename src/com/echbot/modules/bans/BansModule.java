@@ -20,14 +20,16 @@
  */
 package com.echbot.modules.bans;
 
+import com.echbot.ExpiringCache;
+import com.echbot.Interest;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
+import com.echbot.Users;
 import com.echbot.GroupTimer;
 import com.echbot.config.Config;
 import com.echbot.config.ConfigUtils;
 import com.echbot.messages.in.ChatMessageIn;
 import com.echbot.messages.in.JoinIn;
-import com.echbot.messages.in.NickIn;
 import com.echbot.messages.in.SystemIn;
 import com.echbot.messages.out.ChatMessageOut;
 import com.echbot.messages.out.WhoisOut;
@@ -59,10 +61,18 @@ public class BansModule extends UserModule
     private static final int RPL_WHOISUSER = 311;
     private static final int RPL_WHOISACCOUNT = 330;
     private static final int WAIT_FOR_AUTH_DELAY = 1000;
+    private static final int CMD_BAN = 0;
+    private static final int CMD_BANLIST = 1;
+    private static final int CMD_UNBAN = 2;
     private static final String BAN_FOLDER = "/var/www/echbot.com/bans/";
-    private final Set pendingBans = new ExpiringHashSet(SECS_IN_A_DAY);
+    /**
+     * Bans waiting on a whois, as a List for each nick folded by the
+     * server's casemapping
+     */
+    private final ExpiringCache pendingBans = new ExpiringCache("bans.whois", SECS_IN_A_DAY * 1000L);
     private final Map bans = new HashMap();
     private final GroupTimer removeTimer = new GroupTimer(getTimer());
+    private final int renamedUserEvent;
 
     private static class BanException extends Exception
     {
@@ -73,10 +83,13 @@ public class BansModule extends UserModule
 
     public BansModule(UserModuleInterface parent) {
         super(parent);
-        register(ChatMessageIn.class);
-        register(SystemIn.class);
-        register(NickIn.class);
+        register(SystemIn.class, Interest.numerics(new int[]{RPL_WHOISACCOUNT, ERR_NOSUCHNICK, RPL_WHOISUSER}));
         register(JoinIn.class);
+        renamedUserEvent = getUserEventId(Users.RENAMED);
+        parent.registerForEvent(renamedUserEvent, this);
+        registerCommand("!ban", CMD_BAN);
+        registerCommand("!banlist", CMD_BANLIST);
+        registerCommand("!unban", CMD_UNBAN);
         setDefault("limit,ban", "admins,opped");
         setDefault("bans,defaultlength", Integer.toString(SECS_IN_A_DAY));
     }
@@ -90,30 +103,24 @@ public class BansModule extends UserModule
             return;
         }
         Config config = getConfig();
-        synchronized (config) {
-            Set keys = new HashSet(config.keySet());
-            for (Iterator i = keys.iterator(); i.hasNext();) {
-                String key = (String)i.next();
-                if (key.startsWith("vars,") && (key.indexOf(",bans,") > -1)) {
-                    log.debug("Examining " + key);
-                    StringTokenizer tokens = new StringTokenizer(key, ",");
-                    if (tokens.countTokens() == 5) {
-                        tokens.nextToken();
-                        String network = tokens.nextToken();
-                        if (parent.getNetwork().equals(network)) {
-                            String channel = tokens.nextToken();
-                            if (channels.shouldBeOn(channel)) {
-                                log.debug(parent.getName() + " claimed ban");
-                                tokens.nextToken();
-                                String nickname = tokens.nextToken();
-                                try {
-                                    addBanWithoutSet(BanEntry.parseConfigString(
-                                            config.get(key), channel, nickname, this));
-                                } catch (Exception e) {
-                                    log.debug("Failed to parse config string", e);
-                                }
-                            }
-                        }
+        for (Iterator i = config.keysMatching("vars," + parent.getNetwork() + ",*,bans,*").iterator(); i.hasNext();) {
+            String key = (String)i.next();
+            log.debug("Examining " + key);
+            StringTokenizer tokens = new StringTokenizer(key, ",");
+            if (tokens.countTokens() == 5) {
+                tokens.nextToken();
+                tokens.nextToken();
+                String channel = tokens.nextToken();
+                if (channels.shouldBeOn(channel)) {
+                    log.debug(parent.getName() + " claimed ban");
+                    tokens.nextToken();
+                    String nickname = tokens.nextToken();
+                    String value = config.get(key);
+                    if (value == null) continue;
+                    try {
+                        addBanWithoutSet(BanEntry.parseConfigString(value, channel, nickname, this));
+                    } catch (Exception e) {
+                        log.debug("Failed to parse config string", e);
                     }
                 }
             }
@@ -125,28 +132,31 @@ public class BansModule extends UserModule
         return super.getState();
     }
 
-    public void received(ChatMessageIn message) {
+    public void command(int id, ChatMessageIn message) {
         final String channel = message.getTo().startsWith("#") ? message.getTo() : null;
 
-        if (!message.isCommand()) return;
-        if ("!ban".equals(message.getCommand())) {
-            try {
-                ban(new StringTokenizer(message.getArguments()), channel, message.getFrom(), message.getFromWithHost());
-            } catch (BanException e) {
-                send(new ChatMessageOut(message.getFrom(), "Couldn't ban (" + e.getMessage() + ")", false));
-            }
-        } else if ("!banlist".equals(message.getCommand())) {
-            try {
-                banlist(new StringTokenizer(message.getArguments()), channel, message.getFrom(), message.getFromWithHost());
-            } catch (BanException e) {
-                send(new ChatMessageOut(message.getFrom(), "Couldn't list (" + e.getMessage() + ")", false));
-            }
-        } else if ("!unban".equals(message.getCommand())) {
-            try {
-                unban(new StringTokenizer(message.getArguments()), channel, message.getFromWithHost());
-            } catch (BanException e) {
-                send(new ChatMessageOut(message.getFrom(), "Couldn't unban (" + e.getMessage() + ")", false));
-            }
+        switch (id) {
+            case CMD_BAN:
+                try {
+                    ban(new StringTokenizer(message.getArguments()), channel, message.getFrom(), message.getFromWithHost());
+                } catch (BanException e) {
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't ban (" + e.getMessage() + ")", false));
+                }
+                break;
+            case CMD_BANLIST:
+                try {
+                    banlist(new StringTokenizer(message.getArguments()), channel, message.getFrom(), message.getFromWithHost());
+                } catch (BanException e) {
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't list (" + e.getMessage() + ")", false));
+                }
+                break;
+            case CMD_UNBAN:
+                try {
+                    unban(new StringTokenizer(message.getArguments()), channel, message.getFromWithHost());
+                } catch (BanException e) {
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't unban (" + e.getMessage() + ")", false));
+                }
+                break;
         }
     }
 
@@ -350,16 +360,14 @@ public class BansModule extends UserModule
     }
 
     private BanEntry getPending(String nickname, boolean remove) {
+        final String key = parent.getSymbols().fold(nickname);
         synchronized (pendingBans) {
-            for (Iterator i = pendingBans.iterator(); i.hasNext();) {
-                final BanEntry ban = (BanEntry)i.next();
-                if (ban.getNickname().equalsIgnoreCase(nickname)) {
-                    if (remove) i.remove();
-                    return ban;
-                }
-            }
+            final List waiting = (List)pendingBans.get(key);
+            if (waiting == null) return null;
+            if (!remove) return (BanEntry)waiting.get(0);
+            if (waiting.size() == 1) pendingBans.remove(key);
+            return (BanEntry)waiting.remove(0);
         }
-        return null;
     }
 
     private void setBan(BanEntry ban) {
@@ -423,19 +431,27 @@ public class BansModule extends UserModule
         if (ban != null) reban(ban);
     }
 
-    public void received(NickIn message) {
-        synchronized (bans) {
-            for (Iterator i = bans.keySet().iterator(); i.hasNext();) {
-                String channel = (String)i.next();
-                BanEntry ban = getBan(channel, message.getNewNick());
+    public void userEvent(int id, Object attachment) {
+        if (id == renamedUserEvent) {
+            // only the channels they're on can need a reban
+            final Users.User user = (Users.User)attachment;
+            final List channels = user.getChannels();
+            for (int i = 0; i < channels.size(); i++) {
+                BanEntry ban = getBan((String)channels.get(i), user.getNick());
                 if (ban != null) reban(ban);
             }
         }
     }
 
     private final void reban(BanEntry ban) {
+        final String key = parent.getSymbols().fold(ban.getNickname());
         synchronized (pendingBans) {
-            pendingBans.add(ban);
+            List waiting = (List)pendingBans.get(key);
+            if (waiting == null) {
+                waiting = new ArrayList(1);
+                pendingBans.put(key, waiting);
+            }
+            if (!waiting.contains(ban)) waiting.add(ban);
         }
         send(new WhoisOut(ban.getNickname()));
     }
@@ -20,6 +20,7 @@
  */
 package com.echbot.modules.channels;
 
+import com.echbot.Interest;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
 import com.echbot.modules.auth.AuthModule;
@@ -46,10 +47,8 @@ public final class ChannelsModule extends UserModule
     private static final int RPL_NAMREPLY = 353;
     private static final int REJOIN_DELAY = 600000;
     private static final long STATS_UPDATE_DELAY = 60000;
-    private final Map occupants = Collections.synchronizedMap(new HashMap());
-    private final Map voices = Collections.synchronizedMap(new HashMap());
-    private final Map ops = Collections.synchronizedMap(new HashMap());
-    private int lostUserEvent;
+    private static final int CMD_REJOIN = 0;
+    private final Membership members;
     private final Runnable rejoinTask = new Runnable()
     {
         public void run() {
@@ -59,15 +58,16 @@ public final class ChannelsModule extends UserModule
 
     public ChannelsModule(UserModuleInterface parent) {
         super(parent);
-        register(ChatMessageIn.class);
+        members = new Membership(parent.getSymbols());
+        registerCommand("!rejoin", CMD_REJOIN);
         register(JoinIn.class);
         register(KickIn.class);
         register(ModeIn.class);
         register(NickIn.class);
         register(PartIn.class);
         register(QuitIn.class);
-        register(SystemIn.class);
-        lostUserEvent = getUserEventId("channels.lostuser");
+        register(SystemIn.class, Interest.numerics(new int[]{ERR_CHANNELISFULL, ERR_INVITEONLYCHAN,
+                ERR_BANNEDFROMCHAN, ERR_BADCHANNELKEY, ERR_NEEDREGGEDNICK, RPL_NAMREPLY}));
         getTimer().schedule(rejoinTask, REJOIN_DELAY);
     }
 
@@ -75,10 +75,7 @@ public final class ChannelsModule extends UserModule
         log.debug("Initialising the channels module");
         if (state != null) {
             try {
-                Map[] saved = (Map[])state;
-                occupants.putAll(saved[0]);
-                ops.putAll(saved[1]);
-                voices.putAll(saved[2]);
+                members.fromState((Map[])state);
             } catch (Exception e) {
                 log.debug("Failed to restore state", e);
             }
@@ -92,11 +89,11 @@ public final class ChannelsModule extends UserModule
             int space = next.indexOf(' ');
             if ((space != -1) && (next.length() > space + 1)) {
                 String channel = next.substring(0, space);
-                if (!occupants.containsKey(channel)) {
+                if (!members.getSnapshot().isOn(channel)) {
                     channels.add(channel);
                     passwords.add(next.substring(space + 1));
                 }
-            } else if (!occupants.containsKey(next)) {
+            } else if (!members.getSnapshot().isOn(next)) {
                 channels.add(next);
             }
         }
@@ -117,19 +114,17 @@ public final class ChannelsModule extends UserModule
     }
 
     public Object getState() {
-        return new Map[]{occupants, ops, voices};
+        return members.toState();
     }
 
     public void received(JoinIn message) {
-        addToMap(occupants, message.getChannel().toLowerCase(), message.getJoiner());
+        members.joined(message.getChannel(), message.getJoiner(), (byte)0);
+        members.publish();
     }
 
     public void received(final KickIn message) {
         leftChan(message.getChannel(), message.getKicked());
-        if (!canSee(message.getKicked())) {
-            parent.triggerEvent(lostUserEvent, message.getKicked());
-        }
-        if (message.getKicked().equals(parent.getNickname())) {
+        if (parent.getSymbols().equals(message.getKicked(), parent.getNickname())) {
             String errorMessage = "Kicked from " + message.getChannel() + " by " + message.getKicker();
             send(new ChatMessageOut("#echbot.control", errorMessage, true));
             log.warn(errorMessage);
@@ -150,24 +145,17 @@ public final class ChannelsModule extends UserModule
     }
 
     public void received(NickIn message) {
-        replaceEntries(occupants, message.getOldNick(), message.getNewNick());
-        replaceEntries(ops, message.getOldNick(), message.getNewNick());
-        replaceEntries(voices, message.getOldNick(), message.getNewNick());
+        members.renamed(message.getOldNick(), message.getNewNick());
+        members.publish();
     }
 
     public void received(PartIn message) {
         leftChan(message.getChannel(), message.getLeaver());
-        if (!canSee(message.getLeaver())) {
-            parent.triggerEvent(lostUserEvent, message.getLeaver());
-        }
     }
 
     public void received(QuitIn message) {
-        for (Iterator i = occupants.keySet().iterator(); i.hasNext();) {
-            String channel = (String)i.next();
-            leftChan(channel, message.getQuitter());
-        }
-        parent.triggerEvent(lostUserEvent, message.getQuitter());
+        members.quit(message.getQuitter());
+        members.publish();
     }
 
     public void received(SystemIn message) {
@@ -202,61 +190,28 @@ public final class ChannelsModule extends UserModule
         /* channel name */
         if (!names.hasMoreTokens()) return;
         String channel = names.nextToken().toLowerCase();
-        while (names.hasMoreTokens()) {
-            String name = names.nextToken();
-            if (name.charAt(0) == '+') {
-                name = name.substring(1);
-                addToMap(occupants, channel, name);
-                addToMap(voices, channel, name);
-            } else if (name.charAt(0) == '@') {
-                name = name.substring(1);
-                addToMap(occupants, channel, name);
-                addToMap(ops, channel, name);
-            } else {
-                addToMap(occupants, channel, name);
+        synchronized (members) {
+            while (names.hasMoreTokens()) {
+                String name = names.nextToken();
+                if (name.charAt(0) == '+') {
+                    members.joined(channel, name.substring(1), Membership.VOICE);
+                } else if (name.charAt(0) == '@') {
+                    members.joined(channel, name.substring(1), Membership.OP);
+                } else {
+                    members.joined(channel, name, (byte)0);
+                }
             }
+            members.publish();
         }
     }
 
     private final void leftChan(String chan, String nick) {
-        String channel = chan.toLowerCase();
-        if (parent.getNickname().equals(nick)) {
-            occupants.remove(channel);
-            ops.remove(channel);
-            voices.remove(channel);
-        } else {
-            delFromMap(occupants, channel, nick);
-            delFromMap(ops, channel, nick);
-            delFromMap(voices, channel, nick);
-        }
-    }
-
-    private static final void addToMap(Map map, Object key, Object value) {
-        if (map.containsKey(key)) {
-            ((Set)map.get(key)).add(value);
+        if (parent.getSymbols().equals(parent.getNickname(), nick)) {
+            members.forget(chan);
         } else {
-            Set newSet = Collections.synchronizedSet(new HashSet());
-            newSet.add(value);
-            map.put(key, newSet);
-        }
-    }
-
-    private static final void delFromMap(Map map, Object key, Object value) {
-        if (map.containsKey(key)) {
-            ((Set)map.get(key)).remove(value);
-        }
-    }
-
-    private static final void replaceEntries(Map map, String oldNick, String newNick) {
-        synchronized (map) {
-            for (Iterator i = map.values().iterator(); i.hasNext();) {
-                Set set = (Set)i.next();
-                if (set.contains(oldNick)) {
-                    set.remove(oldNick);
-                    set.add(newNick);
-                }
-            }
+            members.left(chan, nick);
         }
+        members.publish();
     }
 
     /**
@@ -265,31 +220,25 @@ public final class ChannelsModule extends UserModule
      * @return true if the nickname is known on any of the channels we're in
      */
     public boolean canSee(String person) {
-        synchronized (occupants) {
-            for (Iterator i = occupants.values().iterator(); i.hasNext();) {
-                Set people = (Set)i.next();
-                if (people.contains(person)) return true;
-            }
-        }
-        return false;
+        return members.getSnapshot().canSee(person);
     }
 
     public boolean isOpped(String nick, String channel) {
-        if (channel == null) return false;
-        String chan = channel.toLowerCase();
-        synchronized (ops) {
-            if (!ops.containsKey(chan)) return false;
-            return ((Set)ops.get(chan)).contains(nick);
-        }
+        return members.getSnapshot().isOpped(nick, channel);
     }
 
     public boolean isVoiced(String nick, String channel) {
-        if (channel == null) return false;
-        String chan = channel.toLowerCase();
-        synchronized (voices) {
-            if (!voices.containsKey(chan)) return false;
-            return ((Set)voices.get(chan)).contains(nick);
-        }
+        return members.getSnapshot().isVoiced(nick, channel);
+    }
+
+    /**
+     * Who is on our channels right now. Use this rather than several
+     * separate calls when the answers need to agree with each other, for
+     * example checking a nick across a few channels; it doesn't lock
+     * anything and never changes.
+     */
+    public MembershipSnapshot getSnapshot() {
+        return members.getSnapshot();
     }
 
     public void received(ModeIn message) {
@@ -299,40 +248,39 @@ public final class ChannelsModule extends UserModule
         String plusminus = modes.nextToken();
         boolean adding = true;
         int index = 0;
-        while (index < plusminus.length()) {
-            char next = plusminus.charAt(index++);
-            if (next == '+')
-                adding = true;
-            else if (next == '-')
-                adding = false;
-            else if (next == 'k') {
-                String newKey = modes.nextToken();
-                setChannelKey(message.getChannel(), adding ? newKey : null);
-            } else if ((next == 'b') || (next == 'l')) {
-                if (modes.hasMoreTokens()) modes.nextToken();
-            } else if (next == 'o') {
-                if (modes.hasMoreTokens()) {
-                    synchronized (ops) {
+        synchronized (members) {
+            while (index < plusminus.length()) {
+                char next = plusminus.charAt(index++);
+                if (next == '+')
+                    adding = true;
+                else if (next == '-')
+                    adding = false;
+                else if (next == 'k') {
+                    String newKey = modes.nextToken();
+                    setChannelKey(message.getChannel(), adding ? newKey : null);
+                } else if ((next == 'b') || (next == 'l')) {
+                    if (modes.hasMoreTokens()) modes.nextToken();
+                } else if (next == 'o') {
+                    if (modes.hasMoreTokens()) {
                         String nickname = modes.nextToken();
                         log.debug((adding ? "Opped " : "Deopped ") + nickname);
                         if (adding)
-                            addToMap(ops, message.getChannel(), nickname);
+                            members.joined(message.getChannel(), nickname, Membership.OP);
                         else
-                            delFromMap(ops, message.getChannel(), nickname);
+                            members.clearFlag(message.getChannel(), nickname, Membership.OP);
                     }
-                }
-            } else if (next == 'v') {
-                if (modes.hasMoreTokens()) {
-                    synchronized (voices) {
+                } else if (next == 'v') {
+                    if (modes.hasMoreTokens()) {
                         String nickname = modes.nextToken();
                         log.debug((adding ? "Voiced " : "Devoiced ") + nickname);
                         if (adding)
-                            addToMap(voices, message.getChannel(), nickname);
+                            members.joined(message.getChannel(), nickname, Membership.VOICE);
                         else
-                            delFromMap(voices, message.getChannel(), nickname);
+                            members.clearFlag(message.getChannel(), nickname, Membership.VOICE);
                     }
                 }
             }
+            members.publish();
         }
     }
 
@@ -361,10 +309,10 @@ public final class ChannelsModule extends UserModule
         StringTokenizer tokens = new StringTokenizer(getConfig().get(parent.getName() + ",channels"), ",");
         while (tokens.hasMoreTokens()) {
             String chan = tokens.nextToken().trim();
-            if ((chan.indexOf(' ') > -1) && !occupants.containsKey(chan.substring(0, chan.indexOf(' ')))) {
+            if ((chan.indexOf(' ') > -1) && !members.getSnapshot().isOn(chan.substring(0, chan.indexOf(' ')))) {
                 channels.add(chan.substring(0, chan.indexOf(' ')));
                 passwords.add(chan.substring(chan.indexOf(' ') + 1));
-            } else if ((chan.indexOf(' ') == -1) &&!occupants.containsKey(chan)) {
+            } else if ((chan.indexOf(' ') == -1) && !members.getSnapshot().isOn(chan)) {
                 channels.add(chan);
             }
         }
@@ -385,8 +333,7 @@ public final class ChannelsModule extends UserModule
         if (reschedule) getTimer().schedule(rejoinTask, REJOIN_DELAY);
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
+    public void command(int id, ChatMessageIn message) {
         AuthModule auth;
         try {
             auth = (AuthModule)getModule("auth");
@@ -394,7 +341,7 @@ public final class ChannelsModule extends UserModule
             log.warn("Requires auth module", e);
             return;
         }
-        if ("!rejoin".equals(message.getCommand()) &&
+        if ((id == CMD_REJOIN) &&
                 auth.isAdmin(message.getFromWithHost(), parent.getNetwork(), null)) {
             rejoinChannels(false);
         }
@@ -425,15 +372,16 @@ public final class ChannelsModule extends UserModule
             log.warn("Stats require DB module");
             return;
         }
-        int chanCount = occupants.size();
+        MembershipSnapshot snapshot = members.getSnapshot();
+        List channels = snapshot.getChannels();
+        int chanCount = channels.size();
         String[] chans = new String[chanCount];
         int[] occupantCount = new int[chanCount];
         int count = 0;
-        for (Iterator i = occupants.keySet().iterator(); i.hasNext();) {
+        for (Iterator i = channels.iterator(); i.hasNext();) {
             String channel = (String)i.next();
-            Set names = (Set)occupants.get(channel);
             chans[count] = channel;
-            occupantCount[count] = names.size();
+            occupantCount[count] = snapshot.getOccupantCount(channel);
             count++;
         }
         db.updateChannelStats(chans, occupantCount);
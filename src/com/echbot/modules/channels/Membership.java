@@ -0,0 +1,224 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.modules.channels;
+
+import com.echbot.Symbols;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Who is on which of our channels, and whether they're opped or voiced.
+ * Changes are made to a working copy built from persistent maps, so they
+ * share almost everything with the previous version, and publish() hands
+ * the result to readers as a MembershipSnapshot. A caller making several
+ * changes that belong together should hold the lock on this object until
+ * it has published them. Each nick also keeps the list of channels it's on,
+ * so a quit or nick change only touches those channels. Nicks and channels
+ * are keyed by their Symbol, so they match however the server cases them.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class Membership
+{
+    public static final byte OP = 1;
+    public static final byte VOICE = 2;
+    private static final Byte[] FLAGS = {
+        Byte.valueOf((byte)0), Byte.valueOf(OP), Byte.valueOf(VOICE), Byte.valueOf((byte)(OP | VOICE))
+    };
+    private static final Symbols.Symbol[] NONE = new Symbols.Symbol[0];
+    private final Symbols symbols;
+    private volatile MembershipSnapshot published;
+    private PersistentMap channels = PersistentMap.EMPTY;
+    private PersistentMap nicks = PersistentMap.EMPTY;
+
+    public Membership(Symbols symbols) {
+        this.symbols = symbols;
+        this.published = new MembershipSnapshot(symbols, channels, nicks, 0);
+    }
+
+    public MembershipSnapshot getSnapshot() {
+        return published;
+    }
+
+    /**
+     * Make everything changed so far visible to readers.
+     */
+    public synchronized void publish() {
+        final MembershipSnapshot last = published;
+        if ((last.channels != channels) || (last.nicks != nicks)) {
+            published = new MembershipSnapshot(symbols, channels, nicks, last.getVersion() + 1);
+        }
+    }
+
+    /**
+     * Record that nick is on channel, with the given flags (0, OP or VOICE)
+     * added to any it already has.
+     */
+    public synchronized void joined(String channel, String nick, byte flag) {
+        joined(symbols.intern(channel), symbols.intern(nick), flag);
+    }
+
+    private void joined(Symbols.Symbol name, Symbols.Symbol nick, byte flag) {
+        PersistentMap members = (PersistentMap)channels.get(name);
+        if (members == null) members = PersistentMap.EMPTY;
+        final Byte old = (Byte)members.get(nick);
+        final int flags = (old == null) ? flag : (old.byteValue() | flag);
+        channels = channels.with(name, members.with(nick, FLAGS[flags]));
+        if (old == null) nicks = nicks.with(nick, plus((Symbols.Symbol[])nicks.get(nick), name));
+    }
+
+    public synchronized void left(String channel, String nickname) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        final Symbols.Symbol nick = symbols.lookup(nickname);
+        if ((name == null) || (nick == null)) return;
+        final PersistentMap members = (PersistentMap)channels.get(name);
+        if ((members == null) || (members.get(nick) == null)) return;
+        channels = channels.with(name, members.without(nick));
+        nickLeft(nick, name);
+    }
+
+    /**
+     * We've left the channel ourselves, so forget everyone on it.
+     */
+    public synchronized void forget(String channel) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        final PersistentMap members = (name == null) ? null : (PersistentMap)channels.get(name);
+        if (members == null) return;
+        channels = channels.without(name);
+        for (Iterator i = members.keys().iterator(); i.hasNext();) {
+            nickLeft((Symbols.Symbol)i.next(), name);
+        }
+    }
+
+    public synchronized void quit(String nickname) {
+        final Symbols.Symbol nick = symbols.lookup(nickname);
+        final Symbols.Symbol[] on = (nick == null) ? null : (Symbols.Symbol[])nicks.get(nick);
+        if (on == null) return;
+        for (int i = 0; i < on.length; i++) {
+            final PersistentMap members = (PersistentMap)channels.get(on[i]);
+            channels = channels.with(on[i], members.without(nick));
+        }
+        nicks = nicks.without(nick);
+    }
+
+    public synchronized void renamed(String oldNickname, String newNickname) {
+        final Symbols.Symbol oldNick = symbols.lookup(oldNickname);
+        final Symbols.Symbol[] on = (oldNick == null) ? null : (Symbols.Symbol[])nicks.get(oldNick);
+        if (on == null) return;
+        final Symbols.Symbol newNick = symbols.intern(newNickname);
+        if (oldNick == newNick) return;
+        nicks = nicks.without(oldNick);
+        for (int i = 0; i < on.length; i++) {
+            final PersistentMap members = (PersistentMap)channels.get(on[i]);
+            final Byte flags = (Byte)members.get(oldNick);
+            channels = channels.with(on[i], members.without(oldNick));
+            // merges with anything we already thought newNick had
+            joined(on[i], newNick, flags.byteValue());
+        }
+    }
+
+    public synchronized void clearFlag(String channel, String nickname, byte flag) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        final Symbols.Symbol nick = symbols.lookup(nickname);
+        if ((name == null) || (nick == null)) return;
+        final PersistentMap members = (PersistentMap)channels.get(name);
+        if (members == null) return;
+        final Byte flags = (Byte)members.get(nick);
+        if (flags == null) return;
+        channels = channels.with(name, members.with(nick, FLAGS[flags.byteValue() & ~flag]));
+    }
+
+    private void nickLeft(Symbols.Symbol nick, Symbols.Symbol channel) {
+        final Symbols.Symbol[] on = minus((Symbols.Symbol[])nicks.get(nick), channel);
+        nicks = (on.length == 0) ? nicks.without(nick) : nicks.with(nick, on);
+    }
+
+    private static Symbols.Symbol[] plus(Symbols.Symbol[] on, Symbols.Symbol channel) {
+        if (on == null) on = NONE;
+        final Symbols.Symbol[] res = new Symbols.Symbol[on.length + 1];
+        System.arraycopy(on, 0, res, 0, on.length);
+        res[on.length] = channel;
+        return res;
+    }
+
+    private static Symbols.Symbol[] minus(Symbols.Symbol[] on, Symbols.Symbol channel) {
+        if (on == null) return NONE;
+        for (int i = 0; i < on.length; i++) {
+            if (on[i] == channel) {
+                final Symbols.Symbol[] res = new Symbols.Symbol[on.length - 1];
+                System.arraycopy(on, 0, res, 0, i);
+                System.arraycopy(on, i + 1, res, i, res.length - i);
+                return res;
+            }
+        }
+        return on;
+    }
+
+    /**
+     * @return occupants, ops and voices, each a Map of channel to Set of
+     * nicks, as ChannelsModule has always saved its state across reloads
+     */
+    public Map[] toState() {
+        final MembershipSnapshot snapshot = published;
+        final Map[] state = new Map[]{new HashMap(), new HashMap(), new HashMap()};
+        for (Iterator i = snapshot.getChannels().iterator(); i.hasNext();) {
+            final String channel = (String)i.next();
+            final Set occupants = new HashSet(), ops = new HashSet(), voices = new HashSet();
+            final List nicks = snapshot.getOccupants(channel);
+            for (int j = 0; j < nicks.size(); j++) {
+                final String nick = (String)nicks.get(j);
+                occupants.add(nick);
+                final byte flags = snapshot.getFlags(nick, channel);
+                if ((flags & OP) != 0) ops.add(nick);
+                if ((flags & VOICE) != 0) voices.add(nick);
+            }
+            state[0].put(channel, Collections.synchronizedSet(occupants));
+            state[1].put(channel, Collections.synchronizedSet(ops));
+            state[2].put(channel, Collections.synchronizedSet(voices));
+        }
+        return state;
+    }
+
+    public synchronized void fromState(Map[] state) {
+        restore(state[0], (byte)0);
+        restore(state[1], OP);
+        restore(state[2], VOICE);
+        publish();
+    }
+
+    private void restore(Map saved, byte flag) {
+        for (Iterator i = saved.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry)i.next();
+            final Set people = (Set)entry.getValue();
+            synchronized (people) {
+                for (Iterator j = people.iterator(); j.hasNext();) {
+                    joined((String)entry.getKey(), (String)j.next(), flag);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.modules.channels;
+
+import com.echbot.Symbols;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An unchanging view of who is on which of a clone's channels, as it was
+ * after one complete update (a JOIN, a line of NAMES, a whole MODE and so
+ * on). Reads don't take any locks, and everything asked of one snapshot is
+ * consistent across all of the channels; get a new one from
+ * ChannelsModule.getSnapshot() to see later changes. Names are matched
+ * using the server's casemapping, and the Symbol versions of the methods
+ * save looking the names up.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class MembershipSnapshot
+{
+    private final Symbols symbols;
+    // channel Symbol -> PersistentMap of nick Symbol -> Byte flags
+    final PersistentMap channels;
+    // nick Symbol -> Symbol[] of the channels it's on
+    final PersistentMap nicks;
+    private final long version;
+
+    MembershipSnapshot(Symbols symbols, PersistentMap channels, PersistentMap nicks, long version) {
+        this.symbols = symbols;
+        this.channels = channels;
+        this.nicks = nicks;
+        this.version = version;
+    }
+
+    /**
+     * @return a number that goes up every time membership changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the nickname is on any of our channels
+     */
+    public boolean canSee(String nick) {
+        return canSee(symbols.lookup(nick));
+    }
+
+    public boolean canSee(Symbols.Symbol nick) {
+        return (nick != null) && (nicks.get(nick) != null);
+    }
+
+    /**
+     * @return true if we're on the channel
+     */
+    public boolean isOn(String channel) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        return (name != null) && (channels.get(name) != null);
+    }
+
+    public boolean isOpped(String nick, String channel) {
+        return (getFlags(nick, channel) & Membership.OP) != 0;
+    }
+
+    public boolean isOpped(Symbols.Symbol nick, Symbols.Symbol channel) {
+        return (getFlags(nick, channel) & Membership.OP) != 0;
+    }
+
+    public boolean isVoiced(String nick, String channel) {
+        return (getFlags(nick, channel) & Membership.VOICE) != 0;
+    }
+
+    public boolean isVoiced(Symbols.Symbol nick, Symbols.Symbol channel) {
+        return (getFlags(nick, channel) & Membership.VOICE) != 0;
+    }
+
+    /**
+     * @return the channels we're on, folded to lower case
+     */
+    public List getChannels() {
+        return keys(channels.keys());
+    }
+
+    /**
+     * @return the channels the nick is on, folded to lower case
+     */
+    public List getChannels(String nick) {
+        final Symbols.Symbol name = symbols.lookup(nick);
+        final Symbols.Symbol[] on = (name == null) ? null : (Symbols.Symbol[])nicks.get(name);
+        return (on == null) ? Collections.EMPTY_LIST : keys(Arrays.asList(on));
+    }
+
+    /**
+     * @return who is on the channel, empty if we're not on it
+     */
+    public List getOccupants(String channel) {
+        final PersistentMap members = members(channel);
+        if (members == null) return Collections.EMPTY_LIST;
+        final List names = members.keys();
+        for (int i = 0; i < names.size(); i++) {
+            names.set(i, ((Symbols.Symbol)names.get(i)).getName());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return how many people are on the channel, 0 if we're not on it
+     */
+    public int getOccupantCount(String channel) {
+        final PersistentMap members = members(channel);
+        return (members == null) ? 0 : members.size();
+    }
+
+    private PersistentMap members(String channel) {
+        final Symbols.Symbol name = symbols.lookup(channel);
+        return (name == null) ? null : (PersistentMap)channels.get(name);
+    }
+
+    private static List keys(List names) {
+        final List keys = new ArrayList(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            keys.add(((Symbols.Symbol)names.get(i)).getKey());
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    byte getFlags(String nick, String channel) {
+        if ((nick == null) || (channel == null)) return 0;
+        return getFlags(symbols.lookup(nick), symbols.lookup(channel));
+    }
+
+    byte getFlags(Symbols.Symbol nick, Symbols.Symbol channel) {
+        if ((nick == null) || (channel == null)) return 0;
+        final PersistentMap members = (PersistentMap)channels.get(channel);
+        if (members == null) return 0;
+        final Byte flags = (Byte)members.get(nick);
+        return (flags == null) ? 0 : flags.byteValue();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.modules.channels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable hash map where an update returns a new map sharing everything
+ * but the changed path with the old one. It's a hash array mapped trie:
+ * each node picks one of 32 children with five bits of the key's hash and
+ * only stores the children it actually has, so a change copies at most
+ * seven small arrays whatever the size of the map. Keys that share their
+ * whole hash end up together in a node that is searched linearly.
+ * Removing a key that leaves a node holding one pair moves the pair back
+ * up a level.
+ * Null keys and values aren't allowed.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class PersistentMap
+{
+    public static final PersistentMap EMPTY = new PersistentMap(new Node(0, new Object[0]), 0);
+    private final Node root;
+    private final int size;
+
+    /**
+     * A trie node. The array holds a key and value pair for each child,
+     * or a null key and a Node for a child that is itself split further.
+     * Below the last level of hash bits the bitmap isn't used and the pairs
+     * are just listed.
+     */
+    private static final class Node
+    {
+        private final int bitmap;
+        private final Object[] array;
+
+        private Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    private static int hash(Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Object get(Object key) {
+        final int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += 5) {
+            if (shift >= 32) {
+                for (int i = 0; i < node.array.length; i += 2) {
+                    if (key.equals(node.array[i])) return node.array[i + 1];
+                }
+                return null;
+            }
+            final int bit = 1 << ((hash >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) return null;
+            final int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            final Object k = node.array[index];
+            if (k != null) return key.equals(k) ? node.array[index + 1] : null;
+            node = (Node)node.array[index + 1];
+        }
+    }
+
+    /**
+     * @return a map with the key set to value
+     */
+    public PersistentMap with(Object key, Object value) {
+        final boolean[] added = new boolean[1];
+        final Node newRoot = with(root, 0, hash(key), key, value, added);
+        return (newRoot == root) ? this : new PersistentMap(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without the key
+     */
+    public PersistentMap without(Object key) {
+        final Node newRoot = without(root, 0, hash(key), key);
+        if (newRoot == root) return this;
+        return (newRoot == null) ? EMPTY : new PersistentMap(newRoot, size - 1);
+    }
+
+    /**
+     * @return all the keys, in no particular order
+     */
+    public List keys() {
+        final List keys = new ArrayList(size);
+        addKeys(root, keys);
+        return keys;
+    }
+
+    private static void addKeys(Node node, List keys) {
+        for (int i = 0; i < node.array.length; i += 2) {
+            if (node.array[i] == null) {
+                addKeys((Node)node.array[i + 1], keys);
+            } else {
+                keys.add(node.array[i]);
+            }
+        }
+    }
+
+    private static Node with(Node node, int shift, int hash, Object key, Object value, boolean[] added) {
+        final Object[] array = node.array;
+        if (shift >= 32) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return (array[i + 1] == value) ? node : new Node(0, replace(array, i + 1, value));
+                }
+            }
+            added[0] = true;
+            return new Node(0, insert(array, array.length, key, value));
+        }
+        final int bit = 1 << ((hash >>> shift) & 31);
+        final int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            return new Node(node.bitmap | bit, insert(array, index, key, value));
+        }
+        final Object k = array[index];
+        final Object v = array[index + 1];
+        if (k == null) {
+            final Node child = with((Node)v, shift + 5, hash, key, value, added);
+            return (child == v) ? node : new Node(node.bitmap, replace(array, index + 1, child));
+        }
+        if (key.equals(k)) {
+            return (v == value) ? node : new Node(node.bitmap, replace(array, index + 1, value));
+        }
+        // two keys want the same slot, push them both down a level
+        added[0] = true;
+        Node child = with(EMPTY.root, shift + 5, hash(k), k, v, new boolean[1]);
+        child = with(child, shift + 5, hash, key, value, new boolean[1]);
+        final Object[] copy = replace(array, index + 1, child);
+        copy[index] = null;
+        return new Node(node.bitmap, copy);
+    }
+
+    private static Node without(Node node, int shift, int hash, Object key) {
+        final Object[] array = node.array;
+        if (shift >= 32) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return (array.length == 2) ? null : new Node(0, remove(array, i));
+                }
+            }
+            return node;
+        }
+        final int bit = 1 << ((hash >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) return node;
+        final int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        final Object k = array[index];
+        if (k == null) {
+            final Node child = without((Node)array[index + 1], shift + 5, hash, key);
+            if (child == array[index + 1]) return node;
+            if ((child != null) && (child.array.length == 2) && (child.array[0] != null)) {
+                // only one pair left down there, so it moves back up into this slot
+                final Object[] copy = replace(array, index + 1, child.array[1]);
+                copy[index] = child.array[0];
+                return new Node(node.bitmap, copy);
+            }
+            if (child != null) return new Node(node.bitmap, replace(array, index + 1, child));
+        } else if (!key.equals(k)) {
+            return node;
+        }
+        return (node.bitmap == bit) ? null : new Node(node.bitmap ^ bit, remove(array, index));
+    }
+
+    private static Object[] replace(Object[] array, int index, Object value) {
+        final Object[] copy = array.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    private static Object[] insert(Object[] array, int index, Object key, Object value) {
+        final Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return copy;
+    }
+
+    private static Object[] remove(Object[] array, int index) {
+        final Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 2, copy, index, copy.length - index);
+        return copy;
+    }
+}
@@ -20,6 +20,7 @@
  */
 package com.echbot.modules.db;
 
+import com.echbot.PickupStartEvent;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
 import org.apache.log4j.Logger;
@@ -67,7 +68,8 @@ public class DbModule extends UserModule
     public DbModule(UserModuleInterface parent) {
         super(parent);
         EVENT_PICKUPSTART = getUserEventId("pickup.start");
-        parent.registerForEvent(EVENT_PICKUPSTART, this);
+        // inserts can block on the database, so don't hold up the pickup
+        parent.registerForEvent(EVENT_PICKUPSTART, this, true);
     }
 
     public void initialise(Object state) {
@@ -132,7 +134,8 @@ public class DbModule extends UserModule
     }
 
     public synchronized void userEvent(int id, Object attachment) {
-        log.debug("Comparing " + parent + " and " + ((Map)attachment).get("clone"));
+        final PickupStartEvent started = (PickupStartEvent)attachment;
+        log.debug("Comparing " + parent + " and " + started.getClone());
         if (db == null) {
             synchronized (queuedEvents) {
                 queuedEvents.add(new QueueEvent(id, attachment));
@@ -140,7 +143,7 @@ public class DbModule extends UserModule
             return;
         }
         try {
-            if ((id == EVENT_PICKUPSTART) && (parent == ((Map)attachment).get("clone"))) {
+            if ((id == EVENT_PICKUPSTART) && (parent == started.getClone())) {
 /*
                 pickup_nicknames(id, nickname);
                 pickup_games(id, network, channel, gameid, gametime, server);
@@ -186,14 +189,14 @@ public class DbModule extends UserModule
                 PreparedStatement ps = db.prepareStatement("insert into pickup_games values(?,?,?,?,?,?)");
                 ps.setLong(1, gameid);
                 ps.setString(2, parent.getNetwork());
-                ps.setString(3, (String)((Map)attachment).get("channel"));
-                ps.setString(4, (String)((Map)attachment).get("id"));
+                ps.setString(3, started.getChannel());
+                ps.setString(4, started.getId());
                 ps.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
-                ps.setString(6, (String)((Map)attachment).get("ip"));
+                ps.setString(6, started.getIp());
                 ps.execute();
 
                 ps = db.prepareStatement("insert into pickup_players values(?,pickup_getnick(?))");
-                List players = (List)((Map)attachment).get("players");
+                List players = started.getPlayers();
                 for (Iterator i = players.iterator(); i.hasNext();) {
                     String nick = (String)i.next();
                     ps.setLong(1, gameid);
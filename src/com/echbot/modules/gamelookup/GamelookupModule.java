@@ -37,10 +37,18 @@ import java.util.StringTokenizer;
 public class GamelookupModule extends UserModule
 {
     private static final Logger log = Logger.getLogger(GamelookupModule.class);
+    private static final int CMD_Q3 = 0;
+    private static final int CMD_HL = 1;
+    private static final int CMD_QW = 2;
 
     public GamelookupModule(UserModuleInterface parent) {
         super(parent);
-        register(ChatMessageIn.class);
+        registerCommand("!q3", CMD_Q3);
+        registerCommand("!wolf", CMD_Q3);
+        registerCommand("!et", CMD_Q3);
+        registerCommand("!cs", CMD_HL);
+        registerCommand("!hl", CMD_HL);
+        registerCommand("!qw", CMD_QW);
         final String start = "Q3$ech_gametype$($gamename$) on \0033$mapname$ \0035Players:\00312$ech_players$/$sv_maxclients$\0034 ";
         setDefault("q3", start + "($team1$)\003 Timelimit:$timelimit$");
         setDefault("q3,team1", "$score$:$name$");
@@ -74,13 +82,10 @@ public class GamelookupModule extends UserModule
 //        setDefault("q4,players", "$name$:$ping$ms");
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
+    public void command(int id, ChatMessageIn message) {
         try {
             String channel = message.getTo().startsWith("#") ? message.getTo() : null;
-            if (message.getCommand().equals("!q3") ||
-                    message.getCommand().equals("!wolf") ||
-                    message.getCommand().equals("!et")) {
+            if (id == CMD_Q3) {
                 StringTokenizer args = new StringTokenizer(message.getArguments());
                 if (args.hasMoreTokens()) {
                     Q3Query query = new Q3Query(checkAlias(args.nextToken(), channel));
@@ -94,14 +99,13 @@ public class GamelookupModule extends UserModule
 //                        Q4Query q4query = new Q4Query(checkAlias(stringtokenizer1.nextToken(), s));
 //                        reply(message, FormatUtils.format(getConfig(), q4query.getVarToUse(), q4query.getVars(), parent.getNetwork(), channel));
 //                    }
-            } else if (message.getCommand().equals("!cs") ||
-                    message.getCommand().equals("!hl")) {
+            } else if (id == CMD_HL) {
                 StringTokenizer args = new StringTokenizer(message.getArguments());
                 if (args.hasMoreTokens()) {
                     HalfLifeQuery query = new HalfLifeQuery(checkAlias(args.nextToken(), channel));
                     reply(message, FormatUtils.format(getConfig(), query.getVarToUse(), query.getVars(), parent.getNetwork(), channel));
                 }
-            } else if (message.getCommand().equals("!qw")) {
+            } else if (id == CMD_QW) {
                 StringTokenizer args = new StringTokenizer(message.getArguments());
                 if (args.hasMoreTokens()) {
                     QWQuery query = new QWQuery(checkAlias(args.nextToken(), channel));
@@ -41,16 +41,16 @@ import java.util.Map;
 public class InfoModule extends UserModule
 {
     private static final Logger log = Logger.getLogger(InfoModule.class);
+    private static final int CMD_FIND = 0;
 
     public InfoModule(UserModuleInterface parent) {
         super(parent);
         setDefault("info", "off");
         setDefault("info,format", "\00314$id$: \0032[\002$keyword$\002]\00310 $fulltext$");
-        register(ChatMessageIn.class);
+        registerCommand("!find", CMD_FIND);
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
+    public void command(int id, ChatMessageIn message) {
         String channel = message.getTo().startsWith("#") ? message.getTo().toLowerCase() : null;
         if (channel == null) return;
         if (!"on".equals(ConfigUtils.getVar(getConfig(), "info",
@@ -66,7 +66,7 @@ public class InfoModule extends UserModule
             fulltext text
         );
         */
-        if ("!find".equals(message.getCommand())) {
+        if (id == CMD_FIND) {
             String search = message.getArguments().trim().replace('*', '%');
             if (search.length() == 0) {
                 send(new ChatMessageOut(message.getFrom(),
@@ -20,17 +20,17 @@ import java.text.NumberFormat;
  */
 public class NickometerModule extends UserModule
 {
+    private static final int CMD_NICKOMETER = 0;
+
     public NickometerModule(UserModuleInterface parent) {
         super(parent);
         setDefault("nickometer", "on");
         setDefault("nickometer,format", "\0035\002$nick$\002\0036 is $lameness$% lame");
         setDefault("nickometer,toolong", "\0035\002$nick$\002\0036 is pretty lame.. too long to be a nickname too ;P");
-        register(ChatMessageIn.class);
+        registerCommand("!nickometer", CMD_NICKOMETER);
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
-
+    public void command(int id, ChatMessageIn message) {
         boolean isToChannel = message.getTo().startsWith("#");
         // if nickometer is not turned on, stop processing
         if (isToChannel && !"on".equals(ConfigUtils.getVar(
@@ -39,7 +39,7 @@ public class NickometerModule extends UserModule
         }
         String replyTo = isToChannel ? message.getTo() : message.getFrom();
         boolean replyByPrivmsg = isToChannel || message.isPrivmsg();
-        if ("!nickometer".equals(message.getCommand())) {
+        if (id == CMD_NICKOMETER) {
             StringTokenizer tokens = new StringTokenizer(message.getArguments());
             if (!tokens.hasMoreTokens()) {
                 send(new ChatMessageOut(message.getFrom(), "Usage: !nickometer <nick>", false));
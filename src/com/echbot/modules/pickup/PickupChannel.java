@@ -44,11 +44,15 @@ public class PickupChannel
     private static final int SECS_IN_A_MIN = 60;
     private static final int PROMOTE_DELAY = 120000;
     private static final int DEFAULT_PLAYERCOUNT = 8;
+    private static final long DEFAULT_TOPIC_DELAY = 2000;
     private final List games = new ArrayList();
     private final PickupModule module;
     private final String channel;
     private int addPolicy = DEFAULT_ADD_ALL;
-    private String oldTopic;
+    private final Object topicLock = new Object();
+    private boolean topicScheduled = false;
+    private long lastTopicRender = 0;
+    private final TopicState topic = new TopicState();
     private String motd = "";
     private long lastPromote = 0;
 
@@ -128,28 +132,33 @@ public class PickupChannel
         this.addPolicy = addPolicy;
     }
 
-    public void nickChange(String oldNick, String newNick) {
-        synchronized (games) {
-            for (Iterator i = games.iterator(); i.hasNext();) {
-                final PickupGame game = (PickupGame)i.next();
-                game.nickChange(oldNick, newNick);
-            }
-        }
-    }
-
     public void removeFromAll(String nick) {
         removeFromAll(nick, true);
     }
 
     void removeFromAll(String nick, boolean updateTopic) {
         boolean changeTopic = false;
+        for (Iterator i = module.getPlayerIndex().gamesOf(module.parent.getSymbols().lookup(nick)).iterator(); i.hasNext();) {
+            final PickupGame game = (PickupGame)i.next();
+            if ((game.getChannel() == this) && game.remove(nick)) changeTopic = true;
+        }
+        if (changeTopic && updateTopic) updateTopic();
+    }
+
+    /**
+     * Called when this pickup is stopped or replaced, so its players no
+     * longer show up in the module's index and a pending topic render
+     * doesn't go out.
+     */
+    void discard() {
+        synchronized (topicLock) {
+            topic.discard();
+        }
         synchronized (games) {
             for (Iterator i = games.iterator(); i.hasNext();) {
-                final PickupGame game = (PickupGame)i.next();
-                if (game.remove(nick)) changeTopic = true;
+                ((PickupGame)i.next()).reset();
             }
         }
-        if (changeTopic && updateTopic) updateTopic();
     }
 
     public void add(String nick, StringTokenizer tokens) throws PickupUsageException {
@@ -233,8 +242,42 @@ public class PickupChannel
         }
     }
 
+    /**
+     * Mark the topic as needing to be redone. Changes are coalesced: the
+     * topic is rendered at most once every pickup,topicdelay milliseconds,
+     * so a burst of adds only costs one TOPIC.
+     */
     void updateTopic() {
-        log.debug("Updating topic, old one is: " + oldTopic);
+        final long delay;
+        synchronized (topicLock) {
+            // if a render is already due it'll pick this change up
+            if (topicScheduled) return;
+            topicScheduled = true;
+            delay = Math.max(0, lastTopicRender + getTopicDelay() - System.currentTimeMillis());
+        }
+        module.getTimer().schedule(new Runnable()
+        {
+            public void run() {
+                renderTopic();
+            }
+        }, delay);
+    }
+
+    private long getTopicDelay() {
+        try {
+            return Long.parseLong(ConfigUtils.getVar(module.getConfig(), "pickup,topicdelay",
+                    module.parent.getNetwork(), channel));
+        } catch (NumberFormatException e) {
+            return DEFAULT_TOPIC_DELAY;
+        }
+    }
+
+    private void renderTopic() {
+        synchronized (topicLock) {
+            // from here on, changes need another render
+            topicScheduled = false;
+            lastTopicRender = System.currentTimeMillis();
+        }
         final Map vars = new HashMap();
         vars.put("motd", motd);
         final List gameVars = new ArrayList();
@@ -251,12 +294,30 @@ public class PickupChannel
         vars.put("games", gameVars);
 
         final String newTopic = FormatUtils.format(module.getConfig(), "pickup,format", vars, module.parent.getNetwork(), channel);
-        if (!newTopic.equals(oldTopic)) {
+        synchronized (topicLock) {
+            log.debug("Updating topic, " + topic);
+            if (!topic.shouldSend(newTopic)) return;
+            // replaces any of our topics still waiting in the outbound queue
             module.send(new TopicOut(channel, newTopic));
-            oldTopic = newTopic;
         }
     }
 
+    /**
+     * Called when the server tells us the channel's topic, whether on join
+     * or because someone (maybe us) changed it.
+     */
+    void topicChanged(String newTopic) {
+        topic.changed(newTopic);
+    }
+
+    /**
+     * Called when we weren't allowed to set the topic, so that the next
+     * update tries again.
+     */
+    void topicRefused() {
+        topic.refused();
+    }
+
     public void setIps(String arguments, boolean canChange) throws PickupUsageException {
         StringTokenizer tokens = new StringTokenizer(arguments);
         // If no arguments were given, use the only game if there is one
@@ -445,12 +506,11 @@ public class PickupChannel
     }
 
     public void gameStarted(String lastgame, String ip) {
-        ConfigUtils.setChannelVar(module.getConfig(), "pickup,lastgame",
-                lastgame, module.parent.getNetwork(), channel);
-        ConfigUtils.setChannelVar(module.getConfig(), "alias,lastgame",
-                ip, module.parent.getNetwork(), channel);
-        ConfigUtils.setChannelVar(module.getConfig(), "pickup,lastgametime",
-                Long.toString((long)Math.floor(System.currentTimeMillis() / 1000)), module.parent.getNetwork(), channel);
+        final Map vars = new HashMap();
+        vars.put("pickup,lastgame", lastgame);
+        vars.put("alias,lastgame", ip);
+        vars.put("pickup,lastgametime", Long.toString((long)Math.floor(System.currentTimeMillis() / 1000)));
+        ConfigUtils.setChannelVars(module.getConfig(), vars, module.parent.getNetwork(), channel);
     }
 
     private String checkAlias(String alias) {
@@ -20,6 +20,8 @@
  */
 package com.echbot.modules.pickup;
 
+import com.echbot.PickupStartEvent;
+import com.echbot.Symbols;
 import com.echbot.config.ConfigUtils;
 import com.echbot.config.FormatUtils;
 import com.echbot.messages.out.ChatMessageOut;
@@ -44,6 +46,7 @@ public class PickupGame
     private final PickupModule module;
     private final PickupChannel channel;
     private final String id;
+    // Symbols of the players signed up, in order
     private final List players = new ArrayList();
     private final List lastPlayers = new ArrayList();
     private final int maxplayers;
@@ -68,22 +71,33 @@ public class PickupGame
         if (state != null) {
             final List playerList = (List)state;
             for (Iterator i = playerList.iterator(); i.hasNext();) {
-                final String nick = (String)i.next();
+                final Symbols.Symbol nick = module.parent.getSymbols().intern((String)i.next());
                 if (!players.contains(nick)) {
                     players.add(nick);
+                    module.getPlayerIndex().added(nick, this);
                 }
             }
         }
     }
 
     public Object getState() {
-        return players;
+        synchronized (players) {
+            final List names = new ArrayList(players.size());
+            for (Iterator i = players.iterator(); i.hasNext();) {
+                names.add(((Symbols.Symbol)i.next()).getName());
+            }
+            return names;
+        }
     }
 
     public String getId() {
         return id;
     }
 
+    PickupChannel getChannel() {
+        return channel;
+    }
+
     public int getPlayerCount() {
         synchronized (players) {
             return players.size();
@@ -117,29 +131,39 @@ public class PickupGame
         return maxplayers;
     }
 
-    public void nickChange(String oldNick, String newNick) {
+    public void nickChange(String oldName, String newName) {
+        final Symbols.Symbol oldNick = module.parent.getSymbols().lookup(oldName);
+        final Symbols.Symbol newNick = module.parent.getSymbols().intern(newName);
+        if ((oldNick == null) || (oldNick == newNick)) return;
         synchronized (players) {
             final int index = players.indexOf(oldNick);
             if (index != -1) {
                 players.set(index, newNick);
+                module.getPlayerIndex().removed(oldNick, this);
+                module.getPlayerIndex().added(newNick, this);
             }
         }
     }
 
-    public boolean add(String nick) throws PickupUsageException {
+    public boolean add(String name) throws PickupUsageException {
+        final Symbols.Symbol nick = module.parent.getSymbols().intern(name);
         synchronized (players) {
             if (players.contains(nick)) {
                 return false;
             } else {
                 players.add(nick);
+                module.getPlayerIndex().added(nick, this);
                 return true;
             }
         }
     }
 
-    public boolean remove(String nick) {
+    public boolean remove(String name) {
+        final Symbols.Symbol nick = module.parent.getSymbols().lookup(name);
+        if (nick == null) return false;
         synchronized (players) {
             final boolean removed = players.remove(nick);
+            if (removed) module.getPlayerIndex().removed(nick, this);
             if (removed && (players.size() == maxplayers - 1)) {
                 announced = ANNOUNCED_NONE;
             }
@@ -247,17 +271,19 @@ public class PickupGame
     }
 
     private void startGame() {
-        Map broadcastVars = new HashMap();
+        final PickupStartEvent started;
         synchronized (players) {
             announced = ANNOUNCED_NONE;
             final StringBuffer names = new StringBuffer();
             final List removedPlayers = new ArrayList();
             for (Iterator i = players.iterator(); i.hasNext();) {
                 if (removedPlayers.size() >= maxplayers) break;
-                final String nick = (String)i.next();
+                final Symbols.Symbol player = (Symbols.Symbol)i.next();
+                final String nick = player.getName();
                 names.append(nick);
                 if (i.hasNext()) names.append(',');
                 i.remove();
+                module.getPlayerIndex().removed(player, this);
                 removedPlayers.add(nick);
             }
             synchronized (lastPlayers) {
@@ -321,13 +347,9 @@ public class PickupGame
                     channel.updateTopic();
                 }
             }, 100);
-            broadcastVars.put("players", removedPlayers);
-            broadcastVars.put("id", id);
-            broadcastVars.put("ip", ip);
-            broadcastVars.put("channel", channel.getChannel());
-            broadcastVars.put("clone", module.parent);
+            started = new PickupStartEvent(module.parent, channel.getChannel(), id, ip, removedPlayers);
         }
-        module.parent.triggerGlobalEvent(module.EVENT_PICKUPSTART, broadcastVars);
+        module.parent.triggerGlobalEvent(module.EVENT_PICKUPSTART, started);
     }
 
     public Map getVars() {
@@ -342,7 +364,7 @@ public class PickupGame
         final List playerVars = new ArrayList();
         final List noEmptyPlayers = new ArrayList();
         for (int i = 0; i < maxplayers; i++) {
-            final String nick = (i >= players.size()) ? "?" : (String)players.get(i);
+            final String nick = (i >= players.size()) ? "?" : ((Symbols.Symbol)players.get(i)).getName();
             final Map playerMap = new HashMap();
             playerMap.put("nick", nick);
             playerMap.put("num", Integer.toString(i + 1));
@@ -356,6 +378,9 @@ public class PickupGame
 
     public void reset() {
         synchronized (players) {
+            for (Iterator i = players.iterator(); i.hasNext();) {
+                module.getPlayerIndex().removed((Symbols.Symbol)i.next(), this);
+            }
             players.clear();
         }
     }
@@ -20,8 +20,11 @@
  */
 package com.echbot.modules.pickup;
 
+import com.echbot.Interest;
+import com.echbot.PickupStartEvent;
 import com.echbot.UserModule;
 import com.echbot.UserModuleInterface;
+import com.echbot.Users;
 import com.echbot.config.ConfigUtils;
 import com.echbot.config.FormatUtils;
 import com.echbot.messages.in.*;
@@ -40,13 +43,36 @@ import java.util.*;
 public class PickupModule extends UserModule
 {
     private static final Logger log = Logger.getLogger(PickupModule.class);
+    private static final int RPL_NOTOPIC = 331;
+    private static final int RPL_TOPIC = 332;
     private static final int ERR_CHANOPRIVSNEEDED = 482;
+    private static final int CMD_PICKUPS = 0;
+    private static final int CMD_PICKUPROTATE = 1;
+    private static final int CMD_ADD = 2;
+    private static final int CMD_REMOVE = 3;
+    private static final int CMD_QLADD = 4;
+    private static final int CMD_IP = 5;
+    private static final int CMD_DELETEIP = 6;
+    private static final int CMD_MAP = 7;
+    private static final int CMD_DELETEMAP = 8;
+    private static final int CMD_WHO = 9;
+    private static final int CMD_LASTGAME = 10;
+    private static final int CMD_PROMOTE = 11;
+    private static final int CMD_RESET = 12;
+    private static final int CMD_UPDATE = 13;
+    private static final int CMD_MOTD = 14;
+    private static final int CMD_DELETEMOTD = 15;
+    private static final int CMD_TOP10 = 16;
     protected final int EVENT_PICKUPSTART;
+    private final int EVENT_RENAMED, EVENT_LOST;
     private final Map pickups = Collections.synchronizedMap(new HashMap());
+    private final PlayerIndex playerIndex = new PlayerIndex();
 
     public PickupModule(UserModuleInterface parent) {
         super(parent);
         EVENT_PICKUPSTART = getUserEventId("pickup.start");
+        EVENT_RENAMED = getUserEventId(Users.RENAMED);
+        EVENT_LOST = getUserEventId(Users.LOST);
         setDefault("pickup,format", "\0034Next Game: $firstgame$${ \0032|| }motd$");
         setDefault("pickup,format,firstgame", "\00306$players$${ \0034@ }ip$${\00310 on }map$");
         setDefault("pickup,format,firstgame,players", "$nick$");
@@ -70,6 +96,7 @@ public class PickupModule extends UserModule
         setDefault("pickup,rotateservers", "on");
         setDefault("pickup,cleartopic", "");
         setDefault("pickup,playercount", "8");
+        setDefault("pickup,topicdelay", "2000");
         setDefault("limit,ip", "all");
         setDefault("limit,motd", "admins,opped");
         setDefault("limit,map", "all");
@@ -79,13 +106,30 @@ public class PickupModule extends UserModule
         setDefault("pickup,servercheck", "off");
         setDefault("pickup,randomcaptains", "off");
         register(JoinIn.class);
-        register(KickIn.class);
-        register(NickIn.class);
-        register(PartIn.class);
-        register(QuitIn.class);
-        register(ChatMessageIn.class);
-        register(SystemIn.class);
+        register(KickIn.class, Interest.channels(pickups.keySet()));
+        register(PartIn.class, Interest.channels(pickups.keySet()));
+        register(SystemIn.class, Interest.numerics(new int[]{RPL_NOTOPIC, RPL_TOPIC, ERR_CHANOPRIVSNEEDED}));
+        register(TopicIn.class, Interest.channels(pickups.keySet()));
+        registerCommand("!pickups", CMD_PICKUPS);
+        registerCommand("!pickuprotate", CMD_PICKUPROTATE);
+        registerCommand("!add*", CMD_ADD);
+        registerCommand("!remove*", CMD_REMOVE);
+        registerCommand("!qladd*", CMD_QLADD);
+        registerCommand("!ip*", CMD_IP);
+        registerCommand("!deleteip*", CMD_DELETEIP);
+        registerCommand("!map*", CMD_MAP);
+        registerCommand("!deletemap*", CMD_DELETEMAP);
+        registerCommand("!who", CMD_WHO);
+        registerCommand("!lastgame", CMD_LASTGAME);
+        registerCommand("!promote", CMD_PROMOTE);
+        registerCommand("!reset", CMD_RESET);
+        registerCommand("!update", CMD_UPDATE);
+        registerCommand("!motd", CMD_MOTD);
+        registerCommand("!deletemotd", CMD_DELETEMOTD);
+        registerCommand("!top10", CMD_TOP10);
         parent.registerForEvent(EVENT_PICKUPSTART, this);
+        parent.registerForEvent(EVENT_RENAMED, this);
+        parent.registerForEvent(EVENT_LOST, this);
     }
 
     public void initialise(Object state) {
@@ -114,9 +158,10 @@ public class PickupModule extends UserModule
     private PickupChannel startPickup(String channel) {
         final String games = ConfigUtils.getChannelVar(getConfig(), "pickup,active", parent.getNetwork(), channel, null);
         if (games != null) {
-            if (pickups.containsKey(channel)) {
+            final PickupChannel existing = (PickupChannel)pickups.remove(channel);
+            if (existing != null) {
                 log.debug("Removing existing pickup");
-                pickups.remove(channel);
+                existing.discard();
             }
             log.debug("Creating new pickup for " + channel + " with " + games);
             PickupChannel newChannel = new PickupChannel(this, channel, games);
@@ -132,13 +177,8 @@ public class PickupModule extends UserModule
         }
     }
 
-    public void received(NickIn message) {
-        synchronized (pickups) {
-            for (Iterator i = pickups.values().iterator(); i.hasNext();) {
-                PickupChannel channel = (PickupChannel)i.next();
-                channel.nickChange(message.getOldNick(), message.getNewNick());
-            }
-        }
+    PlayerIndex getPlayerIndex() {
+        return playerIndex;
     }
 
     public void received(KickIn message) {
@@ -149,15 +189,6 @@ public class PickupModule extends UserModule
         leftChannel(message.getLeaver(), message.getChannel());
     }
 
-    public void received(QuitIn message) {
-        synchronized (pickups) {
-            for (Iterator i = pickups.values().iterator(); i.hasNext();) {
-                PickupChannel channel = (PickupChannel)i.next();
-                channel.removeFromAll(message.getQuitter());
-            }
-        }
-    }
-
     private final void leftChannel(String leaver, String channel) {
         PickupChannel pickupChannel = (PickupChannel)pickups.get(channel.toLowerCase());
         if (pickupChannel != null) {
@@ -165,8 +196,7 @@ public class PickupModule extends UserModule
         }
     }
 
-    public void received(ChatMessageIn message) {
-        if (!message.isCommand()) return;
+    public void command(int id, ChatMessageIn message) {
         final AuthModule auth;
         try {
             auth = (AuthModule)getModule("auth");
@@ -176,13 +206,15 @@ public class PickupModule extends UserModule
         }
         String channel = message.getTo().startsWith("#") ? message.getTo().toLowerCase() : null;
         boolean replyByPrivmsg = (channel == null) && message.isPrivmsg();
-        if (message.getCommand().equals("!pickups") && (channel != null) &&
-                auth.permittedTo(message.getFromWithHost(), "limit,gamecontrol", channel)) {
+        if (id == CMD_PICKUPS) {
+            if ((channel == null) || !auth.permittedTo(message.getFromWithHost(), "limit,gamecontrol", channel)) return;
             if (message.getArguments().trim().length() == 0) {
                 ConfigUtils.setChannelVar(getConfig(), "pickup,active", null, parent.getNetwork(), channel);
+                final PickupChannel stopped;
                 synchronized (pickups) {
-                    pickups.remove(channel);
+                    stopped = (PickupChannel)pickups.remove(channel);
                 }
+                if (stopped != null) stopped.discard();
                 send(new TopicOut(channel, ConfigUtils.getVar(getConfig(), "pickup,cleartopic",
                         parent.getNetwork(), channel)));
             } else {
@@ -191,14 +223,15 @@ public class PickupModule extends UserModule
                 if (newPickup != null) newPickup.updateTopic();
             }
             return;
-        } else if (message.getCommand().equals("!pickuprotate") && (channel != null) &&
-                auth.permittedTo(message.getFromWithHost(), "limit,gamecontrol", channel)) {
+        } else if (id == CMD_PICKUPROTATE) {
+            if ((channel == null) || !auth.permittedTo(message.getFromWithHost(), "limit,gamecontrol", channel)) return;
             // Initialise server rotation - a quicker way of doing it than individual commands
             StringTokenizer tokens = new StringTokenizer(message.getArguments(), ", ");
             if (!tokens.hasMoreTokens()) {
                 send(new ChatMessageOut(message.getFrom(), "Usage: !pickuprotate <alias>[,<alias>,...]", replyByPrivmsg));
             } else {
                 Set gameIds = new HashSet();
+                Map vars = new HashMap();
                 StringBuffer pickupString = new StringBuffer();
                 while (tokens.hasMoreTokens()) {
                     String alias = tokens.nextToken().toLowerCase();
@@ -214,14 +247,17 @@ public class PickupModule extends UserModule
                         gameIds.add(alias);
                         pickupString.append(alias);
                         if (tokens.hasMoreTokens()) pickupString.append(',');
-                        ConfigUtils.setChannelVar(getConfig(), "pickup,ip," + alias, thisServer, parent.getNetwork(), channel);
+                        vars.put("pickup,ip," + alias, thisServer);
                     }
                 }
-                ConfigUtils.setChannelVar(getConfig(), "pickup,addpolicy", "2", parent.getNetwork(), channel);
-                ConfigUtils.setChannelVar(getConfig(), "pickup,active", pickupString.toString(), parent.getNetwork(), channel);
+                // nothing is saved unless every alias was good
+                vars.put("pickup,addpolicy", "2");
+                vars.put("pickup,active", pickupString.toString());
+                ConfigUtils.setChannelVars(getConfig(), vars, parent.getNetwork(), channel);
                 PickupChannel newPickup = startPickup(channel);
                 if (newPickup != null) newPickup.updateTopic();
             }
+            return;
         }
 
         PickupChannel pickupChannel = (PickupChannel)pickups.get(message.getTo().toLowerCase());
@@ -229,118 +265,142 @@ public class PickupModule extends UserModule
             return;
         }
 
-        if (message.getCommand().startsWith("!add")) {
-            try {
-                pickupChannel.add(message.getFrom(), new StringTokenizer(message.getArguments(), ", "));
-                //send(new ChatMessageOut(message.getFrom(), "im here ", false));
-            } catch (PickupUsageException e) {
-                log.debug("Error adding", e);
-                send(new ChatMessageOut(message.getFrom(), "Couldn't add (" + e.getMessage() + ")", false));
-            }
-        } else if (message.getCommand().startsWith("!remove")) {
-            try {
-                pickupChannel.remove(message.getFrom(), new StringTokenizer(message.getArguments(), ", "));
-            } catch (PickupUsageException e) {
-                send(new ChatMessageOut(message.getFrom(), "Couldn't remove (" + e.getMessage() + ")", false));
-            }
-        }
-        //Add to handle Quakelive bot interface.
-        // Check if bot is allowed to issue admin commands
-        // Check if user excists in channel
-        // Issue !add command
-        if (message.getCommand().startsWith("!qladd") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,reset", channel)) {
-            try {
-                String nick = message.getFrom().replaceAll("[<>@]", "");
-                StringTokenizer a = new StringTokenizer(message.getArguments(), ", ");
-                StringTokenizer b = new StringTokenizer("", ", ");
+        switch (id) {
+            case CMD_ADD:
+                try {
+                    pickupChannel.add(message.getFrom(), new StringTokenizer(message.getArguments(), ", "));
+                } catch (PickupUsageException e) {
+                    log.debug("Error adding", e);
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't add (" + e.getMessage() + ")", false));
+                }
+                break;
+            case CMD_REMOVE:
+                try {
+                    pickupChannel.remove(message.getFrom(), new StringTokenizer(message.getArguments(), ", "));
+                } catch (PickupUsageException e) {
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't remove (" + e.getMessage() + ")", false));
+                }
+                break;
+            case CMD_QLADD:
+                //Add to handle Quakelive bot interface.
+                // Check if bot is allowed to issue admin commands
+                // Check if user excists in channel
+                // Issue !add command
+                if (!auth.permittedTo(message.getFromWithHost(), "limit,reset", channel)) break;
+                try {
+                    StringTokenizer a = new StringTokenizer(message.getArguments(), ", ");
+                    StringTokenizer b = new StringTokenizer("", ", ");
 
-                if(!a.hasMoreTokens()){
-                    return;
+                    if(!a.hasMoreTokens()){
+                        return;
+                    }
+                    pickupChannel.add(a.nextToken(), b);
+                } catch (PickupUsageException e) {
+                    log.debug("Error adding", e);
+                    send(new ChatMessageOut(message.getFrom(), "Couldn't add (" + e.getMessage() + ")", false));
                 }
-                //send(new ChatMessageOut(message.getFrom(), message.getArguments(), false));
-                pickupChannel.add(a.nextToken(), b);
-            } catch (PickupUsageException e) {
-                log.debug("Error adding", e);
-                send(new ChatMessageOut(message.getFrom(), "Couldn't add (" + e.getMessage() + ")", false));
-            }
-        }
-        else if (message.getCommand().startsWith("!ip")) {
-            try {
-                pickupChannel.setIps(message.getArguments(),
-                        auth.permittedTo(message.getFromWithHost(), "limit,ip", channel));
-            } catch (PickupUsageException e) {
-                send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
-            }
-        } else if (message.getCommand().startsWith("!deleteip") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,ip", channel)) {
-            try {
-                pickupChannel.deleteIps(message.getArguments());
-            } catch (PickupUsageException e) {
-                send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
-            }
-        } else if (message.getCommand().startsWith("!map")) {
-            try {
-                pickupChannel.setMap(message.getArguments(),
-                        auth.permittedTo(message.getFromWithHost(), "limit,map", channel));
-            } catch (PickupUsageException e) {
-                send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
-            }
-        } else if (message.getCommand().startsWith("!deletemap") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,map", channel)) {
-            try {
-                pickupChannel.deleteMap(message.getArguments());
-            } catch (PickupUsageException e) {
-                send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
-            }
-        } else if (message.getCommand().equals("!who")) {
-            try {
-                pickupChannel.sendWho(message.getArguments(), message.getFrom());
-            } catch (PickupUsageException e) {
-                log.debug("Error sending who", e);
-                send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
-            }
-        } else if (message.getCommand().equals("!lastgame")) {
-            send(new ChatMessageOut(message.getFrom(), pickupChannel.getLastgame(), false));
-        } else if (message.getCommand().equals("!promote")) {
-            if (auth.permittedTo(message.getFromWithHost(), "limit,promote", channel)) {
+                break;
+            case CMD_IP:
                 try {
-                    send(new ChatMessageOut(channel, pickupChannel.getPromote(message.getArguments()), false));
+                    pickupChannel.setIps(message.getArguments(),
+                            auth.permittedTo(message.getFromWithHost(), "limit,ip", channel));
                 } catch (PickupUsageException e) {
                     send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
                 }
-            }
-        } else if (message.getCommand().equals("!reset")) {
-            if (auth.permittedTo(message.getFromWithHost(), "limit,reset", channel)) {
-                pickupChannel.reset();
-            }
-        } else if (message.getCommand().equals("!update")) {
-            pickupChannel.updateTopic();
-            pickupChannel.updateAddPolicy();
-        } else if (message.getCommand().equals("!motd") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,motd", channel)) {
-            pickupChannel.setMotd(message.getArguments());
-        } else if (message.getCommand().equals("!deletemotd") &&
-                auth.permittedTo(message.getFromWithHost(), "limit,motd", channel)) {
-            pickupChannel.setMotd("");
-        } else if (message.getCommand().equals("!top10")) {
-            showTop10(channel, message.getFrom());
+                break;
+            case CMD_DELETEIP:
+                if (!auth.permittedTo(message.getFromWithHost(), "limit,ip", channel)) break;
+                try {
+                    pickupChannel.deleteIps(message.getArguments());
+                } catch (PickupUsageException e) {
+                    send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
+                }
+                break;
+            case CMD_MAP:
+                try {
+                    pickupChannel.setMap(message.getArguments(),
+                            auth.permittedTo(message.getFromWithHost(), "limit,map", channel));
+                } catch (PickupUsageException e) {
+                    send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
+                }
+                break;
+            case CMD_DELETEMAP:
+                if (!auth.permittedTo(message.getFromWithHost(), "limit,map", channel)) break;
+                try {
+                    pickupChannel.deleteMap(message.getArguments());
+                } catch (PickupUsageException e) {
+                    send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
+                }
+                break;
+            case CMD_WHO:
+                try {
+                    pickupChannel.sendWho(message.getArguments(), message.getFrom());
+                } catch (PickupUsageException e) {
+                    log.debug("Error sending who", e);
+                    send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
+                }
+                break;
+            case CMD_LASTGAME:
+                send(new ChatMessageOut(message.getFrom(), pickupChannel.getLastgame(), false));
+                break;
+            case CMD_PROMOTE:
+                if (auth.permittedTo(message.getFromWithHost(), "limit,promote", channel)) {
+                    try {
+                        send(new ChatMessageOut(channel, pickupChannel.getPromote(message.getArguments()), false));
+                    } catch (PickupUsageException e) {
+                        send(new ChatMessageOut(message.getFrom(), e.getMessage(), false));
+                    }
+                }
+                break;
+            case CMD_RESET:
+                if (auth.permittedTo(message.getFromWithHost(), "limit,reset", channel)) {
+                    pickupChannel.reset();
+                }
+                break;
+            case CMD_UPDATE:
+                pickupChannel.updateTopic();
+                pickupChannel.updateAddPolicy();
+                break;
+            case CMD_MOTD:
+                if (auth.permittedTo(message.getFromWithHost(), "limit,motd", channel)) {
+                    pickupChannel.setMotd(message.getArguments());
+                }
+                break;
+            case CMD_DELETEMOTD:
+                if (auth.permittedTo(message.getFromWithHost(), "limit,motd", channel)) {
+                    pickupChannel.setMotd("");
+                }
+                break;
+            case CMD_TOP10:
+                showTop10(channel, message.getFrom());
+                break;
         }
-
     }
 
     public void received(SystemIn message) {
-        if (message.getNumber() == ERR_CHANOPRIVSNEEDED) {
-            StringTokenizer tokens = new StringTokenizer(message.getMessage());
-            if (tokens.hasMoreTokens()) {
-                final String chan = tokens.nextToken();
-                if (pickups.containsKey(chan.toLowerCase())) {
-                    send(new ChatMessageOut(chan, "Please op me so that I can set your pickup topic!", true));
-                }
-            }
+        // <channel> :<text>
+        final String text = message.getMessage().trim();
+        final int space = text.indexOf(' ');
+        final String chan = (space == -1) ? text : text.substring(0, space);
+        final PickupChannel pickupChannel = (PickupChannel)pickups.get(chan.toLowerCase());
+        if (pickupChannel == null) return;
+        if (message.getNumber() == RPL_TOPIC) {
+            String topic = (space == -1) ? "" : text.substring(space + 1);
+            if (topic.startsWith(":")) topic = topic.substring(1);
+            pickupChannel.topicChanged(topic);
+        } else if (message.getNumber() == RPL_NOTOPIC) {
+            pickupChannel.topicChanged("");
+        } else if (message.getNumber() == ERR_CHANOPRIVSNEEDED) {
+            pickupChannel.topicRefused();
+            send(new ChatMessageOut(chan, "Please op me so that I can set your pickup topic!", true));
         }
     }
 
+    public void received(TopicIn message) {
+        final PickupChannel pickupChannel = (PickupChannel)pickups.get(message.getTarget());
+        if (pickupChannel != null) pickupChannel.topicChanged(message.getMessage());
+    }
+
     private void showTop10(String channel, String replyTo) {
         try {
             List top10 = ((DbModule)getModule("db")).query(
@@ -385,21 +445,28 @@ public class PickupModule extends UserModule
 
     public void userEvent(int id, Object attachment) {
         if (id == EVENT_PICKUPSTART) {
-            UserModuleInterface clone = (UserModuleInterface)((Map)attachment).get("clone");
-            if (parent.getNetwork().equals(clone.getNetwork())) {
-                 Object startChannel = ((Map)attachment).get("channel");
-                 List players = (List)((Map)attachment).get("players");
-                 for (Iterator i = pickups.keySet().iterator(); i.hasNext();) {
-                     String channel = (String)i.next();
-                     if (!channel.equals(startChannel)) {
-                         PickupChannel pickup = (PickupChannel)pickups.get(channel);
-                         for (Iterator j = players.iterator(); j.hasNext();) {
-                             String nick = (String)j.next();
-                             pickup.removeFromAll(nick);
-                         }
-                     }
-                 }
-             }
+            final PickupStartEvent started = (PickupStartEvent)attachment;
+            if (parent.getNetwork().equals(started.getClone().getNetwork())) {
+                for (Iterator i = started.getPlayers().iterator(); i.hasNext();) {
+                    final String nick = (String)i.next();
+                    for (Iterator j = playerIndex.channelsOf(parent.getSymbols().lookup(nick)).iterator(); j.hasNext();) {
+                        final PickupChannel pickup = (PickupChannel)j.next();
+                        if (!pickup.getChannel().equals(started.getChannel())) {
+                            pickup.removeFromAll(nick);
+                        }
+                    }
+                }
+            }
+        } else if (id == EVENT_RENAMED) {
+            final Users.User user = (Users.User)attachment;
+            for (Iterator i = playerIndex.gamesOf(parent.getSymbols().lookup(user.getPreviousNick())).iterator(); i.hasNext();) {
+                ((PickupGame)i.next()).nickChange(user.getPreviousNick(), user.getNick());
+            }
+        } else if (id == EVENT_LOST) {
+            final Users.User user = (Users.User)attachment;
+            for (Iterator i = playerIndex.channelsOf(user.getSymbol()).iterator(); i.hasNext();) {
+                ((PickupChannel)i.next()).removeFromAll(user.getNick());
+            }
         }
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.modules.pickup;
+
+import com.echbot.Symbols;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which games each nick is signed up to, across all of a clone's pickup
+ * channels. PickupGame keeps it up to date whenever its player list
+ * changes, so a quit or a game starting elsewhere only has to look at the
+ * games the nick is actually in rather than every game in every channel.
+ * Nicks are keyed by their Symbol, so the lookups follow the server's
+ * casemapping.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class PlayerIndex
+{
+    // nick Symbol -> Set of PickupGame
+    private final Map games = new HashMap();
+
+    synchronized void added(Symbols.Symbol nick, PickupGame game) {
+        Set nickGames = (Set)games.get(nick);
+        if (nickGames == null) {
+            nickGames = new HashSet(4);
+            games.put(nick, nickGames);
+        }
+        nickGames.add(game);
+    }
+
+    synchronized void removed(Symbols.Symbol nick, PickupGame game) {
+        final Set nickGames = (Set)games.get(nick);
+        if ((nickGames != null) && nickGames.remove(game) && nickGames.isEmpty()) {
+            games.remove(nick);
+        }
+    }
+
+    /**
+     * @return the games the nick is in, safe to use without any locks
+     */
+    synchronized List gamesOf(Symbols.Symbol nick) {
+        final Set nickGames = (Set)games.get(nick);
+        return (nickGames == null) ? new ArrayList(0) : new ArrayList(nickGames);
+    }
+
+    /**
+     * @return the pickup channels the nick is signed up in
+     */
+    synchronized Set channelsOf(Symbols.Symbol nick) {
+        final Set channels = new HashSet();
+        final Set nickGames = (Set)games.get(nick);
+        if (nickGames != null) {
+            for (Iterator i = nickGames.iterator(); i.hasNext();) {
+                channels.add(((PickupGame)i.next()).getChannel());
+            }
+        }
+        return channels;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.modules.pickup;
+
+/**
+ * What a pickup channel's topic is and will be, so we only send a topic
+ * when it would change what the channel ends up showing. While one of our
+ * topics is queued or not yet echoed back, that is what the channel will
+ * show next, so the server's current topic doesn't count.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class TopicState
+{
+    // last topic we asked for that the server hasn't confirmed yet
+    private String sent;
+    // topic the server last told us about, null if we don't know
+    private String server;
+    // the pickup has gone, so nothing more should be sent
+    private boolean discarded = false;
+
+    /**
+     * @return true if topic should be sent, in which case it is now the
+     * one in flight
+     */
+    public synchronized boolean shouldSend(String topic) {
+        if (discarded) return false;
+        if ((sent != null) ? topic.equals(sent) : topic.equals(server)) return false;
+        sent = topic;
+        return true;
+    }
+
+    /**
+     * The server told us the channel's topic, whether on join or because
+     * someone (maybe us) changed it.
+     */
+    public synchronized void changed(String topic) {
+        server = topic;
+        sent = null;
+    }
+
+    /**
+     * We weren't allowed to set the topic, so the next update tries again.
+     */
+    public synchronized void refused() {
+        sent = null;
+    }
+
+    /**
+     * The pickup has been stopped or replaced, so any render still due
+     * mustn't send its topic over whatever replaced it.
+     */
+    public synchronized void discard() {
+        discarded = true;
+    }
+
+    public synchronized String toString() {
+        return "server has: " + server + ", sent: " + sent;
+    }
+}
@@ -15,7 +15,7 @@ public class QauthModule extends UserModule
         super(usermoduleinterface);
         setDefault("limit,reauth", "admins,opped");
         if("quakenet".equals(usermoduleinterface.getNetwork()))
-            register(com.echbot.messages.in.ChatMessageIn.class);
+            registerCommand("!reauth", 0);
     }
 
     public void initialise(Object obj)
@@ -24,7 +24,7 @@ public class QauthModule extends UserModule
             authWithQ();
     }
 
-    public void received(ChatMessageIn chatmessagein)
+    public void command(int i, ChatMessageIn chatmessagein)
     {
         AuthModule authmodule;
         try
@@ -36,7 +36,7 @@ public class QauthModule extends UserModule
             log.warn("Requires auth module", nosuchmoduleexception);
             return;
         }
-        if(chatmessagein.isCommand() && "!reauth".equals(chatmessagein.getCommand()) && authmodule.permittedTo(chatmessagein.getFromWithHost(), "limit,reauth", chatmessagein.getTo()))
+        if(authmodule.permittedTo(chatmessagein.getFromWithHost(), "limit,reauth", chatmessagein.getTo()))
             authWithQ();
     }
 
@@ -0,0 +1,96 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.sockets;
+
+import com.echbot.Threads;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Connection using a blocking socket, with its own thread sat reading it.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+class BlockingConnection extends TcpConnection implements Runnable
+{
+    private static final Logger log = Logger.getLogger(BlockingConnection.class);
+    private static final int READ_BUFFER_SIZE = 16384;
+    private volatile Thread readerThread;
+    private Socket socket;
+    private OutputStreamWriter out;
+    private boolean closed = false;
+
+    BlockingConnection(SocketCallback callback, InetSocketAddress address, InetSocketAddress bindto) {
+        super(callback, address, bindto);
+        readerThread = Threads.start(this, null, false);
+    }
+
+    public void run() {
+        try {
+            log.debug("Address is " + address + ", and bindto is " + bindto);
+            socket = new Socket(address.getAddress(), address.getPort(), bindto.getAddress(), bindto.getPort());
+            out = new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1");
+            final InputStream in = socket.getInputStream();
+            final LineFramer reader = new LineFramer(READ_BUFFER_SIZE);
+            callback.connected();
+            while (!closed && (reader.readFrom(in) != -1)) {
+                while (!closed && reader.nextLine()) {
+                    callback.gotLine(reader.toString());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Connection failed", e);
+        } catch (NullPointerException e) {
+            log.error("Failed to resolve DNS for " + address);
+        }
+        close();
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        cancelTimer();
+        callback.disconnected();
+        try {
+            if (socket != null) socket.close();
+        } catch (Exception e) {
+            log.info("Failed to close socket!", e);
+        }
+        if (readerThread != null) readerThread.interrupt();
+    }
+
+    public synchronized void write(String toSend) {
+        try {
+            out.write(toSend);
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Error sending data to socket", e);
+            close();
+        }
+    }
+
+    public boolean isConnected() {
+        return (socket != null) && socket.isConnected();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.sockets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Splits the bytes coming from the server into lines without copying them.
+ * Data is read straight into one reusable buffer; {@link #nextLine} then
+ * finds the next CR or LF and the framer itself becomes a view of that
+ * line, decoding ISO-8859-1 a byte at a time as characters are asked for.
+ * The view is only valid until the next call to nextLine or a read, so call
+ * toString() on it to keep a line. Empty lines are skipped, and a line
+ * longer than the buffer is passed on in buffer-sized pieces.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public final class LineFramer implements CharSequence
+{
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private final ByteBuffer buffer;
+    private final byte[] data;
+    private int lineStart = 0, lineEnd = 0, scanFrom = 0;
+
+    /**
+     * @param capacity longest line that can be framed whole
+     */
+    public LineFramer(int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+        data = buffer.array();
+    }
+
+    /**
+     * Read whatever is available from the stream. Blocks if nothing is.
+     * @return number of bytes read, or -1 at the end of the stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        compact();
+        final int count = in.read(data, buffer.position(), buffer.remaining());
+        if (count > 0) buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    /**
+     * Read whatever is available from the channel.
+     * @return number of bytes read, or -1 at the end of the stream
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        compact();
+        return channel.read(buffer);
+    }
+
+    /**
+     * Move to the next complete line in the buffer.
+     * @return false if there isn't one, read some more and try again
+     */
+    public boolean nextLine() {
+        final int end = buffer.position();
+        int start = scanFrom;
+        for (int i = start; i < end; i++) {
+            final byte b = data[i];
+            if ((b == '\n') || (b == '\r')) {
+                if (i > start) {
+                    lineStart = start;
+                    lineEnd = i;
+                    scanFrom = i + 1;
+                    return true;
+                }
+                // a blank line, or the LF after a CR
+                start = i + 1;
+            }
+        }
+        scanFrom = start;
+        if ((start == 0) && (end == data.length)) {
+            // no terminator in a full buffer
+            lineStart = 0;
+            lineEnd = scanFrom = end;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop the lines already framed, moving any partial line to the front.
+     */
+    private void compact() {
+        final int end = buffer.position();
+        if (scanFrom == 0) return;
+        System.arraycopy(data, scanFrom, data, 0, end - scanFrom);
+        buffer.position(end - scanFrom);
+        lineStart = lineEnd = scanFrom = 0;
+    }
+
+    public int length() {
+        return lineEnd - lineStart;
+    }
+
+    public char charAt(int index) {
+        if ((index < 0) || (index >= lineEnd - lineStart)) throw new IndexOutOfBoundsException(Integer.toString(index));
+        return (char)(data[lineStart + index] & 0xff);
+    }
+
+    /**
+     * @return the raw byte at the given offset into the current line
+     */
+    public byte byteAt(int index) {
+        return data[lineStart + index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if ((start < 0) || (end > lineEnd - lineStart) || (start > end)) {
+            throw new IndexOutOfBoundsException(start + "," + end);
+        }
+        return new String(data, lineStart + start, end - start, ISO_8859_1);
+    }
+
+    /**
+     * @return a copy of the current line
+     */
+    public String toString() {
+        return new String(data, lineStart, lineEnd - lineStart, ISO_8859_1);
+    }
+}
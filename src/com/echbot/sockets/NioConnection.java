@@ -0,0 +1,250 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.sockets;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connection using a non-blocking channel served by a shared
+ * {@link SelectorLoop}. Lines written by any thread are encoded straight into
+ * the write buffer, and the loop flushes it whenever the socket is writable,
+ * so nobody waits on the network. The callback is called on the loop's
+ * thread and so is shared with the other connections on that loop, so it is
+ * offered lines rather than given them; when it can't take any more this
+ * connection stops reading until it can, and the others carry on.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+class NioConnection extends TcpConnection
+{
+    private static final Logger log = Logger.getLogger(NioConnection.class);
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int WRITE_BUFFER_SIZE = 4096;
+    // the server has stopped reading from us if this much is waiting
+    private static final int MAX_WRITE_BACKLOG = 1 << 20;
+    private final SelectorLoop loop = SelectorLoop.next();
+    private final LineFramer reader = new LineFramer(READ_BUFFER_SIZE);
+    private final Object writeLock = new Object();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private boolean writePending = false;
+    private volatile SocketChannel channel;
+    private SelectionKey key;
+    private volatile boolean closed = false;
+    // only touched by the loop's thread
+    private boolean paused = false;
+
+    private final Runnable enableWrite = new Runnable()
+    {
+        public void run() {
+            if ((key != null) && key.isValid() && channel.isConnected()) {
+                key.interestOps(readOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    };
+
+    private final Runnable unpause = new Runnable()
+    {
+        public void run() {
+            if (closed || !paused || !callback.retry(resume)) return;
+            paused = false;
+            deliverLines();
+            if (!paused && !closed && key.isValid()) {
+                synchronized (writeLock) {
+                    key.interestOps(writePending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                }
+            }
+        }
+    };
+
+    private final Runnable resume = new Runnable()
+    {
+        public void run() {
+            loop.execute(unpause);
+        }
+    };
+
+    private final Runnable discard = new Runnable()
+    {
+        public void run() {
+            callback.discard(resume);
+        }
+    };
+
+    NioConnection(SocketCallback callback, InetSocketAddress address, InetSocketAddress bindto) {
+        super(callback, address, bindto);
+        loop.execute(new Runnable()
+        {
+            public void run() {
+                start();
+            }
+        });
+    }
+
+    private void start() {
+        log.debug("Address is " + address + ", and bindto is " + bindto);
+        if (address.getAddress() == null) {
+            log.error("Failed to resolve DNS for " + address);
+            close();
+            return;
+        }
+        try {
+            final SocketChannel opened = SocketChannel.open();
+            synchronized (this) {
+                if (closed) {
+                    opened.close();
+                    return;
+                }
+                channel = opened;
+            }
+            channel.configureBlocking(false);
+            channel.socket().bind(bindto);
+            if (channel.connect(address)) {
+                key = loop.register(channel, 0, this);
+                finishConnect();
+            } else {
+                key = loop.register(channel, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            log.error("Connection failed", e);
+            close();
+        }
+    }
+
+    /**
+     * Called by the loop when the channel is ready for something.
+     */
+    void ready(SelectionKey selected) {
+        try {
+            if (selected.isConnectable() && channel.finishConnect()) finishConnect();
+            if (!closed && selected.isReadable()) read();
+            if (!closed && selected.isWritable()) flush();
+        } catch (IOException e) {
+            log.error("Connection failed", e);
+            close();
+        } catch (CancelledKeyException e) {
+            // closed by another thread
+            close();
+        }
+    }
+
+    private void finishConnect() {
+        synchronized (writeLock) {
+            key.interestOps(writePending ? readOps() | SelectionKey.OP_WRITE : readOps());
+        }
+        callback.connected();
+    }
+
+    private void read() throws IOException {
+        if (reader.readFrom(channel) == -1) {
+            close();
+            return;
+        }
+        deliverLines();
+    }
+
+    private void deliverLines() {
+        while (!closed && !paused && reader.nextLine()) {
+            if (!callback.offerLine(reader.toString(), resume)) {
+                // stop reading until the callback runs resume
+                paused = true;
+                synchronized (writeLock) {
+                    key.interestOps(writePending ? SelectionKey.OP_WRITE : 0);
+                }
+            }
+        }
+    }
+
+    private int readOps() {
+        return paused ? 0 : SelectionKey.OP_READ;
+    }
+
+    private void flush() throws IOException {
+        synchronized (writeLock) {
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            writeBuffer.compact();
+            if (writeBuffer.position() == 0) {
+                writePending = false;
+                key.interestOps(readOps());
+            }
+        }
+    }
+
+    public void write(String toSend) {
+        final int length = toSend.length();
+        boolean wake = false, overflow = false;
+        synchronized (writeLock) {
+            if (closed) return;
+            if (writeBuffer.remaining() < length) {
+                final int needed = writeBuffer.position() + length;
+                if (needed > MAX_WRITE_BACKLOG) {
+                    overflow = true;
+                } else {
+                    final ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, writeBuffer.capacity() * 2));
+                    writeBuffer.flip();
+                    bigger.put(writeBuffer);
+                    writeBuffer = bigger;
+                }
+            }
+            if (!overflow) {
+                for (int i = 0; i < length; i++) {
+                    final char c = toSend.charAt(i);
+                    writeBuffer.put((c > 0xff) ? (byte)'?' : (byte)c);
+                }
+                wake = !writePending;
+                writePending = true;
+            }
+        }
+        if (overflow) {
+            log.warn("Send buffer full, dropping connection");
+            close();
+        } else if (wake) {
+            loop.execute(enableWrite);
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        cancelTimer();
+        callback.disconnected();
+        // after any line being offered now, since that's on the loop too
+        loop.execute(discard);
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            log.info("Failed to close socket!", e);
+        }
+        loop.wakeup();
+    }
+
+    public boolean isConnected() {
+        final SocketChannel current = channel;
+        return (current != null) && current.isConnected();
+    }
+}
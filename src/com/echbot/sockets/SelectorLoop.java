@@ -0,0 +1,133 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.sockets;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread serving any number of non-blocking connections.
+ * Connections are spread round-robin over a fixed set of loops. Everything
+ * touching a connection's selection key happens on its loop's thread; other
+ * threads hand work over with {@link #execute}.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+final class SelectorLoop implements Runnable
+{
+    private static final Logger log = Logger.getLogger(SelectorLoop.class);
+    private static SelectorLoop[] loops;
+    private static int nextLoop = 0;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue tasks = new ConcurrentLinkedQueue();
+
+    private SelectorLoop(String name) throws IOException {
+        selector = Selector.open();
+        // not a daemon, with nio there may be no other thread keeping us alive
+        new Thread(this, name).start();
+    }
+
+    /**
+     * Start the loops if they aren't running yet.
+     * @param count sockets,loops setting, defaults to one per processor up to 4
+     */
+    static synchronized void configure(String count) {
+        if (loops != null) return;
+        int size = Math.min(4, Runtime.getRuntime().availableProcessors());
+        if (count != null) {
+            try {
+                size = Integer.parseInt(count.trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        if (size < 1) size = 1;
+        final SelectorLoop[] created = new SelectorLoop[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                created[i] = new SelectorLoop("Selector-" + (i + 1));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't open selector: " + e.getMessage());
+        }
+        loops = created;
+    }
+
+    /**
+     * @return the loop the next new connection should use
+     */
+    static synchronized SelectorLoop next() {
+        if (loops == null) configure(null);
+        return loops[(nextLoop++ & 0x7fffffff) % loops.length];
+    }
+
+    /**
+     * Run the task on this loop's thread, soon.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Only to be called on this loop's thread.
+     */
+    SelectionKey register(SelectableChannel channel, int ops, NioConnection connection) throws ClosedChannelException {
+        return channel.register(selector, ops, connection);
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Select failed", e);
+            }
+            Runnable task;
+            while ((task = (Runnable)tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("Error in selector task", e);
+                }
+            }
+            for (Iterator i = selector.selectedKeys().iterator(); i.hasNext();) {
+                final SelectionKey key = (SelectionKey)i.next();
+                i.remove();
+                try {
+                    ((NioConnection)key.attachment()).ready(key);
+                } catch (Throwable e) {
+                    log.error("Error handling connection", e);
+                }
+            }
+        }
+    }
+}
@@ -41,4 +41,29 @@ public interface SocketCallback
      * @param line data
      */
     public void gotLine(String line);
+
+    /**
+     * Like gotLine, for connections whose thread is shared with other
+     * connections, so it must never block. If it returns false the line has
+     * been kept but no more can be taken yet: the connection should stop
+     * reading until resume has been run, then call retry.
+     * @param line data
+     * @param resume may be run on any thread
+     * @return true if ready for the next line
+     */
+    public boolean offerLine(String line, Runnable resume);
+
+    /**
+     * Try again to pass on the line offerLine kept back.
+     * @param resume as for offerLine
+     * @return true if ready for the next line
+     */
+    public boolean retry(Runnable resume);
+
+    /**
+     * The connection has closed: drop anything offerLine kept back for it.
+     * Called on the same thread as offerLine, after the last call to it.
+     * @param resume as for offerLine
+     */
+    public void discard(Runnable resume);
 }
@@ -25,85 +25,74 @@ import com.echbot.GroupTimer;
 import com.echbot.messages.OutboundMessage;
 import org.apache.log4j.Logger;
 
-import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 
 /**
+ * A connection to an IRC server. There are two implementations: the original
+ * blocking one with a reader thread per connection, and a non-blocking one
+ * that shares a few selector threads between every clone. Which one
+ * {@link #open} creates depends on the <code>sockets,mode</code> setting.
  * @author Chris Pearson
  * @version $Id: TcpConnection.java,v 1.15 2003/09/01 17:54:36 chris Exp $
  */
-public class TcpConnection implements Runnable
+public abstract class TcpConnection
 {
     private static final Logger log = Logger.getLogger(TcpConnection.class);
-    private final Thread readerThread;
-    private final SocketCallback callback;
-    private final InetSocketAddress address, bindto;
+    private static volatile boolean nio = false;
+    protected final SocketCallback callback;
+    protected final InetSocketAddress address, bindto;
     private final GroupTimer timer = new GroupTimer();
     private final FloodProtect flood = new FloodProtect(this);
-    private Socket socket;
-    private OutputStreamWriter out;
-    private boolean closed = false;
 
-    public TcpConnection(SocketCallback callback, InetSocketAddress address, InetSocketAddress bindto) {
+    protected TcpConnection(SocketCallback callback, InetSocketAddress address, InetSocketAddress bindto) {
         this.callback = callback;
         this.address = address;
         this.bindto = bindto;
-        readerThread = new Thread(this);
-        readerThread.start();
     }
 
-    public GroupTimer getTimer() {
-        return timer;
+    /**
+     * Choose the connection type from the <code>sockets,mode</code> and
+     * <code>sockets,loops</code> settings.
+     * @param mode "nio" or "blocking" (the default)
+     * @param loops number of selector threads for nio, may be null
+     */
+    public static void setMode(String mode, String loops) {
+        nio = "nio".equalsIgnoreCase(mode);
+        if (nio) SelectorLoop.configure(loops);
+        log.info("Using " + (nio ? "non-blocking" : "blocking") + " sockets");
     }
 
-    public void run() {
-        try {
-            log.debug("Address is " + address + ", and bindto is " + bindto);
-            socket = new Socket(address.getAddress(), address.getPort(), bindto.getAddress(), bindto.getPort());
-            out = new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1");
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
-            callback.connected();
-            String nextLine;
-            while (!closed && ((nextLine = reader.readLine()) != null)) {
-                callback.gotLine(nextLine);
-            }
-        } catch (IOException e) {
-            log.error("Connection failed", e);
-        } catch (NullPointerException e) {
-            log.error("Failed to resolve DNS for " + address);
-        }
-        close();
+    /**
+     * Start connecting to the given address. The callback is told when the
+     * connection is made, for each line received and when it is lost.
+     */
+    public static TcpConnection open(SocketCallback callback, InetSocketAddress address, InetSocketAddress bindto) {
+        return nio ? (TcpConnection)new NioConnection(callback, address, bindto) :
+                new BlockingConnection(callback, address, bindto);
     }
 
-    public synchronized void close() {
-        if (closed) return;
-        closed = true;
-        timer.cancel();
-        callback.disconnected();
-        try {
-            if (socket != null) socket.close();
-        } catch (Exception e) {
-            log.info("Failed to close socket!", e);
-        }
-        readerThread.interrupt();
+    public GroupTimer getTimer() {
+        return timer;
     }
 
-    public synchronized void write(String toSend) {
-        try {
-            out.write(toSend);
-            out.flush();
-        } catch (IOException e) {
-            log.warn("Error sending data to socket", e);
-            close();
-        }
-    }
+    /**
+     * Close the connection, cancel its timers and tell the callback. Does
+     * nothing if it has already been closed.
+     */
+    public abstract void close();
+
+    /**
+     * Send raw data to the server, bypassing flood protection.
+     */
+    public abstract void write(String toSend);
+
+    public abstract boolean isConnected();
 
     public void send(OutboundMessage message, int priority) {
         flood.send(message, priority);
     }
 
-    public boolean isConnected() {
-        return (socket != null) && socket.isConnected();
+    protected final void cancelTimer() {
+        timer.cancel();
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.CommandRouter;
+import com.echbot.UserModule;
+import com.echbot.messages.MessageParser;
+import com.echbot.messages.in.ChatMessageIn;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class CommandRouterTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(CommandRouterTest.class);
+    }
+
+    private static final class Recorder extends UserModule
+    {
+        private final List calls = new ArrayList();
+
+        private Recorder() {
+            super(null);
+        }
+
+        public void command(int id, ChatMessageIn message) {
+            calls.add(id + " " + message.getCommand());
+        }
+    }
+
+    private static void say(CommandRouter router, String command) {
+        router.dispatch((ChatMessageIn)MessageParser.parseMessage(":nick!u@h PRIVMSG #pickup :" + command + " args"));
+    }
+
+    public void testExactBeatsPrefix() {
+        final CommandRouter router = new CommandRouter();
+        final Recorder a = new Recorder(), b = new Recorder();
+        router.register("!add*", a, 1);
+        router.register("!ADD", a, 2);
+        router.register("!a*", b, 3);
+        router.register("!add*", b, 4);
+        say(router, "!add");
+        say(router, "!add1");
+        say(router, "!away");
+        say(router, "!who");
+        assertEquals("[2 !add, 1 !add1]", a.calls.toString());
+        assertEquals("[4 !add, 4 !add1, 3 !away]", b.calls.toString());
+        router.unregister(a);
+        say(router, "!add");
+        assertEquals(2, a.calls.size());
+        assertEquals(4, b.calls.size());
+    }
+
+    public void testCacheKeepsRecentCommands() {
+        final CommandRouter router = new CommandRouter();
+        final Recorder module = new Recorder();
+        router.register("!add*", module, 1);
+        for (int i = 0; i < 3000; i++) {
+            say(router, "!junk" + i);
+        }
+        assertTrue(router.getCachedCount() <= 1024);
+        for (int i = 0; i < 3000; i++) {
+            say(router, "!add" + i);
+        }
+        assertTrue(router.getCachedCount() <= 1024);
+        assertEquals(3000, module.calls.size());
+        assertEquals("1 !add2999", module.calls.get(2999));
+    }
+
+    public void testStatsPerRouterAndModule() {
+        final CommandRouter first = new CommandRouter(), second = new CommandRouter();
+        final Recorder module = new Recorder();
+        first.register("!who", module, 1);
+        second.register("!who", module, 1);
+        say(first, "!who");
+        say(first, "!who");
+        assertEquals(1, first.getStats().size());
+        assertTrue(((String)first.getStats().get(0)).startsWith("!who (CommandRouterTest$Recorder): 2 calls"));
+        assertEquals(0, second.getStats().size());
+        // the counts survive the module being reloaded
+        first.clear();
+        first.register("!who", module, 1);
+        say(first, "!who");
+        assertTrue(((String)first.getStats().get(0)).startsWith("!who (CommandRouterTest$Recorder): 3 calls"));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.config.Config;
+import com.echbot.config.ConfigUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class ConfigTest extends TestCase
+{
+    private File dir;
+
+    public static Test suite() {
+        return new TestSuite(ConfigTest.class);
+    }
+
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("echbot").toFile();
+    }
+
+    protected void tearDown() {
+        final File[] files = dir.listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private String[] journals() {
+        return dir.list(new java.io.FilenameFilter()
+        {
+            public boolean accept(File parent, String name) {
+                return name.startsWith("echbot.cfg.journal.");
+            }
+        });
+    }
+
+    private Properties saved() throws IOException {
+        final Properties res = new Properties();
+        final FileInputStream in = new FileInputStream(new File(dir, "echbot.cfg"));
+        try {
+            res.load(in);
+        } finally {
+            in.close();
+        }
+        return res;
+    }
+
+    public void testReplay() throws IOException {
+        final Config config = new Config(dir);
+        config.put("a", "1");
+        config.put("b", "2");
+        config.remove("a");
+        config.put("c", "3");
+        assertFalse(saved().containsKey("b"));
+
+        final Config replayed = new Config(dir);
+        assertNull(replayed.get("a"));
+        assertEquals("2", replayed.get("b"));
+        assertEquals("3", replayed.get("c"));
+    }
+
+    public void testTornTail() throws IOException {
+        final Config config = new Config(dir);
+        config.put("a", "1");
+        config.put("b", "2");
+        // the bot died part way through writing a put
+        final String[] names = journals();
+        assertEquals(1, names.length);
+        final FileOutputStream out = new FileOutputStream(new File(dir, names[0]), true);
+        out.write(new byte[]{'P', 0, 1, 'x', 0, 9, 'y'});
+        out.close();
+
+        final Config replayed = new Config(dir);
+        assertEquals("1", replayed.get("a"));
+        assertEquals("2", replayed.get("b"));
+        assertNull(replayed.get("x"));
+    }
+
+    public void testOversizedValueDoesNotTearJournal() throws IOException {
+        final StringBuffer big = new StringBuffer();
+        while (big.length() < 70000) {
+            big.append("0123456789");
+        }
+        final Config config = new Config(dir);
+        config.put("big", big.toString());
+        config.put("after", "1");
+        assertEquals("1", new Config(dir).get("after"));
+        // the journal couldn't hold it, so it has to be saved in full
+        config.save();
+        final Config reloaded = new Config(dir);
+        assertEquals(big.toString(), reloaded.get("big"));
+        assertEquals("1", reloaded.get("after"));
+    }
+
+    public void testCompactionLeavesDefaultsOut() throws IOException {
+        final Config config = new Config(dir);
+        config.put("vars,greeting", "hello");
+        config.put("vars,other", "x");
+
+        final Config replayed = new Config(dir);
+        // not compacted until the modules have set their defaults
+        assertFalse(saved().containsKey("vars,greeting"));
+        replayed.setDefault("vars,greeting", "hello");
+        replayed.save();
+        final Properties saved = saved();
+        assertFalse(saved.containsKey("vars,greeting"));
+        assertEquals("x", saved.getProperty("vars,other"));
+        assertFalse(new File(dir, "echbot.cfg.tmp").exists());
+        // only the journal started by the compaction is left
+        assertEquals(1, journals().length);
+        assertEquals(0, new File(dir, journals()[0]).length());
+    }
+
+    public void testSetChannelVars() throws IOException {
+        final Config config = new Config(dir);
+        ConfigUtils.setChannelVar(config, "pickup,motd", "hi", "quakenet", "#pickup");
+        final Map vars = new HashMap();
+        vars.put("pickup,motd", null);
+        vars.put("pickup,lastgame", "bob alice");
+        vars.put("pickup,lastgametime", "1000");
+        ConfigUtils.setChannelVars(config, vars, "quakenet", "#pickup");
+        assertNull(config.get("vars,quakenet,#pickup,pickup,motd"));
+        assertEquals("bob alice", ConfigUtils.getChannelVar(config, "pickup,lastgame", "quakenet", "#pickup", null));
+        // and they're journaled like any other write
+        final Config replayed = new Config(dir);
+        assertNull(replayed.get("vars,quakenet,#pickup,pickup,motd"));
+        assertEquals("1000", replayed.get("vars,quakenet,#pickup,pickup,lastgametime"));
+    }
+}
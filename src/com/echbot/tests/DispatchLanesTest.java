@@ -0,0 +1,84 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.DispatchLanes;
+import com.echbot.messages.MessageParser;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class DispatchLanesTest extends TestCase
+{
+    private static final int LANES = 16;
+    // everything that changes who is on a channel, or what they're called
+    private static final String[] MEMBERSHIP = {
+        ":bob!b@h JOIN :#one",
+        ":bob!b@h JOIN :&two",
+        ":server 353 me = #three :@alice bob",
+        ":bob!b@h NICK :robert",
+        ":op!o@h MODE #one +o robert",
+        ":op!o@h KICK +four robert :bye",
+        ":robert!b@h PART #one",
+        ":robert!b@h QUIT :gone",
+    };
+
+    public static Test suite() {
+        return new TestSuite(DispatchLanesTest.class);
+    }
+
+    private static int lane(DispatchLanes lanes, String line) {
+        return lanes.laneFor(MessageParser.parseMessage(line), "bot1");
+    }
+
+    public void testMembershipStaysInOrderByChannel() {
+        final DispatchLanes lanes = new DispatchLanes(LANES, null, null, true);
+        final int first = lane(lanes, MEMBERSHIP[0]);
+        for (int i = 1; i < MEMBERSHIP.length; i++) {
+            assertEquals(MEMBERSHIP[i], first, lane(lanes, MEMBERSHIP[i]));
+        }
+        assertEquals(first, lane(lanes, ":bob!b@h PRIVMSG me :private"));
+        // channel chat is still spread out
+        final Set used = new HashSet();
+        for (int i = 0; i < 64; i++) {
+            final int chat = lane(lanes, ":bob!b@h PRIVMSG #chan" + i + " :hi");
+            assertEquals(chat, lane(lanes, ":op!o@h TOPIC #chan" + i + " :topic"));
+            used.add(Integer.valueOf(chat));
+        }
+        assertTrue(used.size() > 1);
+    }
+
+    public void testEverythingInOrderByClone() {
+        final DispatchLanes lanes = new DispatchLanes(LANES, null, null, false);
+        final int first = lane(lanes, MEMBERSHIP[0]);
+        for (int i = 1; i < MEMBERSHIP.length; i++) {
+            assertEquals(first, lane(lanes, MEMBERSHIP[i]));
+        }
+        assertEquals(first, lane(lanes, ":bob!b@h PRIVMSG #chan :hi"));
+    }
+}
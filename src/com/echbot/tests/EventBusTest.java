@@ -0,0 +1,127 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.EventBus;
+import com.echbot.EventType;
+import com.echbot.UserModule;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class EventBusTest extends TestCase
+{
+    private static final int THREADS = 4;
+    private static final int NAMES = 200;
+
+    public static Test suite() {
+        return new TestSuite(EventBusTest.class);
+    }
+
+    private static final class Listener extends UserModule
+    {
+        private final List seen = new ArrayList();
+
+        private Listener() {
+            super(null);
+        }
+
+        public void userEvent(int id, Object attachment) {
+            seen.add(attachment);
+        }
+    }
+
+    public void testIdsMatchNames() {
+        final EventType type = EventType.forName("test.ids");
+        assertSame(type, EventType.forName("test.ids"));
+        assertSame(type, EventType.forId(type.getId()));
+        assertEquals("test.ids", EventType.forId(type.getId()).getName());
+        assertNull(EventType.forId(-1));
+        assertNull(EventType.forId(Integer.MAX_VALUE));
+    }
+
+    public void testConcurrentLookups() throws InterruptedException {
+        final EventType[][] found = new EventType[THREADS][NAMES];
+        final List failures = new ArrayList();
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable()
+            {
+                public void run() {
+                    // half the threads go through the names backwards
+                    for (int i = 0; i < NAMES; i++) {
+                        final int n = (thread % 2 == 0) ? i : NAMES - 1 - i;
+                        final EventType type = EventType.forName("test.concurrent." + n);
+                        found[thread][n] = type;
+                        // anyone who found it by name must find it by id
+                        if (EventType.forId(type.getId()) != type) {
+                            synchronized (failures) {
+                                failures.add(type);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        for (int t = 0; t < THREADS; t++) threads[t].start();
+        for (int t = 0; t < THREADS; t++) threads[t].join();
+        assertEquals(new ArrayList(), failures);
+        for (int n = 0; n < NAMES; n++) {
+            for (int t = 1; t < THREADS; t++) {
+                assertSame(found[0][n], found[t][n]);
+            }
+            for (int m = 0; m < n; m++) {
+                assertTrue(found[0][n].getId() != found[0][m].getId());
+            }
+        }
+    }
+
+    public void testPublish() {
+        final EventBus bus = new EventBus();
+        final int id = EventType.forName("test.publish").getId();
+        final int other = EventType.forName("test.publish.other").getId();
+        final Listener first = new Listener(), second = new Listener();
+        // publishing before anyone subscribes is fine
+        bus.publish(id, "none");
+        bus.subscribe(id, first, false);
+        bus.subscribe(id, first, false);
+        bus.subscribe(id, second, false);
+        bus.publish(id, "both");
+        bus.publish(other, "nobody");
+        bus.unsubscribe(first);
+        bus.publish(id, "second");
+        assertEquals(1, first.seen.size());
+        assertEquals("both", first.seen.get(0));
+        assertEquals(2, second.seen.size());
+        assertEquals("second", second.seen.get(1));
+        bus.clear();
+        bus.publish(id, "cleared");
+        assertEquals(2, second.seen.size());
+    }
+}
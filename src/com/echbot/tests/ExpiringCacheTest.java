@@ -0,0 +1,147 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.ExpiringCache;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class ExpiringCacheTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(ExpiringCacheTest.class);
+    }
+
+    private static ExpiringCache.Listener record(final List into) {
+        return new ExpiringCache.Listener()
+        {
+            public void removed(Object key, Object value, int cause) {
+                into.add(key + "=" + value + ((cause == ExpiringCache.EXPIRED) ? " expired" : " evicted"));
+            }
+        };
+    }
+
+    public void testEntriesExpireSeparately() throws InterruptedException {
+        List removed = Collections.synchronizedList(new ArrayList());
+        ExpiringCache cache = new ExpiringCache("test.expire", 100);
+        cache.addListener(record(removed));
+        cache.put("a", "1");
+        cache.put("b", "2", 600);
+        assertEquals("1", cache.get("a"));
+        Thread.sleep(300);
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(1, cache.size());
+        assertEquals(1, removed.size());
+        assertEquals("a=1 expired", removed.get(0));
+        Thread.sleep(500);
+        assertFalse(cache.containsKey("b"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testForeverEntriesStay() throws InterruptedException {
+        ExpiringCache cache = new ExpiringCache("test.forever", ExpiringCache.FOREVER);
+        cache.put("a", "1");
+        cache.put("b", "2", 50);
+        Thread.sleep(150);
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        ExpiringCache reloaded = new ExpiringCache("test.forever", 50);
+        reloaded.putAll(cache);
+        Thread.sleep(150);
+        assertEquals("1", reloaded.get("a"));
+        assertEquals("1", reloaded.remove("a"));
+        assertEquals(0, reloaded.size());
+    }
+
+    public void testReplacingRestartsTheClock() throws InterruptedException {
+        List removed = Collections.synchronizedList(new ArrayList());
+        ExpiringCache cache = new ExpiringCache("test.replace", 200);
+        cache.addListener(record(removed));
+        cache.put("a", "1", 100);
+        assertEquals("1", cache.put("a", "2"));
+        Thread.sleep(150);
+        assertEquals("2", cache.get("a"));
+        assertEquals("2", cache.remove("a"));
+        Thread.sleep(150);
+        assertTrue(removed.isEmpty());
+    }
+
+    public void testLruEvictsLeastRecentlyUsed() {
+        List removed = new ArrayList();
+        ExpiringCache cache = new ExpiringCache("test.lru", 60000, 3, ExpiringCache.LRU);
+        cache.addListener(record(removed));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, removed.size());
+        assertEquals("b=2 evicted", removed.get(0));
+        cache.clear();
+    }
+
+    public void testLfuEvictsLeastFrequentlyUsed() {
+        ExpiringCache cache = new ExpiringCache("test.lfu", 60000, 3, ExpiringCache.LFU);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        // b and c are tied, b has gone longest without a use
+        cache.put("d", "4");
+        assertFalse(cache.containsKey("b"));
+        cache.put("e", "5");
+        assertFalse(cache.containsKey("d"));
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("c"));
+        assertTrue(cache.containsKey("e"));
+        cache.clear();
+    }
+
+    public void testStatistics() {
+        ExpiringCache cache = new ExpiringCache("test.stats", 60000, 1, ExpiringCache.LRU);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("b");
+        cache.put("b", "2");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(0, cache.getExpirations());
+        assertTrue(ExpiringCache.getStats().contains("test.stats: 2 lookups, 50% hits, 1 evicted, 0 expired"));
+        cache.clear();
+    }
+}
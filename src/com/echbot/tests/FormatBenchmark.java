@@ -0,0 +1,197 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.config.Config;
+import com.echbot.config.ConfigUtils;
+import com.echbot.config.FormatUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares rendering a pickup topic with {@link FormatUtils} against the old
+ * approach of re-parsing the format variables on every call. Not a unit
+ * test, run it by hand from a scratch directory, as it creates an echbot.cfg
+ * in the current one:
+ * <pre>java -cp build:lib/log4j.jar com.echbot.tests.FormatBenchmark [renders]</pre>
+ * The topic has five games of ten players each. Bytes allocated are read
+ * from the JVM's per-thread allocation counter, which only HotSpot-style
+ * JVMs provide.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class FormatBenchmark
+{
+    private static final String NETWORK = "quakenet";
+    private static final String CHANNEL = "#pickup";
+
+    private interface Renderer
+    {
+        String render(Config config, Map vars);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int renders = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        final Config config = new Config();
+        config.setDefault("vars,pickup,format", "\0034Next Game: $firstgame$${ \0032|| }games$${ \0032|| }motd$");
+        config.setDefault("vars,pickup,format,firstgame", "\00306$players$${ \0034@ }ip$${\00310 on }map$");
+        config.setDefault("vars,pickup,format,firstgame,players", "$nick$");
+        config.setDefault("vars,pickup,format,firstgame,players,sep", "/");
+        config.setDefault("vars,pickup,format,games", "\00306$players$${ \0034@ }ip$${\00310 on }map$");
+        config.setDefault("vars,pickup,format,games,sep", "\00312 ][ ");
+        config.setDefault("vars,pickup,format,games,players", "$num$:$nick$");
+        config.setDefault("vars,pickup,format,games,players,sep", "/");
+        final Map vars = topicVars(5, 10);
+
+        final Renderer interpreted = new Renderer()
+        {
+            public String render(Config config, Map vars) {
+                final StringBuffer result = new StringBuffer();
+                doFormat("pickup,format", NETWORK, CHANNEL, config, vars, result);
+                return result.toString();
+            }
+        };
+        final Renderer compiled = new Renderer()
+        {
+            public String render(Config config, Map vars) {
+                return FormatUtils.format(config, "pickup,format", vars, NETWORK, CHANNEL);
+            }
+        };
+        if (!interpreted.render(config, vars).equals(compiled.render(config, vars))) {
+            throw new IllegalStateException("Compiled format doesn't match the interpreted one");
+        }
+        measure("interpreted", config, vars, renders, interpreted);
+        measure("compiled", config, vars, renders, compiled);
+    }
+
+    private static Map topicVars(int games, int players) {
+        final Map vars = new HashMap();
+        final List gameVars = new ArrayList();
+        for (int g = 0; g < games; g++) {
+            final Map game = new HashMap();
+            final List playerVars = new ArrayList();
+            for (int p = 0; p < players; p++) {
+                final Map player = new HashMap();
+                player.put("num", Integer.toString(p + 1));
+                player.put("nick", "player" + g + "_" + p);
+                playerVars.add(player);
+            }
+            game.put("players", playerVars);
+            game.put("ip", "10.0.0." + (g + 1) + ":27960");
+            game.put("map", "q3dm" + (g + 6));
+            if (gameVars.isEmpty()) vars.put("firstgame", game);
+            gameVars.add(game);
+        }
+        vars.put("games", gameVars);
+        vars.put("motd", "www.echbot.com");
+        return vars;
+    }
+
+    private static void measure(String name, Config config, Map vars, int renders, Renderer renderer) {
+        int length = 0;
+        // warm up
+        for (int i = 0; i < renders; i++) length += renderer.render(config, vars).length();
+        final long bytesBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < renders; i++) length += renderer.render(config, vars).length();
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - bytesBefore;
+        System.out.println(name + ": " + (elapsed / renders) + "ns/op, " +
+                ((allocated < 0) ? "?" : Long.toString(allocated / renders)) + " bytes/op (" + length + ")");
+    }
+
+    private static long allocatedBytes() {
+        try {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+                    "getThreadAllocatedBytes", new Class[]{long.class});
+            return ((Long)method.invoke(threads, new Object[]{Long.valueOf(Thread.currentThread().getId())})).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    // The old FormatUtils, which parsed the format on every call
+
+    private static void doFormat(String varName, String network, String channel, Config config, Map vars, StringBuffer result) {
+        final String var = ConfigUtils.getVar(config, varName, network, channel);
+        if (var == null) return;
+        int index = 0;
+        while (index < var.length()) {
+            char thisChar = var.charAt(index);
+            if ((thisChar == '$') && (index + 1 < var.length())) {
+                int endVar = var.indexOf('$', index + 1);
+                if (endVar != -1) {
+                    String header = "", thisVar = null;
+                    if (var.charAt(index + 1) == '{') {
+                        int endHeader = var.indexOf('}', index);
+                        if ((endHeader > -1) && (endHeader < endVar)) {
+                            header = var.substring(index + 2, endHeader);
+                            thisVar = var.substring(endHeader + 1, endVar);
+                        }
+                    }
+                    if (thisVar == null) {
+                        thisVar = var.substring(index + 1, endVar);
+                    }
+                    Object thisObj = vars.get(thisVar);
+                    if (thisObj == null) {
+                        // do nothing
+                    } else if (thisObj instanceof Map) {
+                        result.append(header);
+                        doFormat(varName + "," + thisVar, network, channel, config, (Map)thisObj, result);
+                    } else if (thisObj instanceof List) {
+                        result.append(header);
+                        doFormat(varName + "," + thisVar, network, channel, config, (List)thisObj, result);
+                    } else if (!"".equals(thisObj)) {
+                        result.append(header).append(thisObj);
+                    }
+                    index = endVar;
+                } else {
+                    result.append(thisChar);
+                }
+            } else {
+                result.append(thisChar);
+            }
+            index++;
+        }
+    }
+
+    private static void doFormat(String varName, String network, String channel, Config config, List list, StringBuffer result) {
+        String separator = ConfigUtils.getVar(config, varName + ",sep", network, channel);
+        if (separator == null) separator = ",";
+        for (Iterator i = list.iterator(); i.hasNext();) {
+            final Object thisObj = i.next();
+            if (thisObj instanceof Map) {
+                doFormat(varName, network, channel, config, (Map)thisObj, result);
+            } else {
+                result.append(thisObj);
+            }
+            if (i.hasNext()) result.append(separator);
+        }
+    }
+}
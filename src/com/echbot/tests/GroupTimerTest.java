@@ -0,0 +1,132 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.GroupTimer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class GroupTimerTest extends TestCase
+{
+    private static final long TIMEOUT = 5000;
+
+    public static Test suite() {
+        return new TestSuite(GroupTimerTest.class);
+    }
+
+    private static Runnable record(final List into, final String name) {
+        return new Runnable()
+        {
+            public void run() {
+                into.add(name);
+            }
+        };
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable()
+        {
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    /**
+     * Timer tasks run one at a time in deadline order, so once a marker due
+     * after some other tasks has run, so have they, unless cancelled.
+     */
+    private static void awaitMarker(long delay) throws InterruptedException {
+        final CountDownLatch marker = new CountDownLatch(1);
+        new GroupTimer().schedule(countDown(marker), delay);
+        assertTrue(marker.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    public void testRunsInDeadlineOrder() throws InterruptedException {
+        List ran = Collections.synchronizedList(new ArrayList());
+        GroupTimer timer = new GroupTimer();
+        timer.schedule(record(ran, "third"), 90);
+        timer.schedule(record(ran, "first"), 10);
+        timer.schedule(record(ran, "second"), 50);
+        assertFalse(timer.isEmpty());
+        awaitMarker(100);
+        assertEquals(3, ran.size());
+        assertEquals("first", ran.get(0));
+        assertEquals("second", ran.get(1));
+        assertEquals("third", ran.get(2));
+        assertTrue(timer.isEmpty());
+    }
+
+    public void testCancelCancelsChildren() throws InterruptedException {
+        List ran = Collections.synchronizedList(new ArrayList());
+        GroupTimer parent = new GroupTimer();
+        GroupTimer child = new GroupTimer(parent);
+        GroupTimer grandchild = new GroupTimer(child);
+        GroupTimer sibling = new GroupTimer(parent);
+        child.schedule(record(ran, "child"), 50);
+        grandchild.schedule(record(ran, "grandchild"), 50);
+        sibling.schedule(record(ran, "sibling"), 50);
+        child.cancel();
+        awaitMarker(60);
+        assertEquals(1, ran.size());
+        assertEquals("sibling", ran.get(0));
+        parent.cancel();
+        sibling.schedule(record(ran, "late"), 10);
+        parent.schedule(record(ran, "late"), 10);
+        awaitMarker(20);
+        assertEquals(1, ran.size());
+    }
+
+    public void testTasksNeverOverlap() throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        final GroupTimer timer = new GroupTimer();
+        for (int i = 0; i < 20; i++) {
+            timer.schedule(new Runnable()
+            {
+                public void run() {
+                    if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }, 10);
+        }
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, overlaps.get());
+    }
+}
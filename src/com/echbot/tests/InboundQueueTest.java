@@ -0,0 +1,108 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.InboundQueue;
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.in.PingIn;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class InboundQueueTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(InboundQueueTest.class);
+    }
+
+    public void testOrderAndDrain() {
+        InboundQueue queue = new InboundQueue(5, new InboundQueue.BlockingWait());
+        assertEquals(8, queue.capacity());
+        assertTrue(queue.isEmpty());
+        InboundMessage m1, m2, m3, m4;
+        queue.add(m1 = new PingIn("1"), null);
+        queue.add(m2 = new PingIn("2"), null);
+        queue.add(m3 = new PingIn("3"), null);
+        queue.add(m4 = new PingIn("4"), null);
+        assertEquals(4, queue.size());
+        assertEquals(m1, queue.getItem().message);
+        List drained = new ArrayList();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(m2, ((InboundQueue.QueueEntry)drained.get(0)).message);
+        assertEquals(m3, ((InboundQueue.QueueEntry)drained.get(1)).message);
+        assertEquals(m4, queue.getItem().message);
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testWrapsWhenFull() {
+        InboundQueue queue = new InboundQueue(2, new InboundQueue.SpinningWait());
+        for (int i = 0; i < 10; i++) {
+            queue.add(new PingIn("a" + i), null);
+            queue.add(new PingIn("b" + i), null);
+            assertTrue(queue.isFull());
+            assertEquals("a" + i, ((PingIn)queue.getItem().message).getPingCode());
+            assertEquals("b" + i, ((PingIn)queue.getItem().message).getPingCode());
+        }
+    }
+
+    public void testManyProducersAndConsumers() throws InterruptedException {
+        final InboundQueue queue = new InboundQueue(16, new InboundQueue.BlockingWait());
+        final int perProducer = 5000;
+        final int producers = 4, consumers = 4;
+        final int[] consumed = new int[consumers];
+        Thread[] threads = new Thread[producers + consumers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Thread()
+            {
+                public void run() {
+                    for (int j = 0; j < perProducer; j++) {
+                        queue.add(new PingIn("x"), null);
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < consumers; i++) {
+            final int id = i;
+            threads[producers + i] = new Thread()
+            {
+                public void run() {
+                    for (int j = 0; j < perProducer; j++) {
+                        queue.getItem();
+                        consumed[id]++;
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; i++) threads[i].start();
+        for (int i = 0; i < threads.length; i++) threads[i].join(30000);
+        int total = 0;
+        for (int i = 0; i < consumers; i++) total += consumed[i];
+        assertEquals(producers * perProducer, total);
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.InboundQuota;
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.in.PingIn;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class InboundQuotaTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(InboundQuotaTest.class);
+    }
+
+    private static final class Lane implements InboundQuota.Sink
+    {
+        private final List added = new ArrayList();
+        private boolean full = false;
+
+        public boolean tryAdd(InboundMessage message) {
+            if (full) return false;
+            added.add(message);
+            return true;
+        }
+    }
+
+    private static final class Reader implements Runnable
+    {
+        private int resumed = 0;
+
+        public void run() {
+            resumed++;
+        }
+    }
+
+    public void testWaitsForQuota() {
+        final InboundQuota quota = new InboundQuota("1", null, null);
+        final Lane lane = new Lane();
+        final Reader reader = new Reader();
+        assertEquals(InboundQuota.TAKEN, quota.offer(new PingIn("1"), lane, reader));
+        assertEquals(InboundQuota.WAIT, quota.offer(new PingIn("2"), lane, reader));
+        assertEquals(0, reader.resumed);
+        quota.done();
+        assertEquals(1, reader.resumed);
+        assertEquals(InboundQuota.TAKEN, quota.retry(lane, reader));
+        assertEquals(2, lane.added.size());
+        assertEquals("2", ((PingIn)lane.added.get(1)).getPingCode());
+        assertEquals(1, quota.getQueued());
+    }
+
+    public void testRetriesFullLane() {
+        final InboundQuota quota = new InboundQuota("2", null, null);
+        final Lane lane = new Lane();
+        final Reader reader = new Reader();
+        lane.full = true;
+        assertEquals(InboundQuota.BUSY, quota.offer(new PingIn("1"), lane, reader));
+        assertEquals(InboundQuota.BUSY, quota.retry(lane, reader));
+        lane.full = false;
+        assertEquals(InboundQuota.TAKEN, quota.retry(lane, reader));
+        // already admitted, so only counted once
+        assertEquals(1, quota.getQueued());
+        assertEquals(InboundQuota.TAKEN, quota.retry(lane, reader));
+        assertEquals(1, lane.added.size());
+    }
+
+    public void testReconnectWithKeptLine() {
+        final InboundQuota quota = new InboundQuota("1", null, null);
+        final Lane lane = new Lane();
+        final Reader closed = new Reader(), reconnected = new Reader();
+        lane.full = true;
+        assertEquals(InboundQuota.BUSY, quota.offer(new PingIn("old"), lane, closed));
+        assertEquals(1, quota.getQueued());
+        lane.full = false;
+        // the new connection gets going before the old one has discarded
+        assertEquals(InboundQuota.TAKEN, quota.offer(new PingIn("new"), lane, reconnected));
+        quota.discard(closed);
+        quota.done();
+        assertEquals(0, quota.getQueued());
+
+        lane.full = true;
+        assertEquals(InboundQuota.BUSY, quota.offer(new PingIn("old"), lane, closed));
+        quota.discard(closed);
+        assertEquals(0, quota.getQueued());
+        assertEquals(InboundQuota.TAKEN, quota.retry(lane, closed));
+        lane.full = false;
+        assertEquals(InboundQuota.TAKEN, quota.offer(new PingIn("new"), lane, reconnected));
+        assertEquals(1, quota.getQueued());
+        assertEquals(2, lane.added.size());
+    }
+}
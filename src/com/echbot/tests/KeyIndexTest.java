@@ -0,0 +1,154 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.config.Config;
+import com.echbot.config.ConfigListener;
+import com.echbot.config.ConfigUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class KeyIndexTest extends TestCase
+{
+    private File dir;
+    private Config config;
+
+    public static Test suite() {
+        return new TestSuite(KeyIndexTest.class);
+    }
+
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("echbot").toFile();
+        config = new Config(dir);
+        config.put("test,quakenet,#pickup,bans,bob", "1");
+        config.put("test,quakenet,#pickup,bans,alice", "2");
+        config.put("test,quakenet,#other,bans,carol", "3");
+        config.put("test,quakenet,#other,alias", "4");
+        config.put("test,gamesurge,#pickup,bans,dave", "5");
+        config.put("test,quakenet", "6");
+    }
+
+    protected void tearDown() {
+        final File[] files = dir.listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private static HashSet set(String[] keys) {
+        return new HashSet(Arrays.asList(keys));
+    }
+
+    /**
+     * Records every change it's told about as "key=value".
+     */
+    private static final class Recorder implements ConfigListener
+    {
+        private final List changes = new ArrayList();
+
+        public void configChanged(String key, String value) {
+            changes.add(key + "=" + value);
+        }
+    }
+
+    public void testKeysMatching() {
+        assertEquals(set(new String[]{"test,quakenet,#pickup,bans,bob", "test,quakenet,#pickup,bans,alice",
+                                      "test,quakenet,#other,bans,carol"}),
+                new HashSet(config.keysMatching("test,quakenet,*,bans,*")));
+        assertEquals(set(new String[]{"test,quakenet,#pickup,bans,alice"}),
+                new HashSet(config.keysMatching("test,*,#pickup,bans,a*")));
+        assertEquals(set(new String[]{"test,quakenet,#other,alias"}),
+                new HashSet(config.keysMatching("test,quakenet,#other,alias")));
+        assertEquals(set(new String[]{"test,quakenet"}), new HashSet(config.keysMatching("test,*")));
+        assertEquals(0, config.keysMatching("test,quakenet,#pickup").size());
+        assertEquals(0, config.keysMatching("test,nowhere,*").size());
+    }
+
+    public void testKeysUnder() {
+        assertEquals(set(new String[]{"test,quakenet,#other,bans,carol", "test,quakenet,#other,alias"}),
+                new HashSet(config.keysUnder("test,quakenet,#other")));
+        assertEquals(6, config.keysUnder("test").size());
+        // a key isn't under itself
+        assertEquals(4, config.keysUnder("test,quakenet").size());
+        // segments have to match whole
+        assertEquals(0, config.keysUnder("test,quake").size());
+        config.remove("test,quakenet,#other,bans,carol");
+        config.remove("test,quakenet,#other,alias");
+        assertEquals(0, config.keysUnder("test,quakenet,#other").size());
+        assertEquals(0, config.keysMatching("test,quakenet,#other,*").size());
+        config.put("test,quakenet,#other,alias", "7");
+        assertEquals(Arrays.asList(new String[]{"test,quakenet,#other,alias"}), config.keysUnder("test,quakenet,#other"));
+    }
+
+    public void testListeners() {
+        final Recorder network = new Recorder(), channel = new Recorder();
+        config.addListener("test,quakenet", network);
+        config.addListener("test,quakenet,#pickup", channel);
+        config.put("test,quakenet,#pickup,bans,eve", "8");
+        config.put("test,quakenet,#other,alias", "9");
+        config.put("test,quakenetx,#pickup", "10");
+        config.put("test,quakenet", "11");
+        config.remove("test,quakenet,#pickup,bans,bob");
+        config.remove("test,quakenet,#pickup,bans,nobody");
+        assertEquals(Arrays.asList(new String[]{"test,quakenet,#pickup,bans,eve=8", "test,quakenet,#other,alias=9",
+                                                "test,quakenet=11", "test,quakenet,#pickup,bans,bob=null"}),
+                network.changes);
+        assertEquals(Arrays.asList(new String[]{"test,quakenet,#pickup,bans,eve=8",
+                                                "test,quakenet,#pickup,bans,bob=null"}),
+                channel.changes);
+        final Map changes = new HashMap();
+        changes.put("test,quakenet,#pickup,bans,alice", null);
+        changes.put("test,gamesurge,#pickup,bans,dave", "12");
+        config.putAll(changes);
+        assertEquals("test,quakenet,#pickup,bans,alice=null", channel.changes.get(2));
+        assertEquals(3, channel.changes.size());
+        config.removeListener("test,quakenet,#pickup", channel);
+        config.put("test,quakenet,#pickup,bans,bob", "13");
+        assertEquals(3, channel.changes.size());
+        assertEquals(6, network.changes.size());
+    }
+
+    public void testVarCacheListens() {
+        config.put("vars,greeting", "hello");
+        assertEquals("hello", ConfigUtils.getVar(config, "greeting", "quakenet", "#pickup"));
+        config.put("vars,quakenet,#pickup,greeting", "hi");
+        assertEquals("hi", ConfigUtils.getVar(config, "greeting", "quakenet", "#pickup"));
+        assertEquals("hello", ConfigUtils.getVar(config, "greeting", "quakenet", "#other"));
+        config.remove("vars,quakenet,#pickup,greeting");
+        assertEquals("hello", ConfigUtils.getVar(config, "greeting", "quakenet", "#pickup"));
+    }
+}
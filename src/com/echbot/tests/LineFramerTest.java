@@ -0,0 +1,88 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.sockets.LineFramer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class LineFramerTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(LineFramerTest.class);
+    }
+
+    private static InputStream stream(String data) throws IOException {
+        return new ByteArrayInputStream(data.getBytes("ISO-8859-1"));
+    }
+
+    public void testTerminators() throws IOException {
+        LineFramer framer = new LineFramer(64);
+        framer.readFrom(stream("PING :a\r\nb\nc\r\r\n\nd\u00e9\r"));
+        assertTrue(framer.nextLine());
+        assertEquals("PING :a", framer.toString());
+        assertEquals(7, framer.length());
+        assertEquals(':', framer.charAt(5));
+        assertEquals("a", framer.subSequence(6, 7));
+        assertTrue(framer.nextLine());
+        assertEquals("b", framer.toString());
+        assertTrue(framer.nextLine());
+        assertEquals("c", framer.toString());
+        assertTrue(framer.nextLine());
+        assertEquals("d\u00e9", framer.toString());
+        assertEquals('\u00e9', framer.charAt(1));
+        assertFalse(framer.nextLine());
+    }
+
+    public void testPartialLines() throws IOException {
+        LineFramer framer = new LineFramer(16);
+        framer.readFrom(stream("NICK a\r\nNICK"));
+        assertTrue(framer.nextLine());
+        assertEquals("NICK a", framer.toString());
+        assertFalse(framer.nextLine());
+        framer.readFrom(stream(" bcdefgh\r\n"));
+        assertTrue(framer.nextLine());
+        assertEquals("NICK bcdefgh", framer.toString());
+        assertFalse(framer.nextLine());
+    }
+
+    public void testOverlongLine() throws IOException {
+        LineFramer framer = new LineFramer(8);
+        InputStream in = stream("0123456789\r\n");
+        framer.readFrom(in);
+        assertTrue(framer.nextLine());
+        assertEquals("01234567", framer.toString());
+        assertFalse(framer.nextLine());
+        framer.readFrom(in);
+        assertTrue(framer.nextLine());
+        assertEquals("89", framer.toString());
+        assertEquals(-1, framer.readFrom(in));
+    }
+}
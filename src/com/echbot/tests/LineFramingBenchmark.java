@@ -0,0 +1,140 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.sockets.LineFramer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Compares the allocation and speed of splitting server input into lines
+ * with <code>BufferedReader.readLine</code> against {@link LineFramer}. Not
+ * a unit test, run it by hand:
+ * <pre>java -cp build com.echbot.tests.LineFramingBenchmark [lines] [rounds]</pre>
+ * Bytes allocated are read from the JVM's per-thread allocation counter,
+ * which only HotSpot-style JVMs provide.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class LineFramingBenchmark
+{
+    private static final String[] SAMPLE = {
+        ":nick!user@host.example.com PRIVMSG #pickup :!add",
+        ":irc.example.net 353 bot = #pickup :@op +voice nick1 nick2 nick3 nick4",
+        "PING :irc.example.net",
+        ":nick!user@host.example.com JOIN :#pickup",
+        ":other!user@elsewhere.example.org PRIVMSG #pickup :anyone up for a game tonight?",
+        ":nick!user@host.example.com MODE #pickup +o other",
+    };
+
+    private interface Framing
+    {
+        int run(byte[] input) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        final int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        final StringBuffer text = new StringBuffer();
+        for (int i = 0; i < lines; i++) {
+            text.append(SAMPLE[i % SAMPLE.length]).append("\r\n");
+        }
+        final byte[] input = text.toString().getBytes("ISO-8859-1");
+        measure("readLine", input, rounds, new Framing()
+        {
+            public int run(byte[] input) throws IOException {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), "ISO-8859-1"));
+                int count = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    count += line.length();
+                }
+                return count;
+            }
+        });
+        measure("framer+toString", input, rounds, new Framing()
+        {
+            public int run(byte[] input) throws IOException {
+                final ByteArrayInputStream in = new ByteArrayInputStream(input);
+                final LineFramer framer = new LineFramer(16384);
+                int count = 0;
+                while (framer.readFrom(in) != -1) {
+                    while (framer.nextLine()) {
+                        count += framer.toString().length();
+                    }
+                }
+                return count;
+            }
+        });
+        measure("framer view", input, rounds, new Framing()
+        {
+            public int run(byte[] input) throws IOException {
+                final ByteArrayInputStream in = new ByteArrayInputStream(input);
+                final LineFramer framer = new LineFramer(16384);
+                int count = 0;
+                while (framer.readFrom(in) != -1) {
+                    while (framer.nextLine()) {
+                        count += framer.length();
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    private static void measure(String name, byte[] input, int rounds, Framing framing) throws Exception {
+        final int lines = countLines(input);
+        // warm up
+        for (int i = 0; i < rounds; i++) framing.run(input);
+        final long bytesBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) framing.run(input);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - bytesBefore;
+        System.out.println(name + ": " + (elapsed / (rounds * (long)lines)) + "ns/line, " +
+                ((allocated < 0) ? "?" : Long.toString(allocated / (rounds * (long)lines))) + " bytes/line");
+    }
+
+    private static int countLines(byte[] input) {
+        int count = 0;
+        for (int i = 0; i < input.length; i++) {
+            if (input[i] == '\n') count++;
+        }
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        try {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+                    "getThreadAllocatedBytes", new Class[]{long.class});
+            return ((Long)method.invoke(threads, new Object[]{Long.valueOf(Thread.currentThread().getId())})).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
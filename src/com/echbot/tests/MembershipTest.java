@@ -0,0 +1,146 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.Symbols;
+import com.echbot.modules.channels.Membership;
+import com.echbot.modules.channels.MembershipSnapshot;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class MembershipTest extends TestCase
+{
+    private Membership members;
+
+    public static Test suite() {
+        return new TestSuite(MembershipTest.class);
+    }
+
+    protected void setUp() {
+        members = new Membership(new Symbols());
+        members.joined("#pickup", "bob", (byte)0);
+        members.joined("#pickup", "alice", Membership.OP);
+        members.joined("#other", "bob", Membership.VOICE);
+        members.publish();
+    }
+
+    private static Set set(String[] names) {
+        return new HashSet(Arrays.asList(names));
+    }
+
+    public void testJoined() {
+        final MembershipSnapshot snapshot = members.getSnapshot();
+        assertEquals(set(new String[]{"#pickup", "#other"}), new HashSet(snapshot.getChannels()));
+        assertEquals(set(new String[]{"bob", "alice"}), new HashSet(snapshot.getOccupants("#PICKUP")));
+        assertEquals(2, snapshot.getOccupantCount("#pickup"));
+        assertEquals(set(new String[]{"#pickup", "#other"}), new HashSet(snapshot.getChannels("BOB")));
+        assertTrue(snapshot.isOn("#other"));
+        assertFalse(snapshot.isOn("#elsewhere"));
+        assertTrue(snapshot.isOpped("alice", "#pickup"));
+        assertFalse(snapshot.isOpped("bob", "#pickup"));
+        assertTrue(snapshot.isVoiced("bob", "#other"));
+        assertFalse(snapshot.canSee("carol"));
+        // flags add up
+        members.joined("#other", "bob", Membership.OP);
+        members.publish();
+        assertTrue(members.getSnapshot().isOpped("bob", "#other"));
+        assertTrue(members.getSnapshot().isVoiced("bob", "#other"));
+        members.clearFlag("#other", "bob", Membership.VOICE);
+        members.publish();
+        assertTrue(members.getSnapshot().isOpped("bob", "#other"));
+        assertFalse(members.getSnapshot().isVoiced("bob", "#other"));
+    }
+
+    public void testSnapshotsDontChange() {
+        final MembershipSnapshot before = members.getSnapshot();
+        members.quit("bob");
+        // nothing is seen until it's published
+        assertSame(before, members.getSnapshot());
+        members.publish();
+        final MembershipSnapshot after = members.getSnapshot();
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertTrue(before.canSee("bob"));
+        assertEquals(2, before.getOccupantCount("#pickup"));
+        assertFalse(after.canSee("bob"));
+        assertEquals(1, after.getOccupantCount("#pickup"));
+        // publishing with nothing changed keeps the same snapshot
+        members.publish();
+        assertSame(after, members.getSnapshot());
+    }
+
+    public void testLeft() {
+        members.left("#pickup", "bob");
+        members.left("#pickup", "nobody");
+        members.publish();
+        final MembershipSnapshot snapshot = members.getSnapshot();
+        assertTrue(snapshot.canSee("bob"));
+        assertEquals(Arrays.asList(new String[]{"#other"}), snapshot.getChannels("bob"));
+        members.left("#other", "bob");
+        members.publish();
+        assertFalse(members.getSnapshot().canSee("bob"));
+        assertEquals(0, members.getSnapshot().getOccupantCount("#other"));
+    }
+
+    public void testRenamed() {
+        members.joined("#other", "carol", Membership.OP);
+        members.renamed("bob", "carol");
+        members.publish();
+        final MembershipSnapshot snapshot = members.getSnapshot();
+        assertFalse(snapshot.canSee("bob"));
+        assertEquals(set(new String[]{"#pickup", "#other"}), new HashSet(snapshot.getChannels("carol")));
+        // carol keeps the op on #other and picks up the voice bob had
+        assertTrue(snapshot.isOpped("carol", "#other"));
+        assertTrue(snapshot.isVoiced("carol", "#other"));
+        assertEquals(1, snapshot.getOccupantCount("#other"));
+    }
+
+    public void testForget() {
+        members.forget("#pickup");
+        members.publish();
+        final MembershipSnapshot snapshot = members.getSnapshot();
+        assertFalse(snapshot.isOn("#pickup"));
+        assertFalse(snapshot.canSee("alice"));
+        assertEquals(Arrays.asList(new String[]{"#other"}), snapshot.getChannels("bob"));
+    }
+
+    public void testState() {
+        final Map[] state = members.toState();
+        assertEquals(set(new String[]{"bob", "alice"}), state[0].get("#pickup"));
+        assertEquals(set(new String[]{"alice"}), state[1].get("#pickup"));
+        assertEquals(set(new String[]{"bob"}), state[2].get("#other"));
+        final Membership restored = new Membership(new Symbols());
+        restored.fromState(state);
+        final MembershipSnapshot snapshot = restored.getSnapshot();
+        assertTrue(snapshot.isOpped("alice", "#pickup"));
+        assertTrue(snapshot.isVoiced("bob", "#other"));
+        assertEquals(2, snapshot.getOccupantCount("#pickup"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.messages.InboundMessage;
+import com.echbot.messages.MessageParser;
+import com.echbot.messages.in.*;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class MessageParserTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(MessageParserTest.class);
+    }
+
+    public void testCommands() {
+        PingIn ping = (PingIn)MessageParser.parseMessage("PING :irc.example.net");
+        assertEquals(":irc.example.net", ping.getPingCode());
+
+        ChatMessageIn chat = (ChatMessageIn)MessageParser.parseMessage(":nick!u@h PRIVMSG #Pickup :!add  ctf");
+        assertEquals("nick", chat.getFrom());
+        assertEquals("nick!u@h", chat.getFromWithHost());
+        assertEquals("#pickup", chat.getTo());
+        assertEquals("!add  ctf", chat.getMessage());
+        assertTrue(chat.isPrivmsg());
+        assertTrue(chat.isToChannel());
+        assertFalse(((ChatMessageIn)MessageParser.parseMessage(":s NOTICE me :hi")).isPrivmsg());
+        assertFalse(((ChatMessageIn)MessageParser.parseMessage(":s NOTICE me :hi")).isToChannel());
+        assertTrue(((ChatMessageIn)MessageParser.parseMessage(":s NOTICE &local :hi")).isToChannel());
+        assertTrue(((ChatMessageIn)MessageParser.parseMessage(":s PRIVMSG !ABCDEchan :hi")).isToChannel());
+
+        JoinIn join = (JoinIn)MessageParser.parseMessage(":nick!u@h JOIN :#Chan");
+        assertEquals("#chan", join.getChannel());
+        PartIn part = (PartIn)MessageParser.parseMessage(":nick!u@h PART #chan");
+        assertEquals("", part.getMessage());
+        part = (PartIn)MessageParser.parseMessage(":nick!u@h PART #chan :bye now");
+        assertEquals("bye now", part.getMessage());
+        assertEquals("new", ((NickIn)MessageParser.parseMessage(":old!u@h NICK :new")).getNewNick());
+        assertEquals("gone", ((QuitIn)MessageParser.parseMessage(":nick!u@h QUIT :gone")).getMessage());
+
+        ModeIn mode = (ModeIn)MessageParser.parseMessage(":op!u@h MODE #chan +o nick");
+        assertEquals(" +o nick", mode.getModes());
+        TopicIn topic = (TopicIn)MessageParser.parseMessage(":op!u@h TOPIC #Chan :new topic");
+        assertEquals("#chan", topic.getTarget());
+        assertEquals("new topic", topic.getMessage());
+        KickIn kick = (KickIn)MessageParser.parseMessage(":op!u@h KICK #chan victim :reason");
+        assertEquals("op", kick.getKicker());
+        assertEquals("victim", kick.getKicked());
+    }
+
+    public void testNumericsAndUnknown() {
+        SystemIn system = (SystemIn)MessageParser.parseMessage(":irc.example.net 433 * nick :Nickname is already in use");
+        assertEquals(433, system.getNumber());
+        assertEquals("*", system.getTarget());
+        assertEquals(" nick :Nickname is already in use", system.getMessage());
+        assertEquals(1, ((SystemIn)MessageParser.parseMessage(":s 001 me :Welcome")).getNumber());
+
+        assertTrue(MessageParser.parseMessage(":s 4x3 me :x") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage(":s CAP * LS :multi-prefix") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage(":nick!u@h PRIVMSG #chan") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage(":op!u@h KICK #chan victim") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage("PING") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage("") instanceof UnknownIn);
+        assertTrue(MessageParser.parseMessage(null) instanceof UnknownIn);
+    }
+
+    public void testTags() {
+        InboundMessage message = MessageParser.parseMessage("@time=2024-01-01T00:00:00Z;account=bob :bob!u@h PRIVMSG #c :!add");
+        assertEquals("!add", ((ChatMessageIn)message).getMessage());
+        assertEquals("bob", ((ChatMessageIn)message).getFrom());
+        assertEquals(":x", ((PingIn)MessageParser.parseMessage("@a=b PING :x")).getPingCode());
+        UnknownIn unknown = (UnknownIn)MessageParser.parseMessage("@a=b :s CAP * ACK :x");
+        assertEquals("@a=b :s CAP * ACK :x", unknown.getLine());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.sockets.SocketCallback;
+import com.echbot.sockets.TcpConnection;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class NioConnectionTest extends TestCase
+{
+    private static final long TIMEOUT = 5000;
+
+    public static Test suite() {
+        return new TestSuite(NioConnectionTest.class);
+    }
+
+    private static final class Recorder implements SocketCallback
+    {
+        private final List lines = new ArrayList();
+        private boolean connected = false, disconnected = false, holding = false;
+        private Runnable resume;
+
+        public synchronized void connected() {
+            connected = true;
+            notifyAll();
+        }
+
+        public synchronized void disconnected() {
+            disconnected = true;
+            notifyAll();
+        }
+
+        public synchronized void gotLine(String line) {
+            lines.add(line);
+            notifyAll();
+        }
+
+        public synchronized boolean offerLine(String line, Runnable resume) {
+            gotLine(line);
+            return retry(resume);
+        }
+
+        public synchronized boolean retry(Runnable resume) {
+            this.resume = resume;
+            return !holding;
+        }
+
+        public void discard(Runnable resume) {
+        }
+
+        void release() {
+            final Runnable toRun;
+            synchronized (this) {
+                holding = false;
+                toRun = resume;
+            }
+            toRun.run();
+        }
+
+        synchronized void awaitLines(int count) throws InterruptedException {
+            final long end = System.currentTimeMillis() + TIMEOUT;
+            while ((lines.size() < count) && (System.currentTimeMillis() < end)) {
+                wait(100);
+            }
+        }
+
+        synchronized void awaitDisconnect() throws InterruptedException {
+            final long end = System.currentTimeMillis() + TIMEOUT;
+            while (!disconnected && (System.currentTimeMillis() < end)) {
+                wait(100);
+            }
+        }
+    }
+
+    public void testLinesBothWays() throws Exception {
+        TcpConnection.setMode("nio", "1");
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final Recorder recorder = new Recorder();
+        final TcpConnection connection = TcpConnection.open(recorder,
+                new InetSocketAddress(server.getInetAddress(), server.getLocalPort()), new InetSocketAddress(0));
+        final Socket accepted = server.accept();
+        final OutputStream out = accepted.getOutputStream();
+        // split lines across writes to check reassembly
+        out.write("PING :a\r\nNOTICE AUTH :hel".getBytes("ISO-8859-1"));
+        out.flush();
+        Thread.sleep(50);
+        out.write("lo\r\n:x 001 me :welcome\n".getBytes("ISO-8859-1"));
+        out.flush();
+        recorder.awaitLines(3);
+        assertTrue(recorder.connected);
+        assertTrue(connection.isConnected());
+        assertEquals("PING :a", recorder.lines.get(0));
+        assertEquals("NOTICE AUTH :hello", recorder.lines.get(1));
+        assertEquals(":x 001 me :welcome", recorder.lines.get(2));
+
+        final BufferedReader in = new BufferedReader(new InputStreamReader(accepted.getInputStream(), "ISO-8859-1"));
+        connection.write("NICK me\r\n");
+        connection.write("USER a b c :d\r\n");
+        assertEquals("NICK me", in.readLine());
+        assertEquals("USER a b c :d", in.readLine());
+
+        accepted.close();
+        server.close();
+        recorder.awaitDisconnect();
+        assertTrue(recorder.disconnected);
+    }
+
+    public void testPausedReaderDoesNotStallLoop() throws Exception {
+        TcpConnection.setMode("nio", "1");
+        final ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        final InetSocketAddress address = new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+        final Recorder slow = new Recorder();
+        slow.holding = true;
+        final TcpConnection slowConnection = TcpConnection.open(slow, address, new InetSocketAddress(0));
+        final Socket slowAccepted = server.accept();
+        final Recorder fast = new Recorder();
+        final TcpConnection fastConnection = TcpConnection.open(fast, address, new InetSocketAddress(0));
+        final Socket fastAccepted = server.accept();
+
+        slowAccepted.getOutputStream().write("one\r\ntwo\r\n".getBytes("ISO-8859-1"));
+        slowAccepted.getOutputStream().flush();
+        slow.awaitLines(1);
+        Thread.sleep(50);
+        slowAccepted.getOutputStream().write("three\r\n".getBytes("ISO-8859-1"));
+        fastAccepted.getOutputStream().write("hello\r\n".getBytes("ISO-8859-1"));
+        fast.awaitLines(1);
+        assertEquals("hello", fast.lines.get(0));
+        Thread.sleep(50);
+        assertEquals(1, slow.lines.size());
+
+        slow.release();
+        slow.awaitLines(3);
+        assertEquals("two", slow.lines.get(1));
+        assertEquals("three", slow.lines.get(2));
+
+        slowConnection.close();
+        fastConnection.close();
+        slowAccepted.close();
+        fastAccepted.close();
+        server.close();
+    }
+}
@@ -25,6 +25,7 @@ import com.echbot.messages.OutboundMessage;
 import com.echbot.messages.out.ChatMessageOut;
 import com.echbot.messages.out.JoinOut;
 import com.echbot.messages.out.PongOut;
+import com.echbot.messages.out.TopicOut;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -57,4 +58,19 @@ public class OutboundQueueTest extends TestCase
         assertEquals(m7, queue.removeItem());
         assertEquals(m6, queue.removeItem());
     }
+
+    public void testTopicReplacesUnsentTopic() {
+        OutboundQueue queue = new OutboundQueue();
+        OutboundMessage m1, m2, m3, m4;
+        assertTrue(queue.add(m1 = new TopicOut("#pickup", "first"), 2));
+        assertTrue(queue.add(m2 = new ChatMessageOut("#pickup", "hello", false), 2));
+        assertTrue(queue.add(m3 = new TopicOut("#other", "other"), 2));
+        assertFalse(queue.add(m4 = new TopicOut("#pickup", "second"), 2));
+        assertEquals(m4, queue.removeItem());
+        assertEquals(m3, queue.removeItem());
+        assertEquals(m2, queue.removeItem());
+        // once it's gone, a new topic is queued as normal
+        assertTrue(queue.add(m1, 2));
+        assertEquals(m1, queue.removeItem());
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.modules.channels.PersistentMap;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class PersistentMapTest extends TestCase
+{
+    private static final int OPERATIONS = 20000;
+
+    public static Test suite() {
+        return new TestSuite(PersistentMapTest.class);
+    }
+
+    /**
+     * A key with whatever hash code the test wants, so keys can be made to
+     * share some or all of their hash.
+     */
+    private static final class Key
+    {
+        private final int id;
+        private final int hash;
+
+        private Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        public boolean equals(Object o) {
+            return (o instanceof Key) && (((Key)o).id == id);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public String toString() {
+            return id + "/" + Integer.toHexString(hash);
+        }
+    }
+
+    public void testEmpty() {
+        final PersistentMap empty = PersistentMap.EMPTY;
+        assertEquals(0, empty.size());
+        assertNull(empty.get("a"));
+        assertSame(empty, empty.without("a"));
+        assertEquals(0, empty.keys().size());
+    }
+
+    public void testUpdatesLeaveOldVersions() {
+        final PersistentMap one = PersistentMap.EMPTY.with("a", "1");
+        final PersistentMap two = one.with("b", "2");
+        final PersistentMap changed = two.with("a", "3");
+        assertEquals(1, one.size());
+        assertNull(one.get("b"));
+        assertEquals("1", two.get("a"));
+        assertEquals("3", changed.get("a"));
+        assertEquals(2, changed.size());
+        assertSame(two, two.with("b", "2"));
+        assertSame(two, two.without("c"));
+        assertSame(PersistentMap.EMPTY, one.without("a"));
+    }
+
+    public void testSameHash() {
+        PersistentMap map = PersistentMap.EMPTY;
+        for (int i = 0; i < 5; i++) {
+            map = map.with(new Key(i, 42), Integer.valueOf(i));
+        }
+        assertEquals(5, map.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), map.get(new Key(i, 42)));
+        }
+        assertNull(map.get(new Key(5, 42)));
+        map = map.with(new Key(2, 42), "two");
+        assertEquals(5, map.size());
+        assertEquals("two", map.get(new Key(2, 42)));
+        // take them away again until one is left, which has to come back up
+        for (int i = 0; i < 4; i++) {
+            map = map.without(new Key(i, 42));
+            assertNull(map.get(new Key(i, 42)));
+            assertEquals(4 - i, map.size());
+        }
+        assertEquals(Integer.valueOf(4), map.get(new Key(4, 42)));
+        assertEquals(Collections.singletonList(new Key(4, 42)), map.keys());
+        // something in the same top level slot still finds its way down
+        map = map.with(new Key(5, 42 + 32), "five");
+        assertEquals("five", map.get(new Key(5, 42 + 32)));
+        assertEquals(Integer.valueOf(4), map.get(new Key(4, 42)));
+        assertSame(PersistentMap.EMPTY, map.without(new Key(4, 42)).without(new Key(5, 42 + 32)));
+    }
+
+    public void testRandomAgainstHashMap() {
+        // a few hashes that share low bits, all bits or nothing
+        check(new Random(1), 0xffffffff, 5000);
+        check(new Random(2), 0x3ff, 2000);
+        check(new Random(3), 0xf000000f, 2000);
+        check(new Random(4), 0x7, 300);
+    }
+
+    /**
+     * Apply random puts and removes to a PersistentMap and a HashMap and
+     * check they always agree, along with the versions kept along the way.
+     */
+    private static void check(Random random, int hashMask, int keyCount) {
+        final Key[] keys = new Key[keyCount];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i, random.nextInt() & hashMask);
+        }
+        PersistentMap map = PersistentMap.EMPTY;
+        final Map expected = new HashMap();
+        final List versions = new ArrayList(), copies = new ArrayList();
+        for (int op = 0; op < OPERATIONS; op++) {
+            final Key key = keys[random.nextInt(keys.length)];
+            // remove a bit less often than adding, so the map grows then churns
+            if (random.nextInt(5) < 2) {
+                map = map.without(key);
+                expected.remove(key);
+            } else {
+                final Integer value = Integer.valueOf(op);
+                map = map.with(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+            if (op % 1000 == 0) {
+                versions.add(map);
+                copies.add(new HashMap(expected));
+                assertMatches(expected, map, keys);
+            }
+        }
+        assertMatches(expected, map, keys);
+        for (int i = 0; i < versions.size(); i++) {
+            assertMatches((Map)copies.get(i), (PersistentMap)versions.get(i), keys);
+        }
+        // and empty it again
+        for (Iterator i = new ArrayList(expected.keySet()).iterator(); i.hasNext();) {
+            map = map.without(i.next());
+        }
+        assertSame(PersistentMap.EMPTY, map);
+    }
+
+    private static void assertMatches(Map expected, PersistentMap map, Key[] keys) {
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), map.get(keys[i]));
+        }
+        final List listed = map.keys();
+        assertEquals(expected.size(), listed.size());
+        assertEquals(expected.keySet(), new HashSet(listed));
+    }
+}
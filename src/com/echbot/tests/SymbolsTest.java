@@ -0,0 +1,105 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.Symbols;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class SymbolsTest extends TestCase
+{
+    private Symbols symbols;
+
+    public static Test suite() {
+        return new TestSuite(SymbolsTest.class);
+    }
+
+    protected void setUp() {
+        symbols = new Symbols();
+    }
+
+    public void testRfc1459() {
+        assertEquals(Symbols.RFC1459, symbols.getCasemapping());
+        assertEquals("{bob}|^", symbols.fold("[BOB]\\~"));
+        assertTrue(symbols.equals("[bob]", "{BOB}"));
+        assertTrue(symbols.equals("a\\b~", "A|B^"));
+        final Symbols.Symbol symbol = symbols.intern("[Bob]\\~");
+        assertSame(symbol, symbols.intern("{bob}|^"));
+        assertSame(symbol, symbols.lookup("{BOB}|^"));
+        assertEquals("[Bob]\\~", symbol.getName());
+        assertEquals("{bob}|^", symbol.getKey());
+        assertNotSame(symbol, symbols.intern("bob"));
+    }
+
+    public void testStrictRfc1459() {
+        symbols.isupport("CHANTYPES=# CASEMAPPING=strict-rfc1459 :are supported by this server");
+        assertEquals(Symbols.STRICT_RFC1459, symbols.getCasemapping());
+        assertTrue(symbols.equals("[]\\", "{}|"));
+        assertFalse(symbols.equals("~", "^"));
+        assertNotSame(symbols.intern("a~"), symbols.intern("a^"));
+    }
+
+    public void testAscii() {
+        final Symbols.Symbol held = symbols.intern("[Bob]");
+        final Symbols.Symbol other = symbols.intern("{bob}");
+        assertSame(held, other);
+        symbols.isupport("CASEMAPPING=ascii");
+        assertEquals(Symbols.ASCII, symbols.getCasemapping());
+        assertFalse(symbols.equals("[bob]", "{bob}"));
+        assertTrue(symbols.equals("[bob]", "[BOB]"));
+        // the Symbol we had is refolded under the new casemapping
+        assertEquals("[bob]", held.getKey());
+        assertSame(held, symbols.lookup("[BOB]"));
+        assertNotSame(held, symbols.intern("{bob}"));
+    }
+
+    public void testRename() {
+        final Symbols.Symbol symbol = symbols.intern("bob");
+        assertSame(symbol, symbols.rename("BoB"));
+        assertEquals("BoB", symbol.getName());
+        assertEquals("BoB", symbol.toString());
+        assertEquals("bob", symbol.getKey());
+        assertSame(symbol, symbols.lookup("bob"));
+    }
+
+    public void testUnusedSymbolsAreDropped() throws InterruptedException {
+        Symbols.Symbol symbol = symbols.intern("bob");
+        final int id = symbol.getId();
+        final Symbols.Symbol held = symbols.intern("alice");
+        assertEquals(2, symbols.size());
+        symbol = null;
+        // interning anything clears out what has been collected
+        for (int i = 0; (i < 100) && (symbols.size() > 1); i++) {
+            System.gc();
+            Thread.sleep(10);
+            symbols.intern("alice");
+        }
+        assertEquals(1, symbols.size());
+        assertNull(symbols.lookup("bob"));
+        assertSame(held, symbols.lookup("ALICE"));
+        assertTrue(symbols.intern("bob").getId() != id);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.InboundQueue;
+import com.echbot.Threads;
+import com.echbot.messages.in.PingIn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares platform and virtual thread modes. Not a unit test, run it by
+ * hand:
+ * <pre>java -cp build:lib/log4j.jar com.echbot.tests.ThreadModeBenchmark [clones] [messages]</pre>
+ * For each mode it opens one loopback connection per clone with a reader
+ * blocked in <code>readLine</code>, the way the blocking connection does,
+ * and reports heap and OS threads per clone. It then pushes messages through
+ * four inbound queues with a 1ms blocking "module" call on every 50th one and
+ * reports how long messages sat queued.
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class ThreadModeBenchmark
+{
+    private static final int LANES = 4;
+
+    public static void main(String[] args) throws Exception {
+        final int clones = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        final int messages = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+        run("platform", clones, messages);
+        if (Threads.virtualAvailable()) {
+            run("virtual", clones, messages);
+        } else {
+            System.out.println("virtual: not supported by this JVM");
+        }
+    }
+
+    private static void run(String mode, int clones, int messages) throws Exception {
+        Threads.setMode(mode);
+        System.out.println(mode + ": " + memoryPerClone(clones));
+        System.out.println(mode + ": " + dispatchLatency(messages));
+    }
+
+    private static String memoryPerClone(int clones) throws IOException, InterruptedException {
+        final ServerSocket server = new ServerSocket(0, clones, InetAddress.getLoopbackAddress());
+        final List sockets = new ArrayList();
+        final long heapBefore = usedHeap();
+        final int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        for (int i = 0; i < clones; i++) {
+            final Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+            sockets.add(client);
+            sockets.add(server.accept());
+            Threads.start(new Runnable()
+            {
+                public void run() {
+                    try {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), "ISO-8859-1"));
+                        while (reader.readLine() != null) ;
+                    } catch (IOException e) {
+                    }
+                }
+            }, "Reader-" + i, true);
+        }
+        Thread.sleep(500);
+        final long heapAfter = usedHeap();
+        final int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        for (int i = 0; i < sockets.size(); i++) {
+            ((Socket)sockets.get(i)).close();
+        }
+        server.close();
+        return clones + " clones, " + ((heapAfter - heapBefore) / clones) + " heap bytes/clone, " +
+                (threadsAfter - threadsBefore) + " OS threads";
+    }
+
+    private static String dispatchLatency(final int messages) throws InterruptedException {
+        final InboundQueue[] queues = new InboundQueue[LANES];
+        final long[] latencies = new long[messages];
+        final AtomicInteger taken = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(messages);
+        for (int i = 0; i < LANES; i++) {
+            final InboundQueue queue = queues[i] = new InboundQueue(InboundQueue.DEFAULT_CAPACITY, new InboundQueue.BlockingWait());
+            Threads.start(new Runnable()
+            {
+                public void run() {
+                    while (true) {
+                        final InboundQueue.QueueEntry entry = queue.getItem();
+                        final int n = taken.getAndIncrement();
+                        latencies[n] = System.nanoTime() - entry.queuedAt;
+                        if (n % 50 == 0) {
+                            try {
+                                Thread.sleep(1);
+                            } catch (InterruptedException e) {
+                            }
+                        }
+                        done.countDown();
+                    }
+                }
+            }, "Lane-" + i, true);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            queues[i % LANES].add(new PingIn("x"), null);
+        }
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        long total = 0;
+        for (int i = 0; i < messages; i++) total += latencies[i];
+        return messages + " messages in " + (elapsed / 1000000) + "ms, avg wait " + (total / messages / 1000) +
+                "us, p99 " + (latencies[(int)(messages * 0.99)] / 1000) + "us";
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.modules.pickup.TopicState;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class TopicStateTest extends TestCase
+{
+    public static Test suite() {
+        return new TestSuite(TopicStateTest.class);
+    }
+
+    public void testUnchangedTopicNotSent() {
+        TopicState topic = new TopicState();
+        topic.changed("A");
+        assertFalse(topic.shouldSend("A"));
+        assertTrue(topic.shouldSend("B"));
+        assertFalse(topic.shouldSend("B"));
+        topic.changed("B");
+        assertFalse(topic.shouldSend("B"));
+    }
+
+    public void testChangingBackWhileInFlight() {
+        TopicState topic = new TopicState();
+        topic.changed("A");
+        assertTrue(topic.shouldSend("B"));
+        // B hasn't been echoed yet, so A has to go out after it
+        assertTrue(topic.shouldSend("A"));
+        topic.changed("B");
+        topic.changed("A");
+        assertFalse(topic.shouldSend("A"));
+    }
+
+    public void testNothingSentOnceDiscarded() {
+        TopicState topic = new TopicState();
+        topic.changed("A");
+        assertTrue(topic.shouldSend("B"));
+        topic.discard();
+        assertFalse(topic.shouldSend("C"));
+        topic.refused();
+        topic.changed("D");
+        assertFalse(topic.shouldSend("E"));
+    }
+
+    public void testRefusedTopicRetried() {
+        TopicState topic = new TopicState();
+        assertTrue(topic.shouldSend("A"));
+        topic.refused();
+        assertTrue(topic.shouldSend("A"));
+    }
+}
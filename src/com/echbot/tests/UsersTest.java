@@ -0,0 +1,133 @@
+/*
+ * echbot - an open-source IRC bot
+ * Copyright (C) 2003  Christopher Pearson
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * To contact the author, Chris Pearson, email chris@echbot.com
+ */
+package com.echbot.tests;
+
+import com.echbot.EventType;
+import com.echbot.Symbols;
+import com.echbot.Users;
+import com.echbot.messages.MessageParser;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * @author Chris Pearson
+ * @version $Id$
+ */
+public class UsersTest extends TestCase
+{
+    private static final int RENAMED = EventType.forName(Users.RENAMED).getId();
+    private static final int LOST = EventType.forName(Users.LOST).getId();
+    private Users users;
+
+    public static Test suite() {
+        return new TestSuite(UsersTest.class);
+    }
+
+    protected void setUp() {
+        users = new Users(new Symbols(), null);
+    }
+
+    private List update(String line) {
+        return users.update(MessageParser.parseMessage(line), "me");
+    }
+
+    private static Users.Change only(List changes) {
+        assertNotNull(changes);
+        assertEquals(1, changes.size());
+        return (Users.Change)changes.get(0);
+    }
+
+    public void testJoinAndNames() {
+        assertNull(update(":bob!b@host.one JOIN :#pickup"));
+        assertNull(update(":server 353 me = #pickup :me @alice +carol bob"));
+        assertNull(update(":bob!b@host.one JOIN :#other"));
+        assertEquals(4, users.size());
+        final Users.User bob = users.get("BOB");
+        assertEquals("bob!b@host.one", bob.getHostmask());
+        assertEquals(2, bob.getChannels().size());
+        assertTrue(bob.getChannels().contains("#other"));
+        assertNull(users.get("alice").getUserhost());
+        assertTrue(users.get("carol").getChannels().contains("#pickup"));
+        // first chat fills in the user@host
+        update(":alice!a@host.two PRIVMSG #pickup :hi");
+        assertEquals("alice!a@host.two", users.get("alice").getHostmask());
+    }
+
+    public void testNickChange() {
+        update(":bob!b@host JOIN :#pickup");
+        final Users.Change change = only(update(":bob!b@host NICK :Robert"));
+        assertEquals(RENAMED, change.id);
+        assertEquals("Robert", change.user.getNick());
+        assertEquals("bob", change.user.getPreviousNick());
+        assertEquals("Robert!b@host", change.user.getHostmask());
+        assertNull(users.get("bob"));
+        assertSame(change.user, users.get("robert"));
+        assertTrue(users.get("robert").getChannels().contains("#pickup"));
+        assertNull(update(":nobody!n@host NICK :somebody"));
+    }
+
+    public void testCaseOnlyNickChange() {
+        update(":bob!b@host JOIN :#pickup");
+        final Symbols.Symbol symbol = users.get("bob").getSymbol();
+        final Users.Change change = only(update(":bob!b@host NICK :Bob"));
+        assertEquals(RENAMED, change.id);
+        assertSame(symbol, change.user.getSymbol());
+        // anyone holding the Symbol shows the new casing
+        assertEquals("Bob", symbol.getName());
+        assertEquals(1, users.size());
+    }
+
+    public void testQuit() {
+        update(":bob!b@host JOIN :#pickup");
+        update(":bob!b@host JOIN :#other");
+        final Users.Change change = only(update(":bob!b@host QUIT :gone"));
+        assertEquals(LOST, change.id);
+        assertEquals("bob", change.user.getNick());
+        assertNull(users.get("bob"));
+        assertEquals(0, users.size());
+        assertNull(update(":bob!b@host QUIT :gone"));
+    }
+
+    public void testLostOnceOffEveryChannel() {
+        update(":bob!b@host JOIN :#pickup");
+        update(":bob!b@host JOIN :#other");
+        assertNull(update(":bob!b@host PART #pickup"));
+        assertEquals(1, users.get("bob").getChannels().size());
+        final Users.Change change = only(update(":op!o@host KICK #other bob :bye"));
+        assertEquals(LOST, change.id);
+        assertEquals(0, change.user.getChannels().size());
+        assertNull(users.get("bob"));
+    }
+
+    public void testWeLeaveChannel() {
+        update(":bob!b@host JOIN :#pickup");
+        update(":carol!c@host JOIN :#pickup");
+        update(":carol!c@host JOIN :#other");
+        final List changes = update(":me!m@host PART #pickup");
+        assertEquals(1, changes.size());
+        assertEquals("bob", ((Users.Change)changes.get(0)).user.getNick());
+        assertNull(users.get("bob"));
+        assertEquals(1, users.get("carol").getChannels().size());
+    }
+}